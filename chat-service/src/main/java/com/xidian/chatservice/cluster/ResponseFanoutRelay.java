@@ -0,0 +1,307 @@
+package com.xidian.chatservice.cluster;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xidian.chatservice.manager.ChatResponseSink;
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.model.ChatResponse;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 跨实例响应广播
+ *
+ * 多实例部署时，消费 Kafka 请求的实例往往不是前端 SSE 连接所在的实例。
+ * 这里把大模型的输出发布到响应 Topic（key 为 requestId，同一请求的片段在同一分区内有序），
+ * 每个实例用自己独立的消费者组订阅整个 Topic，只写入本地已有的流（前端连在本实例上），其余消息直接丢弃：
+ * 每个实例缓存的内容只和自己持有的连接数有关，不随集群总流量增长
+ *
+ * 前端连接得晚（本实例已经错过了前面的片段）时，向同一分区发布一条补发请求（chat-type=replay-request），
+ * 生成所在的实例回复一条补发消息（chat-type=replay），内容是到目前为止的完整输出，chat-seq 为其中最后一个片段的序号；
+ * 补发请求和片段在同一分区、由同一个生产者按顺序发送，所以补发消息之后到达的片段正好接在它后面
+ *
+ * 每条片段带 chat-seq 头（从 1 开始），接收方按序号只接受"下一个"片段：重复的和中途加入时缺前缀的片段都丢弃
+ *
+ * 发布使用 acks=all + 幂等生产者；某个片段写入失败时，这个请求的生成随即停止（sendMessage 返回 false），
+ * 并尽量广播一条错误消息，前端不会收到缺了片段的回答
+ */
+@Slf4j
+public class ResponseFanoutRelay implements ChatResponseSink, SmartLifecycle {
+
+    public static final String SEQ_HEADER = "chat-seq";
+    public static final String TYPE_HEADER = "chat-type";
+
+    static final String TYPE_REPLAY_REQUEST = "replay-request";
+    static final String TYPE_REPLAY = "replay";
+
+    private static final String PUBLISH_FAILED = "响应广播失败，请重新提问";
+    private static final String REPLAY_TRUNCATED = "续传数据已过期，请重新提问";
+
+    private final String topic;
+    private final KafkaTemplate<String, ChatResponse> kafkaTemplate;
+    private final SseEmitterManager sseEmitterManager;
+    private final ConcurrentMessageListenerContainer<String, ChatResponse> container;
+
+    // 本实例发布的请求：序号和到目前为止的输出（用于回复补发请求），生成结束后保留一段时间
+    private final Cache<String, Published> published;
+    private final int replayMaxChars;
+
+    // 本地流已写入的最后一个序号（只记录本实例有流的请求）
+    private final Cache<String, Long> applied;
+
+    /**
+     * @param instanceId 实例 ID（决定消费者组，每个实例都能收到全部消息）
+     * @param topic 响应 Topic
+     * @param streamProperties 补发内容的保留时间和大小上限（与 SSE 重放缓冲区一致）
+     */
+    public ResponseFanoutRelay(String instanceId, String topic,
+                               KafkaTemplate<String, ChatResponse> kafkaTemplate,
+                               ConsumerFactory<String, ChatResponse> consumerFactory,
+                               SseEmitterManager sseEmitterManager,
+                               ChatStreamProperties streamProperties) {
+        this.topic = topic;
+        this.kafkaTemplate = kafkaTemplate;
+        this.sseEmitterManager = sseEmitterManager;
+        this.replayMaxChars = streamProperties.getReplayMaxBytes();
+        this.published = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(streamProperties.getReplayRetentionMs()))
+                .build();
+        this.applied = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(streamProperties.getMaxConnectionMs()))
+                .build();
+
+        ContainerProperties containerProperties = new ContainerProperties(topic);
+        containerProperties.setGroupId("chat-response-" + instanceId);
+        containerProperties.setMessageListener((MessageListener<String, ChatResponse>) this::onRecord);
+
+        this.container = new ConcurrentMessageListenerContainer<>(consumerFactory, containerProperties);
+        this.container.setBeanName("chat-response-relay-" + instanceId);
+
+        // 前端连到本实例、但生成不在本实例时，请生成所在的实例补发
+        sseEmitterManager.onRemoteAttach(this::requestReplay);
+    }
+
+    // ========== 发布（生成所在的实例） ==========
+
+    @Override
+    public boolean sendMessage(String requestId, ChatResponse response) {
+        // 前端可能连在其他实例上，这里无法判断是否已断开；广播失败时停止生成
+        return publish(requestId, response);
+    }
+
+    @Override
+    public void complete(String requestId, String finalMessage) {
+        if (finalMessage != null && !finalMessage.isEmpty()) {
+            publish(requestId, ChatResponse.chunk(requestId, finalMessage));
+        }
+        publish(requestId, ChatResponse.end(requestId));
+    }
+
+    @Override
+    public void sendError(String requestId, String errorMessage) {
+        publish(requestId, ChatResponse.error(requestId, errorMessage));
+    }
+
+    /**
+     * @return 这个请求之前的广播已经失败时返回 false
+     */
+    private boolean publish(String requestId, ChatResponse response) {
+        Published state = published.get(requestId, id -> new Published());
+        synchronized (state) {
+            if (state.failed || state.finished) {
+                return false;
+            }
+            long seq = ++state.seq;
+            state.append(response, replayMaxChars);
+
+            ProducerRecord<String, ChatResponse> record = new ProducerRecord<>(topic, requestId, response);
+            record.headers().add(SEQ_HEADER, Long.toString(seq).getBytes(StandardCharsets.UTF_8));
+            kafkaTemplate.send(record).whenComplete((result, e) -> {
+                if (e != null) {
+                    onPublishFailed(requestId, state, seq, e);
+                }
+            });
+            return true;
+        }
+    }
+
+    /**
+     * 某个片段没有写入 Kafka：之后的片段接不上了，停止这个请求的生成，并尽量通知前端
+     */
+    private void onPublishFailed(String requestId, Published state, long seq, Throwable e) {
+        synchronized (state) {
+            if (state.failed) {
+                return;
+            }
+            state.failed = true;
+        }
+        log.error("❌ 响应广播失败，停止生成: {}, seq: {}, error: {}", requestId, seq, e.getMessage());
+
+        // 前端恰好连在本实例上时直接结束本地的流
+        sseEmitterManager.sendError(requestId, PUBLISH_FAILED);
+
+        // 序号之后的片段都作废，错误消息作为补发消息发出（接收方不按序号校验）
+        ProducerRecord<String, ChatResponse> record =
+                new ProducerRecord<>(topic, requestId, ChatResponse.error(requestId, PUBLISH_FAILED));
+        record.headers().add(TYPE_HEADER, TYPE_REPLAY.getBytes(StandardCharsets.UTF_8));
+        record.headers().add(SEQ_HEADER, Long.toString(Long.MAX_VALUE).getBytes(StandardCharsets.UTF_8));
+        kafkaTemplate.send(record);
+    }
+
+    /**
+     * 回复补发请求：到目前为止的完整输出作为一条消息发出（在 publish 的同一把锁里，和后续片段保持顺序）
+     */
+    private void onReplayRequest(String requestId) {
+        Published state = published.getIfPresent(requestId);
+        if (state == null) {
+            // 生成不在本实例，或者还没开始（第一个片段会正常送达）
+            return;
+        }
+        synchronized (state) {
+            if (state.seq == 0 || state.failed) {
+                return;
+            }
+            ProducerRecord<String, ChatResponse> record =
+                    new ProducerRecord<>(topic, requestId, state.snapshot(requestId));
+            record.headers().add(TYPE_HEADER, TYPE_REPLAY.getBytes(StandardCharsets.UTF_8));
+            record.headers().add(SEQ_HEADER, Long.toString(state.seq).getBytes(StandardCharsets.UTF_8));
+            kafkaTemplate.send(record);
+            log.info("📡 回复补发请求: {}, seq: {}", requestId, state.seq);
+        }
+    }
+
+    // ========== 订阅（所有实例） ==========
+
+    /**
+     * 前端连到了本实例上一个没有生成的流：请求生成所在的实例补发
+     */
+    private void requestReplay(String requestId) {
+        ProducerRecord<String, ChatResponse> record =
+                new ProducerRecord<>(topic, requestId, ChatResponse.chunk(requestId, ""));
+        record.headers().add(TYPE_HEADER, TYPE_REPLAY_REQUEST.getBytes(StandardCharsets.UTF_8));
+        kafkaTemplate.send(record);
+    }
+
+    private void onRecord(ConsumerRecord<String, ChatResponse> record) {
+        ChatResponse response = record.value();
+        if (response == null) {
+            return;
+        }
+        String requestId = response.getRequestId();
+        String type = header(record, TYPE_HEADER);
+        String seqHeader = header(record, SEQ_HEADER);
+        long seq = seqHeader == null ? 0 : Long.parseLong(seqHeader);
+
+        if (TYPE_REPLAY_REQUEST.equals(type)) {
+            onReplayRequest(requestId);
+            return;
+        }
+
+        // 本实例没有这个请求的流：前端不在这里，不缓存
+        if (!sseEmitterManager.exists(requestId)) {
+            applied.invalidate(requestId);
+            return;
+        }
+
+        long last = applied.asMap().getOrDefault(requestId, 0L);
+        if (TYPE_REPLAY.equals(type)) {
+            // 补发只用于还没有收到任何片段的流
+            if (last != 0 && seq != Long.MAX_VALUE) {
+                return;
+            }
+        } else if (seq != last + 1) {
+            // 重复的片段，或者中途加入缺了前缀（等待补发）
+            return;
+        }
+
+        if (!sseEmitterManager.acceptRemote(response)) {
+            applied.invalidate(requestId);
+        } else if (Boolean.TRUE.equals(response.getIsEnd()) || response.getError() != null) {
+            applied.invalidate(requestId);
+        } else {
+            applied.put(requestId, seq);
+        }
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    public MessageListenerContainer getContainer() {
+        return container;
+    }
+
+    @Override
+    public void start() {
+        container.start();
+        log.info("📡 响应广播已启动, topic: {}", topic);
+    }
+
+    @Override
+    public void stop() {
+        container.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return container.isRunning();
+    }
+
+    /**
+     * 本实例发布的一个请求（受自身锁保护）
+     */
+    private static final class Published {
+
+        private final StringBuilder content = new StringBuilder();
+        private long seq;
+        private boolean finished;
+        private String error;
+        // 输出超过补发上限，无法完整补发
+        private boolean truncated;
+        // 有片段没能写入 Kafka
+        private boolean failed;
+
+        void append(ChatResponse response, int maxChars) {
+            if (response.getError() != null) {
+                error = response.getError();
+            } else if (response.getContent() != null && !truncated) {
+                content.append(response.getContent());
+                if (content.length() > maxChars) {
+                    truncated = true;
+                    content.setLength(0);
+                }
+            }
+            if (Boolean.TRUE.equals(response.getIsEnd())) {
+                finished = true;
+            }
+        }
+
+        ChatResponse snapshot(String requestId) {
+            if (truncated) {
+                return ChatResponse.error(requestId, REPLAY_TRUNCATED);
+            }
+            if (error != null) {
+                ChatResponse response = ChatResponse.error(requestId, error);
+                response.setContent(content.toString());
+                return response;
+            }
+            ChatResponse response = finished ? ChatResponse.end(requestId) : ChatResponse.chunk(requestId, "");
+            response.setContent(content.toString());
+            return response;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.xidian.chatservice.common;
+
+/**
+ * 粗略估算文本的 token 数（不依赖具体模型的分词器）
+ *
+ * 经验值：英文等 ASCII 文本约 4 个字符 1 个 token，中文等非 ASCII 字符约 1 个字符 1 个 token
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(c)) {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+}
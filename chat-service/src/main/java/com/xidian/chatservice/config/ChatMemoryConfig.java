@@ -0,0 +1,32 @@
+package com.xidian.chatservice.config;
+
+import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepository;
+import org.springframework.ai.chat.memory.repository.jdbc.MysqlChatMemoryRepositoryDialect;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * 对话记忆冷层（JDBC / MySQL）
+ *
+ * 不用 Spring AI 自动配置的仓库：它在启动时就连接数据库（识别方言、初始化表结构），没有数据库时服务起不来。
+ * 这里的仓库是懒加载的，ConversationMemory 第一次读写冷层时才创建（chat.memory.enabled=false 时从不创建），
+ * 创建时执行 schema-mysql.sql（CREATE TABLE IF NOT EXISTS）；数据库不可用时创建失败，下次访问再试
+ */
+@Configuration
+public class ChatMemoryConfig {
+
+    @Bean
+    @Lazy
+    public JdbcChatMemoryRepository jdbcChatMemoryRepository(JdbcTemplate jdbcTemplate) {
+        new ResourceDatabasePopulator(new ClassPathResource("schema-mysql.sql"))
+                .execute(jdbcTemplate.getDataSource());
+        return JdbcChatMemoryRepository.builder()
+                .jdbcTemplate(jdbcTemplate)
+                .dialect(new MysqlChatMemoryRepositoryDialect())
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.xidian.chatservice.config;
+
+import com.xidian.chatservice.cluster.ResponseFanoutRelay;
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.model.ChatResponse;
+import com.xidian.chatservice.properties.ChatClusterProperties;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 多实例部署：响应广播（chat.cluster.delivery=fanout 时启用）
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "chat.cluster", name = "delivery", havingValue = "fanout")
+public class ClusterConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Bean
+    public NewTopic chatResponseTopic(ChatClusterProperties properties) {
+        return TopicBuilder.name(properties.getResponseTopic())
+                .partitions(properties.getResponsePartitions())
+                .replicas(2)
+                .build();
+    }
+
+    @Bean
+    public ResponseFanoutRelay responseFanoutRelay(ChatClusterProperties properties,
+                                                   SseEmitterManager sseEmitterManager,
+                                                   ChatStreamProperties streamProperties) {
+        return new ResponseFanoutRelay(properties.getInstanceId(), properties.getResponseTopic(),
+                new KafkaTemplate<>(responseProducerFactory(bootstrapServers)),
+                responseConsumerFactory(bootstrapServers), sseEmitterManager, streamProperties);
+    }
+
+    /**
+     * 响应片段的 Producer：片段很小且连续，稍微等一等凑成批次
+     *
+     * 丢一个片段前端就会收到残缺的回答，所以等所有副本确认（acks=all），幂等生产者保证重试不乱序、不重复
+     */
+    public static ProducerFactory<String, ChatResponse> responseProducerFactory(String bootstrapServers) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+
+        return new DefaultKafkaProducerFactory<>(props, new StringSerializer(),
+                new JsonSerializer<ChatResponse>().noTypeInfo());
+    }
+
+    /**
+     * 响应片段的 Consumer：每个实例一个消费者组，只关心启动之后的消息
+     *
+     * 值固定反序列化为 ChatResponse，不读类型头，也不信任任何其他包
+     */
+    public static ConsumerFactory<String, ChatResponse> responseConsumerFactory(String bootstrapServers) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(new JsonDeserializer<>(ChatResponse.class, false)));
+    }
+}
@@ -0,0 +1,118 @@
+package com.xidian.chatservice.config;
+
+import com.xidian.chatservice.listener.KeyOrderedExecutor;
+import com.xidian.chatservice.properties.ChatListenerProperties;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 线程池配置
+ * 作用：SSE 写入不占用 Kafka 消费线程，也不占用大模型流所在的 Netty 事件循环线程
+ */
+@Slf4j
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 流式响应线程池
+     *
+     * 负责把大模型返回的片段写入 SSE 连接，
+     * 每次只执行"写一个片段"这样的短任务，不会被一次完整的生成长期占用
+     */
+    @Bean("chatStreamExecutor")
+    public ThreadPoolTaskExecutor chatStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(20);
+        executor.setMaxPoolSize(50);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("chat-stream-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 基于 chatStreamExecutor 的 Reactor 调度器
+     * 用于 Flux.publishOn / subscribeOn
+     */
+    @Bean("chatStreamScheduler")
+    public Scheduler chatStreamScheduler(@Qualifier("chatStreamExecutor") ThreadPoolTaskExecutor chatStreamExecutor) {
+        return Schedulers.fromExecutor(chatStreamExecutor);
+    }
+
+    /**
+     * SSE 合并写入的定时 flush 调度器
+     *
+     * 每个流在合并窗口到期时注册一次短任务，少量线程即可支撑大量并发流
+     */
+    @Bean("sseFlushScheduler")
+    public ThreadPoolTaskScheduler sseFlushScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("sse-flush-");
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * SSE 写线程池
+     *
+     * 每个连接的发送队列（SseOutbound）同一时刻最多占用一个线程，一次写出积压的所有帧；
+     * 前端网络慢时阻塞的是这里的线程，不是大模型流和 Kafka 消费线程。
+     * 平时 writerThreads 个线程；单次写入超时的线程由 SseWriteWatchdog 临时补上（调大核心线程数），最多 writerMaxThreads 个
+     */
+    @Bean("sseWriterExecutor")
+    public ThreadPoolTaskExecutor sseWriterExecutor(ChatStreamProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getWriterThreads());
+        executor.setMaxPoolSize(Math.max(properties.getWriterThreads(), properties.getWriterMaxThreads()));
+        executor.setThreadNamePrefix("sse-writer-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * SSE 时间轮的到期任务线程池
+     *
+     * 心跳、空闲超时和写入超时检查只做入队和状态检查，不写 socket；
+     * 与写线程池分开，写线程全部卡在慢连接上时这些检查照常执行
+     */
+    @Bean("sseTimerExecutor")
+    public ThreadPoolTaskExecutor sseTimerExecutor(ChatStreamProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getTimerThreads());
+        executor.setMaxPoolSize(properties.getTimerThreads());
+        executor.setThreadNamePrefix("sse-timer-task-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Kafka 消息执行器（chat.listener.mode=virtual 时使用）
+     *
+     * 每条消息一个虚拟线程，阻塞等待限流和生成结束都不占用平台线程；
+     * 运行在 Java 21 以下时退化为普通线程（每条消息一个线程，仍受在途上限约束）；
+     * platform 模式下不使用这个执行器，也不开启虚拟线程
+     */
+    @Bean("chatRecordExecutor")
+    public KeyOrderedExecutor chatRecordExecutor(ChatListenerProperties properties) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("chat-record-");
+        if (properties.getMode() == ChatListenerProperties.Mode.VIRTUAL) {
+            if (Runtime.version().feature() >= 21) {
+                executor.setVirtualThreads(true);
+            } else {
+                log.warn("⚠️ 当前 Java 版本不支持虚拟线程，chat-record 退化为普通线程");
+            }
+        }
+        return new KeyOrderedExecutor(executor, properties.getMaxInFlightRecords());
+    }
+}
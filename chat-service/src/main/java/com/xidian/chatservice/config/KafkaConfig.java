@@ -1,17 +1,24 @@
 package com.xidian.chatservice.config;
 
+import com.xidian.chatservice.dispatch.PriorityLane;
 import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatKafkaProperties;
+import com.xidian.chatservice.serde.ChatRequestDeserializer;
+import com.xidian.chatservice.serde.ChatRequestSerializer;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
 import java.util.HashMap;
@@ -23,18 +30,68 @@ public class KafkaConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    private final ChatKafkaProperties kafkaProperties;
+
+    public KafkaConfig(ChatKafkaProperties kafkaProperties) {
+        this.kafkaProperties = kafkaProperties;
+    }
+
+    // ========== Topic 配置 ==========
+
+    /**
+     * VIP 通道 Topic（启动时自动创建）
+     */
+    @Bean
+    public NewTopic vipChatRequestTopic() {
+        return TopicBuilder.name(PriorityLane.VIP.getTopic())
+                .partitions(3)
+                .replicas(2)
+                .build();
+    }
+
     // ========== Producer 配置 ==========
 
     @Bean
     public ProducerFactory<String, ChatRequest> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
         configProps.put(ProducerConfig.RETRIES_CONFIG, 3);
+        // send 在提交接口的请求线程里调用，不能像默认那样阻塞 60 秒
+        configProps.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, kafkaProperties.getSendMaxBlockMs());
+        configProps.putAll(producerProfileConfigs(kafkaProperties));
+
+        // 序列化器按 chat.kafka.request-format 选择（JSON 不写类型头，消费端固定按 ChatRequest 解析）
+        Serializer<ChatRequest> valueSerializer =
+                kafkaProperties.getRequestFormat() == ChatKafkaProperties.RequestFormat.BINARY
+                        ? new ChatRequestSerializer()
+                        : new JsonSerializer<ChatRequest>().noTypeInfo();
+
+        return new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), valueSerializer);
+    }
 
-        return new DefaultKafkaProducerFactory<>(configProps);
+    /**
+     * 生产者预设对应的配置（chat.kafka.producer-profile，单项配置优先于预设）
+     */
+    public static Map<String, Object> producerProfileConfigs(ChatKafkaProperties properties) {
+        ChatKafkaProperties.ProducerProfile profile = properties.getProducerProfile();
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.LINGER_MS_CONFIG,
+                valueOr(properties.getLingerMs(), profile.getLingerMs()));
+        configs.put(ProducerConfig.BATCH_SIZE_CONFIG,
+                valueOr(properties.getBatchSize(), profile.getBatchSize()));
+        configs.put(ProducerConfig.COMPRESSION_TYPE_CONFIG,
+                valueOr(properties.getCompressionType(), profile.getCompressionType()));
+        configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG,
+                valueOr(properties.getIdempotence(), profile.isIdempotence()));
+        // 开启幂等时最多 5，否则重试会打乱顺序
+        configs.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION,
+                valueOr(properties.getMaxInFlightRequestsPerConnection(), profile.getMaxInFlightRequestsPerConnection()));
+        return configs;
+    }
+
+    private static <T> T valueOr(T value, T defaultValue) {
+        return value != null ? value : defaultValue;
     }
 
     @Bean
@@ -54,22 +111,16 @@ public class KafkaConfig {
         // 消费者组
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "chat-consumer-group");
 
-        // Key 反序列化器
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-
-        // Value 反序列化器（使用 ErrorHandlingDeserializer 包装）
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
-        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class.getName());
-
-        // JSON 反序列化配置
-        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, ChatRequest.class.getName());
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
-        props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);  // ✅ 关键配置
-
         // 从最早的消息开始消费
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
 
-        return new DefaultKafkaConsumerFactory<>(props);
+        // 关闭自动提交，由监听器手动 ack / nack
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        // Key：String；Value：ChatRequestDeserializer（JSON / 二进制都能读，不依赖类型头和信任包），
+        // 外面包一层 ErrorHandlingDeserializer，坏消息不会让消费者反复失败
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(new ChatRequestDeserializer()));
     }
 
     @Bean
@@ -82,6 +133,21 @@ public class KafkaConfig {
         // 并发线程数
         factory.setConcurrency(5);
 
+        configureWatermarkAcks(factory.getContainerProperties());
+
         return factory;
     }
+
+    /**
+     * 按水位线提交位点（两种监听模式都走这条路径）
+     *
+     * 两种模式都在 ack 之前把消息交给其他线程：平台线程模式拿到并发许可时 ack，虚拟线程模式生成结束后 ack。
+     * ack 可能来自任意线程、乱序到达，由容器等前面的位点都确认后再连续提交（只提交连续完成的水位线），
+     * 还在通道里排队、正在生成的消息不会被提交，进程退出后从水位线重新投递；
+     * asyncAcks 下不能 nack，通道排满、在途过多时改为暂停容器
+     */
+    public static void configureWatermarkAcks(ContainerProperties containerProperties) {
+        containerProperties.setAckMode(ContainerProperties.AckMode.MANUAL);
+        containerProperties.setAsyncAcks(true);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.xidian.chatservice.config;
+
+import com.xidian.chatservice.limiter.AdaptiveConcurrencyLimiter;
+import com.xidian.chatservice.limiter.InMemoryTokenBucketStore;
+import com.xidian.chatservice.limiter.RedisStyleTokenBucketStore;
+import com.xidian.chatservice.limiter.TokenBucketStore;
+import com.xidian.chatservice.properties.ChatConcurrencyProperties;
+import com.xidian.chatservice.properties.ChatRateLimitProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 限流配置
+ * 作用：根据 chat.rate-limit.backend 选择令牌桶存储后端，创建自适应并发限流器
+ */
+@Slf4j
+@Configuration
+public class RateLimiterConfig {
+
+    @Bean
+    public TokenBucketStore tokenBucketStore(ChatRateLimitProperties properties) {
+        log.info("🚦 限流存储后端: {}", properties.getBackend());
+
+        return switch (properties.getBackend()) {
+            case REDIS -> new RedisStyleTokenBucketStore(properties.getSimulatedRoundTripMicros());
+            case MEMORY -> new InMemoryTokenBucketStore();
+        };
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(ChatConcurrencyProperties properties) {
+        return new AdaptiveConcurrencyLimiter(
+                properties.getInitialLimit(),
+                properties.getMinLimit(),
+                properties.getMaxLimit(),
+                properties.getSmoothing(),
+                properties.getRttTolerance(),
+                properties.getBackoffRatio(),
+                properties.getMaxStreamTimeMs(),
+                properties.getMaxWaiters());
+    }
+}
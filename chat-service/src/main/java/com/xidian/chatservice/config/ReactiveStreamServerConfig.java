@@ -0,0 +1,36 @@
+package com.xidian.chatservice.config;
+
+import com.xidian.chatservice.controller.ReactiveStreamHandler;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * 响应式 SSE 接口的 Netty 服务器（chat.stream.reactive-enabled=true 时启用）
+ *
+ * 应用本身仍是 Servlet（Tomcat）应用，这里在独立端口上再启动一个 Reactor Netty 服务器，
+ * 只提供 SSE 流式接口；连接由 Netty 默认的事件循环（线程数 = CPU 核数）服务
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "chat.stream", name = "reactive-enabled", havingValue = "true")
+public class ReactiveStreamServerConfig {
+
+    @Bean(destroyMethod = "disposeNow")
+    public DisposableServer reactiveStreamServer(ReactiveStreamHandler handler, ChatStreamProperties properties) {
+        HttpHandler httpHandler = RouterFunctions.toHttpHandler(handler.routes());
+        DisposableServer server = HttpServer.create()
+                .port(properties.getReactivePort())
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info("🚀 响应式 SSE 接口已启动，端口: {}", server.port());
+        return server;
+    }
+}
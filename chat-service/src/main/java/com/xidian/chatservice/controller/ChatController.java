@@ -1,15 +1,36 @@
 package com.xidian.chatservice.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import com.xidian.chatservice.common.Result;
+import com.xidian.chatservice.common.ResultCode;
+import com.xidian.chatservice.dispatch.AdmissionController;
+import com.xidian.chatservice.dispatch.ChatRequestPublisher;
+import com.xidian.chatservice.dispatch.PriorityLane;
+import com.xidian.chatservice.dispatch.PriorityResolver;
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.metrics.ChatLatencyMetrics;
+import com.xidian.chatservice.model.ChatBatchItem;
 import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatClusterProperties;
+import com.xidian.chatservice.properties.ChatKafkaProperties;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 聊天控制器
@@ -20,33 +41,92 @@ import java.util.UUID;
 @RequestMapping("/api/chat")
 public class ChatController {
 
-    // Kafka 发送工具（Spring 自动注入）
-    private final KafkaTemplate<String, ChatRequest> kafkaTemplate;
+    // 发送队列满或写入失败时，建议客户端等待的秒数
+    private static final int SEND_RETRY_AFTER_SECONDS = 1;
 
-    // Kafka Topic 名称
-    private static final String TOPIC = "chat-request";
+    // 网关传入的优先级和令牌
+    private static final String GATEWAY_TOKEN_HEADER = "X-Gateway-Token";
+    private static final String GATEWAY_PRIORITY_HEADER = "X-Chat-Priority";
+
+    // 请求入队（写入 Kafka，等待 broker 确认）
+    private final ChatRequestPublisher chatRequestPublisher;
+
+    // 批量提交：登记批次，供批量 SSE 连接使用
+    private final SseEmitterManager sseEmitterManager;
+    private final ObjectMapper objectMapper;
+    private final int maxBatchRequests;
+    // 批次只登记在提交所在的实例上，广播模式下批量 SSE 连接可能落到其他实例，不支持批量提交
+    private final boolean batchSupported;
+
+    // 准入控制：积压太深时直接拒绝，不再入队
+    private final AdmissionController admissionController;
+
+    // 优先级由服务端判定，客户端不能自己进 VIP 通道
+    private final PriorityResolver priorityResolver;
+
+    // 记录提交到 Kafka 确认的耗时
+    private final ChatLatencyMetrics latencyMetrics;
 
     // 构造函数注入（推荐方式）
-    public ChatController(KafkaTemplate<String, ChatRequest> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public ChatController(ChatRequestPublisher chatRequestPublisher,
+                          SseEmitterManager sseEmitterManager,
+                          ObjectMapper objectMapper,
+                          ChatKafkaProperties kafkaProperties,
+                          ChatClusterProperties clusterProperties,
+                          AdmissionController admissionController,
+                          PriorityResolver priorityResolver,
+                          ChatLatencyMetrics latencyMetrics) {
+        this.chatRequestPublisher = chatRequestPublisher;
+        this.sseEmitterManager = sseEmitterManager;
+        this.objectMapper = objectMapper;
+        this.maxBatchRequests = kafkaProperties.getMaxBatchRequests();
+        this.batchSupported = clusterProperties.getDelivery() == ChatClusterProperties.Delivery.LOCAL;
+        this.admissionController = admissionController;
+        this.priorityResolver = priorityResolver;
+        this.latencyMetrics = latencyMetrics;
     }
 
     /**
      * 提交聊天请求
      *
      * 接口地址：POST /api/chat/submit
-     * 参数：userId=xxx&question=xxx
+     * 参数：userId=xxx&question=xxx&priority=1
+     *
+     * 异步接口：写入 Kafka 并收到 broker 确认后才返回"已排队"，等待确认期间不占用 Tomcat 线程
      *
      * @param userId 用户ID
      * @param question 问题
      * @param sessionId 会话ID（可选）
-     * @return 返回统一的Result对象，包含requestId等信息
+     * @param priority 优先级（可选，0~1；更高的值按 1 处理，VIP 等级由服务端判定，见 PriorityResolver）
+     * @param gatewayToken 网关令牌（可选，与 chat.dispatch.gateway-token 相同时才采用 gatewayPriority）
+     * @param gatewayPriority 网关指定的优先级（可选，0~5，>=2 走 VIP 通道）
+     * @return 返回统一的Result对象，包含requestId等信息；
+     *         预计排队时间超出预算、在途发送已满或写入 Kafka 失败时返回 503，map 中带 retryAfterSeconds
      */
     @PostMapping("/submit")
-    public Result<Map<String, Object>> submitChat(
+    public CompletableFuture<ResponseEntity<Result<Map<String, Object>>>> submitChat(
             @RequestParam String userId,
             @RequestParam String question,
-            @RequestParam(required = false) String sessionId) {
+            @RequestParam(required = false) String sessionId,
+            @RequestParam(required = false) Integer priority,
+            @RequestHeader(value = GATEWAY_TOKEN_HEADER, required = false) String gatewayToken,
+            @RequestHeader(value = GATEWAY_PRIORITY_HEADER, required = false) Integer gatewayPriority) {
+
+        // 0. 准入控制：积压太深时立即拒绝，比入队后等到 SSE 超时便宜得多
+        Integer normalizedPriority = priorityResolver.resolve(userId, priority, gatewayToken, gatewayPriority);
+        PriorityLane lane = PriorityLane.of(normalizedPriority);
+        AdmissionController.Admission admission = admissionController.tryAdmit(lane);
+
+        if (!admission.isAdmitted()) {
+            log.warn("🚫 系统繁忙，拒绝请求: userId={}, lane={}, backlog={}, estimatedWaitMs={}",
+                    userId, lane, admission.getBacklog(), admission.getEstimatedWaitMs());
+
+            Result<Map<String, Object>> rejected = Result.<Map<String, Object>>error(ResultCode.SERVICE_UNAVAILABLE,
+                            "系统繁忙，请 " + admission.getRetryAfterSeconds() + " 秒后重试")
+                    .add("estimatedWaitMs", admission.getEstimatedWaitMs())
+                    .add("backlog", admission.getBacklog());
+            return CompletableFuture.completedFuture(unavailable(admission.getRetryAfterSeconds(), rejected));
+        }
 
         // 1. 生成唯一请求ID（UUID）
         String requestId = UUID.randomUUID().toString();
@@ -58,21 +138,190 @@ public class ChatController {
         request.setQuestion(question);
         request.setSessionId(sessionId);
         request.setTimestamp(System.currentTimeMillis());
-        request.setPriority(1);  // 默认优先级
+        request.setPriority(normalizedPriority);
+
+        // 3. 按优先级发送到对应通道的 Topic；在途发送已满说明 Kafka 写不动了，直接拒绝
+        CompletableFuture<SendResult<String, ChatRequest>> sent = chatRequestPublisher.publish(lane, request);
+        if (sent == null) {
+            log.warn("🚫 在途发送已满，拒绝请求: userId={}, lane={}, outstanding={}",
+                    userId, lane, chatRequestPublisher.getOutstandingCount());
+            return CompletableFuture.completedFuture(unavailable(SEND_RETRY_AFTER_SECONDS,
+                    Result.error(ResultCode.SERVICE_UNAVAILABLE, "系统繁忙，请稍后重试")));
+        }
+        latencyMetrics.timeEnqueue(normalizedPriority, sent);
+
+        // 4. broker 确认后返回统一的Result对象（附带预计排队时间）
+        return sent.handle((result, e) -> {
+            if (e != null) {
+                log.error("❌ 请求入队失败: requestId={}, userId={}, lane={}", requestId, userId, lane, e);
+                return unavailable(SEND_RETRY_AFTER_SECONDS,
+                        Result.error(ResultCode.SERVICE_UNAVAILABLE, "请求入队失败，请稍后重试"));
+            }
+
+            log.info(" 请求已入队: requestId={}, userId={}, lane={}, partition={}, offset={}, question={}",
+                    requestId, userId, lane, result.getRecordMetadata().partition(),
+                    result.getRecordMetadata().offset(), question);
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("requestId", requestId);
+            data.put("status", "queued");
+            data.put("priority", request.getPriority());
+
+            return ResponseEntity.ok(Result.success(data, "请求已提交，请使用 requestId 建立 SSE 连接")
+                    .add("estimatedWaitMs", admission.getEstimatedWaitMs())
+                    .add("backlog", admission.getBacklog()));
+        });
+    }
+
+    /**
+     * 批量提交聊天请求
+     *
+     * 接口地址：POST /api/chat/submit/batch?userId=xxx&priority=0
+     * 请求体：JSON 数组 [{"question":"...","sessionId":"..."}, ...]，或 NDJSON（每行一个对象）
+     *
+     * 所有问题连续交给 Kafka 生产者（由生产者合并成少量批次写入），全部确认后一次返回；
+     * 之后用 batchId 建立一个 SSE 连接（GET /api/stream/batch/{batchId}）接收所有问题的输出
+     *
+     * 批次只登记在本实例上，批量 SSE 连接必须连到同一个实例；
+     * 多实例广播模式（chat.cluster.delivery=fanout）下连接会落到任意实例，所以直接拒绝批量提交（400），请逐个提交
+     *
+     * 准入按整个批次判定：批次中最后一个问题的预计排队时间超出预算时整批拒绝
+     *
+     * @param userId 用户ID
+     * @param priority 优先级（可选，整个批次相同；与 submitChat 一样由服务端判定 VIP 等级）
+     * @param gatewayToken 网关令牌（可选）
+     * @param gatewayPriority 网关指定的优先级（可选）
+     * @param body 问题列表
+     * @return batchId 和与输入顺序一致的 requestIds；入队失败的请求列在 failed 中
+     */
+    @PostMapping(value = "/submit/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public CompletableFuture<ResponseEntity<Result<Map<String, Object>>>> submitBatch(
+            @RequestParam String userId,
+            @RequestParam(required = false) Integer priority,
+            @RequestHeader(value = GATEWAY_TOKEN_HEADER, required = false) String gatewayToken,
+            @RequestHeader(value = GATEWAY_PRIORITY_HEADER, required = false) Integer gatewayPriority,
+            @RequestBody String body) {
+
+        if (!batchSupported) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Result.error(ResultCode.BAD_REQUEST, "多实例广播模式下不支持批量提交，请逐个提交")));
+        }
+
+        List<ChatBatchItem> items = parseBatch(body);
+
+        Integer normalizedPriority = priorityResolver.resolve(userId, priority, gatewayToken, gatewayPriority);
+        PriorityLane lane = PriorityLane.of(normalizedPriority);
+        AdmissionController.Admission admission = admissionController.tryAdmit(lane, items.size());
+
+        if (!admission.isAdmitted()) {
+            log.warn("🚫 系统繁忙，拒绝批量请求: userId={}, lane={}, size={}, backlog={}",
+                    userId, lane, items.size(), admission.getBacklog());
+            Result<Map<String, Object>> rejected = Result.<Map<String, Object>>error(ResultCode.SERVICE_UNAVAILABLE,
+                            "系统繁忙，请 " + admission.getRetryAfterSeconds() + " 秒后重试")
+                    .add("estimatedWaitMs", admission.getEstimatedWaitMs())
+                    .add("backlog", admission.getBacklog());
+            return CompletableFuture.completedFuture(unavailable(admission.getRetryAfterSeconds(), rejected));
+        }
+
+        long now = System.currentTimeMillis();
+        List<ChatRequest> requests = new ArrayList<>(items.size());
+        for (ChatBatchItem item : items) {
+            ChatRequest request = new ChatRequest();
+            request.setRequestId(UUID.randomUUID().toString());
+            request.setUserId(userId);
+            request.setQuestion(item.getQuestion());
+            request.setSessionId(item.getSessionId());
+            request.setTimestamp(now);
+            request.setPriority(normalizedPriority);
+            requests.add(request);
+        }
 
-        // 3. 发送到 Kafka（异步，立即返回）
-        kafkaTemplate.send(TOPIC, requestId, request);
+        List<CompletableFuture<SendResult<String, ChatRequest>>> sent = chatRequestPublisher.publishAll(lane, requests);
+        if (sent == null) {
+            log.warn("🚫 在途发送容纳不下批次，拒绝批量请求: userId={}, lane={}, size={}, outstanding={}",
+                    userId, lane, requests.size(), chatRequestPublisher.getOutstandingCount());
+            return CompletableFuture.completedFuture(unavailable(SEND_RETRY_AFTER_SECONDS,
+                    Result.error(ResultCode.SERVICE_UNAVAILABLE, "系统繁忙，请稍后重试")));
+        }
+        for (CompletableFuture<SendResult<String, ChatRequest>> future : sent) {
+            latencyMetrics.timeEnqueue(normalizedPriority, future);
+        }
 
-        log.info(" 请求已入队: requestId={}, userId={}, question={}",
-                requestId, userId, question);
+        // 全部确认（成功或失败）后再返回
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).handle((ignored, ignoredError) -> {
+            List<String> requestIds = new ArrayList<>(requests.size());
+            List<String> queued = new ArrayList<>(requests.size());
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                String requestId = requests.get(i).getRequestId();
+                requestIds.add(requestId);
+                if (sent.get(i).isCompletedExceptionally()) {
+                    failed.add(requestId);
+                } else {
+                    queued.add(requestId);
+                }
+            }
 
-        // 4. 构建返回数据
-        Map<String, Object> data = new HashMap<>();
-        data.put("requestId", requestId);
-        data.put("status", "queued");
+            if (queued.isEmpty()) {
+                log.error("❌ 批量请求入队失败: userId={}, lane={}, size={}", userId, lane, requests.size());
+                return unavailable(SEND_RETRY_AFTER_SECONDS,
+                        Result.error(ResultCode.SERVICE_UNAVAILABLE, "请求入队失败，请稍后重试"));
+            }
 
-        // 5. 返回统一的Result对象
-        return Result.success(data, "请求已提交，请使用 requestId 建立 SSE 连接");
+            // 只登记入队成功的请求，批量 SSE 连接不会等永远不会开始的流
+            String batchId = UUID.randomUUID().toString();
+            sseEmitterManager.registerBatch(batchId, queued);
+            log.info(" 批量请求已入队: batchId={}, userId={}, lane={}, queued={}, failed={}",
+                    batchId, userId, lane, queued.size(), failed.size());
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("batchId", batchId);
+            data.put("requestIds", requestIds);
+            data.put("failed", failed);
+            data.put("status", failed.isEmpty() ? "queued" : "partially_queued");
+            data.put("priority", normalizedPriority);
+
+            return ResponseEntity.ok(Result.success(data, "批量请求已提交，请使用 batchId 建立 SSE 连接")
+                    .add("estimatedWaitMs", admission.getEstimatedWaitMs())
+                    .add("backlog", admission.getBacklog()));
+        });
+    }
+
+    /**
+     * 解析批量请求体：JSON 数组和 NDJSON 都按"一连串对象"读取（Jackson 会自动展开顶层数组）
+     */
+    private List<ChatBatchItem> parseBatch(String body) {
+        List<ChatBatchItem> items = new ArrayList<>();
+        try (MappingIterator<ChatBatchItem> iterator =
+                     objectMapper.readerFor(ChatBatchItem.class).readValues(body)) {
+            while (iterator.hasNext()) {
+                ChatBatchItem item = iterator.next();
+                if (item.getQuestion() == null || item.getQuestion().isBlank()) {
+                    throw new IllegalArgumentException("第 " + (items.size() + 1) + " 个问题为空");
+                }
+                items.add(item);
+                if (items.size() > maxBatchRequests) {
+                    throw new IllegalArgumentException("一次最多提交 " + maxBatchRequests + " 个问题");
+                }
+            }
+        } catch (IOException | RuntimeJsonMappingException e) {
+            throw new IllegalArgumentException("批量请求格式错误: " + e.getMessage(), e);
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("批量请求中没有问题");
+        }
+        return items;
+    }
+
+    /**
+     * 503 + Retry-After
+     */
+    private static ResponseEntity<Result<Map<String, Object>>> unavailable(int retryAfterSeconds,
+                                                                          Result<Map<String, Object>> body) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(body.add("retryAfterSeconds", retryAfterSeconds));
     }
 
     /**
@@ -0,0 +1,76 @@
+package com.xidian.chatservice.controller;
+
+import com.xidian.chatservice.common.Result;
+import com.xidian.chatservice.common.ResultCode;
+import com.xidian.chatservice.manager.ReactiveSseEmitter;
+import com.xidian.chatservice.manager.SseEmitterManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+/**
+ * 响应式 SSE 流式接口（运行在独立端口的 Netty 上，见 ReactiveStreamServerConfig）
+ *
+ * 与 StreamController 的 GET /api/stream/{requestId} 行为一致（同一个流、同样的帧、同样支持 Last-Event-ID），
+ * 区别只在连接的承载方式：Servlet 版每个连接占一个异步上下文，直到超时；
+ * 这里每个连接只有一个 ReactiveSseEmitter 和一个有界队列，空闲时不占线程
+ *
+ * 帧已经由 SseFrameEncoder 编码成完整的 SSE 事件，直接作为字节写出，不再经过 ServerSentEvent 和 Jackson
+ */
+@Slf4j
+@Component
+public class ReactiveStreamHandler {
+
+    private final SseEmitterManager sseEmitterManager;
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    public ReactiveStreamHandler(SseEmitterManager sseEmitterManager) {
+        this.sseEmitterManager = sseEmitterManager;
+    }
+
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route(GET("/api/stream/{requestId}"), this::stream);
+    }
+
+    /**
+     * 建立 SSE 连接
+     *
+     * 接口地址：GET /api/stream/{requestId}（响应式端口）
+     */
+    public Mono<ServerResponse> stream(ServerRequest request) {
+        String requestId = request.pathVariable("requestId");
+        String lastEventId = request.headers().firstHeader("Last-Event-ID");
+
+        if (lastEventId != null) {
+            log.info("🔁 恢复响应式 SSE 连接: {}, Last-Event-ID: {}", requestId, lastEventId);
+        } else {
+            log.info("🔗 建立响应式 SSE 连接: {}", requestId);
+            if (sseEmitterManager.isConnected(requestId)) {
+                log.warn("⚠️ SSE 连接已存在: {}", requestId);
+                return ServerResponse.status(HttpStatus.CONFLICT)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Result.error(ResultCode.CONFLICT, "连接已存在，请勿重复连接"));
+            }
+        }
+        long resumeFrom = lastEventId != null ? StreamController.parseEventId(lastEventId) : 0;
+
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .build((exchange, context) -> {
+                    // 开始写响应时才挂到流上：前端在此之前断开，不会留下无人订阅的连接
+                    ReactiveSseEmitter emitter = sseEmitterManager.createReactiveEmitter(requestId, resumeFrom);
+                    return exchange.getResponse().writeAndFlushWith(emitter.frames()
+                            .map(frame -> Mono.just(bufferFactory.wrap(frame))));
+                });
+    }
+}
@@ -2,6 +2,7 @@ package com.xidian.chatservice.controller;
 
 import com.xidian.chatservice.common.Result;
 import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.properties.ChatClusterProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -20,8 +21,12 @@ public class StreamController {
 
     private final SseEmitterManager sseEmitterManager;
 
-    public StreamController(SseEmitterManager sseEmitterManager) {
+    // 批次只登记在提交所在的实例上（广播模式下不支持批量连接）
+    private final boolean batchSupported;
+
+    public StreamController(SseEmitterManager sseEmitterManager, ChatClusterProperties clusterProperties) {
         this.sseEmitterManager = sseEmitterManager;
+        this.batchSupported = clusterProperties.getDelivery() == ChatClusterProperties.Delivery.LOCAL;
     }
 
     /**
@@ -29,15 +34,25 @@ public class StreamController {
      *
      * 接口地址：GET /api/stream/{requestId}
      *
+     * 断线重连时浏览器的 EventSource 会自动带上 Last-Event-ID 请求头，
+     * 服务端从重放缓冲区补发之后的内容，再继续实时推送
+     *
      * @param requestId 请求ID（从 /api/chat/submit 获得）
+     * @param lastEventId 前端收到的最后一个事件 ID（首次连接没有）
      * @return SseEmitter 对象
      */
     @GetMapping("/{requestId}")                    //订阅地址；
-    public SseEmitter stream(@PathVariable String requestId) {
+    public SseEmitter stream(@PathVariable String requestId,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (lastEventId != null) {
+            log.info("🔁 恢复 SSE 连接: {}, Last-Event-ID: {}", requestId, lastEventId);
+            return sseEmitterManager.createEmitter(requestId, parseEventId(lastEventId));
+        }
+
         log.info("🔗 建立 SSE 连接: {}", requestId);
 
-        // 检查是否已存在连接（避免重复连接）
-        if (sseEmitterManager.exists(requestId)) {
+        // 检查是否已存在连接（避免重复连接；已断开、等待重连的流允许从头重放）
+        if (sseEmitterManager.isConnected(requestId)) {
             log.warn("⚠️ SSE 连接已存在: {}", requestId);
             // 注意：SSE连接异常会由全局异常处理器捕获，返回Result格式
             // 但SSE连接本身不能返回Result，所以这里抛出异常会被Spring处理
@@ -48,6 +63,33 @@ public class StreamController {
         return sseEmitterManager.createEmitter(requestId);
     }
 
+    /**
+     * 建立批量 SSE 连接（多路复用）
+     *
+     * 接口地址：GET /api/stream/batch/{batchId}
+     *
+     * 批次内所有请求的输出都从这一个连接推送，每个事件的 data 里带 requestId；
+     * 每个请求以 isEnd=true 的事件（或 error 事件）结束，全部结束后连接关闭
+     *
+     * 批次只登记在提交所在的实例上，必须连到同一个实例；多实例广播模式下不支持
+     *
+     * @param batchId 批次ID（从 /api/chat/submit/batch 获得）
+     * @return SseEmitter 对象
+     */
+    @GetMapping("/batch/{batchId}")
+    public SseEmitter streamBatch(@PathVariable String batchId) {
+        if (!batchSupported) {
+            throw new IllegalArgumentException("多实例广播模式下不支持批量连接: " + batchId);
+        }
+        log.info("🔗 建立批量 SSE 连接: {}", batchId);
+
+        SseEmitter emitter = sseEmitterManager.createBatchEmitter(batchId);
+        if (emitter == null) {
+            throw new IllegalArgumentException("批次不存在或已过期: " + batchId);
+        }
+        return emitter;
+    }
+
     /**
      * 查询连接状态（可选，用于调试）
      *
@@ -60,8 +102,21 @@ public class StreamController {
     public Result<Map<String, Object>> getStatus(@PathVariable String requestId) {
         Map<String, Object> status = new HashMap<>();
         status.put("requestId", requestId);
-        status.put("connected", sseEmitterManager.exists(requestId));
+        status.put("connected", sseEmitterManager.isConnected(requestId));
+        status.put("resumable", sseEmitterManager.exists(requestId));
         status.put("totalConnections", sseEmitterManager.getConnectionCount());
+        status.put("replayBytes", sseEmitterManager.getReplayBytes());
+        status.put("queuedFrames", sseEmitterManager.getQueuedFrames(requestId));
         return Result.success(status);
     }
+
+    static long parseEventId(String lastEventId) {
+        try {
+            return Math.max(0, Long.parseLong(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            // 无法识别的 ID，从头重放
+            log.warn("⚠️ 无效的 Last-Event-ID: {}", lastEventId);
+            return 0;
+        }
+    }
 }
\ No newline at end of file
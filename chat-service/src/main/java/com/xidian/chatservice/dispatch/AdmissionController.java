@@ -0,0 +1,242 @@
+package com.xidian.chatservice.dispatch;
+
+import com.xidian.chatservice.properties.ChatAdmissionProperties;
+import com.xidian.chatservice.properties.ChatDispatchProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 准入控制器（过载保护）
+ *
+ * 提交接口原来总是把请求写进 Kafka 然后返回"已排队"，积压已经几分钟深时，
+ * 用户要等到 SSE 的 5 分钟超时才知道失败。这里在入队前估算排队时间，超出预算就立即拒绝（503 + Retry-After）：
+ *
+ *   预计等待 = 积压 / 消化速度
+ *
+ * - 积压：Kafka 消费者组在该通道 Topic 上的 lag（集群级）。本实例调度通道、按会话排队的执行器里的请求
+ *   拿到许可后才 ack，还没提交位点，已经算在 lag 里，不再另加
+ * - 消化速度：消费者组已提交位点的增长速度（平滑后），不超过通道的集群限流速率；
+ *   还没有采样时直接用限流速率
+ *
+ * lag 由后台线程定时通过 AdminClient 刷新，submit 路径只读快照，不访问 Kafka
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    private static final String CONSUMER_GROUP = "chat-consumer-group";
+    private static final long ADMIN_TIMEOUT_SECONDS = 5;
+
+    private final ChatAdmissionProperties properties;
+    private final ChatDispatchProperties dispatchProperties;
+    private final KafkaAdmin kafkaAdmin;
+
+    // 每条通道的积压快照（只由刷新线程写）
+    private final Map<PriorityLane, LaneStats> stats = new EnumMap<>(PriorityLane.class);
+
+    private AdminClient adminClient;
+    private ScheduledExecutorService refresher;
+
+    public AdmissionController(ChatAdmissionProperties properties,
+                               ChatDispatchProperties dispatchProperties,
+                               KafkaAdmin kafkaAdmin) {
+        this.properties = properties;
+        this.dispatchProperties = dispatchProperties;
+        this.kafkaAdmin = kafkaAdmin;
+        for (PriorityLane lane : PriorityLane.values()) {
+            stats.put(lane, new LaneStats());
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-admission");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshLag,
+                0, properties.getLagRefreshMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+
+    /**
+     * 判断是否接收一个新请求
+     *
+     * @param lane 请求将进入的通道
+     * @return 判定结果（包含预计等待时间）
+     */
+    public Admission tryAdmit(PriorityLane lane) {
+        return tryAdmit(lane, 1);
+    }
+
+    /**
+     * 判断是否一次接收 count 个请求（批量提交）
+     *
+     * 按批次中最后一个请求的排队时间判定：它前面除了现有积压，还有同一批次的 count - 1 个请求
+     *
+     * @param lane 请求将进入的通道
+     * @param count 请求数
+     * @return 判定结果（预计等待时间为最后一个请求的）
+     */
+    public Admission tryAdmit(PriorityLane lane, int count) {
+        LaneStats laneStats = stats.get(lane);
+        long backlog = laneStats.lag;
+        long ahead = backlog + Math.max(0, count - 1);
+
+        double limitRate = lane == PriorityLane.VIP
+                ? dispatchProperties.getVipPermitsPerSecond()
+                : dispatchProperties.getNormalPermitsPerSecond();
+        double drainRate = laneStats.drainRate > 0 ? Math.min(laneStats.drainRate, limitRate) : limitRate;
+        long estimatedWaitMs = (long) (ahead * 1000 / drainRate);
+
+        if (!properties.isEnabled() || ahead < properties.getMinBacklog()) {
+            return new Admission(true, estimatedWaitMs, backlog, 0);
+        }
+
+        long maxWaitMs = lane == PriorityLane.VIP ? properties.getVipMaxWaitMs() : properties.getMaxWaitMs();
+        if (estimatedWaitMs <= maxWaitMs) {
+            return new Admission(true, estimatedWaitMs, backlog, 0);
+        }
+
+        // 建议在积压消化到预算以内之后再试
+        long excessSeconds = (long) Math.ceil((estimatedWaitMs - maxWaitMs) / 1000.0);
+        int retryAfter = (int) Math.max(properties.getMinRetryAfterSeconds(),
+                Math.min(properties.getMaxRetryAfterSeconds(), excessSeconds));
+        return new Admission(false, estimatedWaitMs, backlog, retryAfter);
+    }
+
+    /**
+     * 刷新每条通道的 lag 和消化速度
+     */
+    private void refreshLag() {
+        try {
+            List<String> topics = Arrays.stream(PriorityLane.values())
+                    .map(PriorityLane::getTopic)
+                    .toList();
+
+            Map<String, TopicDescription> descriptions = adminClient.describeTopics(topics)
+                    .allTopicNames().get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            Map<TopicPartition, OffsetSpec> latestSpec = new HashMap<>();
+            Map<TopicPartition, OffsetSpec> earliestSpec = new HashMap<>();
+            descriptions.values().forEach(description -> description.partitions().forEach(p -> {
+                TopicPartition tp = new TopicPartition(description.name(), p.partition());
+                latestSpec.put(tp, OffsetSpec.latest());
+                earliestSpec.put(tp, OffsetSpec.earliest());
+            }));
+
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> latest =
+                    adminClient.listOffsets(latestSpec).all().get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> earliest =
+                    adminClient.listOffsets(earliestSpec).all().get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient
+                    .listConsumerGroupOffsets(CONSUMER_GROUP)
+                    .partitionsToOffsetAndMetadata().get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            long now = System.nanoTime();
+            for (PriorityLane lane : PriorityLane.values()) {
+                long lag = 0;
+                long consumed = 0;
+                for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> entry : latest.entrySet()) {
+                    TopicPartition tp = entry.getKey();
+                    if (!tp.topic().equals(lane.getTopic())) {
+                        continue;
+                    }
+                    OffsetAndMetadata offset = committed.get(tp);
+                    // 还没有提交过位点：从最早的消息开始消费（auto.offset.reset=earliest）
+                    long position = offset != null ? offset.offset() : earliest.get(tp).offset();
+                    lag += Math.max(0, entry.getValue().offset() - position);
+                    consumed += position;
+                }
+                stats.get(lane).update(lag, consumed, now, properties.getRateSmoothing());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Kafka 暂时不可用时保留上一次的快照
+            log.warn("⚠️ 刷新消费积压失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 单条通道的积压快照
+     */
+    private static class LaneStats {
+
+        private volatile long lag;
+        private volatile double drainRate;
+
+        // 上一次采样（只由刷新线程读写）
+        private long lastConsumed = -1;
+        private long lastNanos;
+
+        void update(long lag, long consumed, long nowNanos, double smoothing) {
+            this.lag = lag;
+            if (lastConsumed >= 0 && consumed >= lastConsumed) {
+                double seconds = (nowNanos - lastNanos) / 1e9;
+                double rate = (consumed - lastConsumed) / seconds;
+                // 只在有积压时更新速度：空闲时的 0 不代表消化能力
+                if (rate > 0 || lag > 0) {
+                    drainRate = drainRate == 0 ? rate : drainRate * (1 - smoothing) + rate * smoothing;
+                }
+            }
+            lastConsumed = consumed;
+            lastNanos = nowNanos;
+        }
+    }
+
+    /**
+     * 准入判定结果
+     */
+    @Getter
+    public static class Admission {
+
+        private final boolean admitted;
+        // 预计排队时间（毫秒）
+        private final long estimatedWaitMs;
+        // 当前积压（Kafka 消费者组 lag）
+        private final long backlog;
+        // 拒绝时建议的重试间隔（秒）
+        private final int retryAfterSeconds;
+
+        Admission(boolean admitted, long estimatedWaitMs, long backlog, int retryAfterSeconds) {
+            this.admitted = admitted;
+            this.estimatedWaitMs = estimatedWaitMs;
+            this.backlog = backlog;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+}
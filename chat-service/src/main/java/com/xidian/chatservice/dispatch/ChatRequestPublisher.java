@@ -0,0 +1,87 @@
+package com.xidian.chatservice.dispatch;
+
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatKafkaProperties;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 请求入队（写入 Kafka 的唯一入口）
+ *
+ * 原来提交接口调用 kafkaTemplate.send 后不看结果就返回"已排队"，broker 写入失败时请求悄悄丢失。
+ * 这里返回 send 的 future，调用方等 broker 确认后再告诉用户"已排队"。
+ *
+ * 在途发送（已调用 send、还没收到确认）数量由信号量限制：broker 变慢时生产者缓冲区会被占满，
+ * 这时 send 本身会阻塞（最多 max.block.ms）；先用信号量拒绝多出来的请求，Tomcat 线程不会卡在 send 上
+ */
+@Component
+public class ChatRequestPublisher {
+
+    private final KafkaTemplate<String, ChatRequest> kafkaTemplate;
+    private final int maxOutstanding;
+    private final Semaphore outstanding;
+
+    public ChatRequestPublisher(KafkaTemplate<String, ChatRequest> kafkaTemplate,
+                                ChatKafkaProperties properties) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.maxOutstanding = properties.getMaxOutstandingSends();
+        this.outstanding = new Semaphore(maxOutstanding);
+    }
+
+    /**
+     * 发送到通道对应的 Topic（key 为 requestId）
+     *
+     * @return broker 确认后完成的 future；在途发送已满时返回 null，调用方应立即拒绝
+     */
+    public CompletableFuture<SendResult<String, ChatRequest>> publish(PriorityLane lane, ChatRequest request) {
+        if (!outstanding.tryAcquire()) {
+            return null;
+        }
+        return send(lane, request);
+    }
+
+    /**
+     * 批量发送：一次占用全部名额，所有请求连续交给生产者，由生产者合并成少量批次写入 broker
+     *
+     * @return 与 requests 顺序一致的 future；在途发送容纳不下整个批次时返回 null（不会只发送一部分）
+     */
+    public List<CompletableFuture<SendResult<String, ChatRequest>>> publishAll(PriorityLane lane,
+                                                                             List<ChatRequest> requests) {
+        if (!outstanding.tryAcquire(requests.size())) {
+            return null;
+        }
+        List<CompletableFuture<SendResult<String, ChatRequest>>> futures = new ArrayList<>(requests.size());
+        for (ChatRequest request : requests) {
+            futures.add(send(lane, request));
+        }
+        return futures;
+    }
+
+    /**
+     * 发送一条（调用前已占用一个名额，收到确认或失败后释放）
+     */
+    private CompletableFuture<SendResult<String, ChatRequest>> send(PriorityLane lane, ChatRequest request) {
+        CompletableFuture<SendResult<String, ChatRequest>> future;
+        try {
+            future = kafkaTemplate.send(lane.getTopic(), request.getRequestId(), request);
+        } catch (RuntimeException e) {
+            // 拿不到元数据、缓冲区满等待超时等情况，send 会直接抛异常
+            outstanding.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, e) -> outstanding.release());
+    }
+
+    /**
+     * 已发送、还没收到 broker 确认的请求数
+     */
+    public int getOutstandingCount() {
+        return maxOutstanding - outstanding.availablePermits();
+    }
+}
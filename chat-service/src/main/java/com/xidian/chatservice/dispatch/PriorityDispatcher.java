@@ -0,0 +1,321 @@
+package com.xidian.chatservice.dispatch;
+
+import com.xidian.chatservice.limiter.AdaptiveConcurrencyLimiter;
+import com.xidian.chatservice.limiter.ClusterRateLimiter;
+import com.xidian.chatservice.limiter.TokenBucketStore;
+import com.xidian.chatservice.properties.ChatDispatchProperties;
+import com.xidian.chatservice.properties.ChatRateLimitProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 优先级调度器
+ *
+ * 工作方式：
+ * 1. Kafka 消费线程把任务放入对应通道的队列（VIP / 普通）
+ * 2. 一个调度线程按"平滑加权轮询"从各通道取任务：VIP 权重高，优先出队；
+ *    普通通道权重虽低但每轮都有份额，不会被饿死
+ * 3. 每条通道有独立的限流器，VIP 的突发流量不会吃掉普通请求的预算，反之亦然；
+ *    限流器是集群级的，多个实例共享同一个令牌桶
+ * 4. 大模型的在途调用数达到自适应上限时暂停出队；出队时先向并发限流器预留一个额度，
+ *    任务真正 acquire 之前（切线程、查缓存）也计入在途，调度线程不会多放行
+ * 5. 通道排满后不再拒绝：多出来的任务放进溢出队列（保持先后顺序），同时通知 LanePressure 暂停这条通道的消费，
+ *    排队数回落到容量一半以下时恢复
+ */
+@Slf4j
+@Component
+public class PriorityDispatcher {
+
+    // 所有通道的限流许可都用完（或并发已满）时，调度线程的等待时间
+    private static final long THROTTLE_WAIT_MS = 5;
+
+    private final Map<PriorityLane, Lane> lanes = new EnumMap<>(PriorityLane.class);
+
+    // 大模型并发限流器（在途调用已满时不再出队）
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    // 所有通道中排队任务的总数（调度线程没有任务时在这里等待）
+    private final Semaphore pending = new Semaphore(0);
+
+    private Thread dispatchThread;
+    private volatile boolean running;
+
+    // 通道排满 / 回落时的回调（由监听器暂停 / 恢复对应通道的消费）
+    private volatile LanePressure lanePressure = LanePressure.NONE;
+
+    public PriorityDispatcher(ChatDispatchProperties properties,
+                              ChatRateLimitProperties rateLimitProperties,
+                              TokenBucketStore tokenBucketStore,
+                              AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        lanes.put(PriorityLane.VIP, new Lane(PriorityLane.VIP, properties.getVipWeight(),
+                createRateLimiter(PriorityLane.VIP, properties.getVipPermitsPerSecond(),
+                        rateLimitProperties, tokenBucketStore),
+                properties.getLaneCapacity()));
+        lanes.put(PriorityLane.NORMAL, new Lane(PriorityLane.NORMAL, properties.getNormalWeight(),
+                createRateLimiter(PriorityLane.NORMAL, properties.getNormalPermitsPerSecond(),
+                        rateLimitProperties, tokenBucketStore),
+                properties.getLaneCapacity()));
+    }
+
+    private static ClusterRateLimiter createRateLimiter(PriorityLane lane, double permitsPerSecond,
+                                                        ChatRateLimitProperties properties,
+                                                        TokenBucketStore store) {
+        String key = properties.getKeyPrefix() + lane.name().toLowerCase();
+        return new ClusterRateLimiter(store, key, permitsPerSecond,
+                properties.getLeaseBatchSize(), properties.getLeaseTtlMs());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatchThread = new Thread(this::dispatchLoop, "chat-dispatcher");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+        log.info("🚀 优先级调度器已启动");
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatchThread != null) {
+            dispatchThread.interrupt();
+        }
+    }
+
+    /**
+     * 登记通道排满 / 回落时的回调
+     */
+    public void onLanePressure(LanePressure lanePressure) {
+        this.lanePressure = lanePressure;
+    }
+
+    /**
+     * 提交任务到指定通道（不阻塞，不拒绝）
+     *
+     * 通道已满时任务进入溢出队列，并通知 LanePressure 暂停这条通道的来源；
+     * 已经从 Kafka 拉到的这一批因此都能放下，不需要退回
+     *
+     * @param lane 通道
+     * @param task 获得限流许可后执行的任务（应当是不阻塞的短任务）
+     */
+    public void offer(PriorityLane lane, DispatchTask task) {
+        Lane target = lanes.get(lane);
+        // 溢出队列不为空时新任务也排到溢出队列，保持先后顺序
+        if (!target.overflow.isEmpty() || !target.queue.offer(task)) {
+            target.overflow.add(task);
+            target.updatePressure(lanePressure);
+        }
+        pending.release();
+    }
+
+    /**
+     * 提交任务到指定通道，通道已满时阻塞等待（供虚拟线程使用）
+     *
+     * @param lane 通道
+     * @param task 获得限流许可后执行的任务（应当是不阻塞的短任务）
+     */
+    public void put(PriorityLane lane, DispatchTask task) throws InterruptedException {
+        lanes.get(lane).queue.put(task);
+        pending.release();
+    }
+
+    /**
+     * 获取某条通道当前排队的任务数（包括溢出的任务）
+     */
+    public int getQueueSize(PriorityLane lane) {
+        Lane target = lanes.get(lane);
+        return target.queue.size() + target.overflow.size();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                // 等待至少有一个任务
+                pending.acquire();
+
+                DispatchTask task;
+                while (!concurrencyLimiter.hasCapacity() || (task = pollNext()) == null) {
+                    // 有任务但并发已满，或各通道都没有限流许可，稍等再试
+                    TimeUnit.MILLISECONDS.sleep(THROTTLE_WAIT_MS);
+                }
+
+                // 在调度线程里同步预留，下一轮的 hasCapacity 就已经算上这个任务
+                runSafely(task, concurrencyLimiter.reserve());
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("🛑 优先级调度器已停止");
+    }
+
+    /**
+     * 平滑加权轮询（Smooth Weighted Round-Robin）选出下一个任务
+     *
+     * 只有"有任务"的通道参与本轮选择；被选中的通道如果没有限流许可，
+     * 就按当前权重顺序尝试下一个通道
+     *
+     * @return 任务；所有候选通道都没有限流许可时返回 null
+     */
+    private DispatchTask pollNext() {
+        // 本轮参与选择的通道（只有调度线程会出队，所以"非空"在本轮内一直成立）
+        boolean[] active = new boolean[PriorityLane.values().length];
+        int totalWeight = 0;
+        for (Lane lane : lanes.values()) {
+            if (!lane.isEmpty()) {
+                active[lane.lane.ordinal()] = true;
+                lane.currentWeight += lane.weight;
+                totalWeight += lane.weight;
+            }
+        }
+
+        // 按当前权重从高到低依次尝试（通道数很少，直接多轮扫描）
+        boolean[] tried = new boolean[active.length];
+        for (int i = 0; i < lanes.size(); i++) {
+            Lane best = null;
+            for (Lane lane : lanes.values()) {
+                int index = lane.lane.ordinal();
+                if (!active[index] || tried[index]) {
+                    continue;
+                }
+                if (best == null || lane.currentWeight > best.currentWeight) {
+                    best = lane;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            tried[best.lane.ordinal()] = true;
+
+            if (best.rateLimiter.tryAcquire()) {
+                best.currentWeight -= totalWeight;
+                return best.poll(lanePressure);
+            }
+        }
+
+        // 本轮没有选出任务，撤销本轮累加的权重
+        for (Lane lane : lanes.values()) {
+            if (active[lane.lane.ordinal()]) {
+                lane.currentWeight -= lane.weight;
+            }
+        }
+        return null;
+    }
+
+    private void runSafely(DispatchTask task, AdaptiveConcurrencyLimiter.Reservation reservation) {
+        try {
+            task.run(reservation);
+        } catch (Exception e) {
+            reservation.cancel();
+            log.error("❌ 调度任务执行异常: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 出队后执行的任务
+     */
+    @FunctionalInterface
+    public interface DispatchTask {
+
+        /**
+         * @param reservation 出队时向并发限流器预留的额度：带进 acquire，或者在不调用大模型时 cancel
+         */
+        void run(AdaptiveConcurrencyLimiter.Reservation reservation);
+    }
+
+    /**
+     * 通道排满 / 回落的回调
+     */
+    public interface LanePressure {
+
+        LanePressure NONE = new LanePressure() {
+            @Override
+            public void saturated(PriorityLane lane) {
+            }
+
+            @Override
+            public void drained(PriorityLane lane) {
+            }
+        };
+
+        /**
+         * 通道已满，开始溢出（在提交任务的线程中调用）
+         */
+        void saturated(PriorityLane lane);
+
+        /**
+         * 排队数回落到容量一半以下（在调度线程中调用）
+         */
+        void drained(PriorityLane lane);
+    }
+
+    /**
+     * 单条通道：队列 + 权重 + 独立限流器
+     */
+    private static class Lane {
+
+        private final PriorityLane lane;
+        private final int weight;
+        private final ClusterRateLimiter rateLimiter;
+        private final int capacity;
+        private final BlockingQueue<DispatchTask> queue;
+
+        // 通道已满后提交的任务（排在 queue 之后出队），大小最多为暂停生效前拉到的一批
+        private final Queue<DispatchTask> overflow = new ConcurrentLinkedQueue<>();
+
+        // 是否已通知暂停（状态切换在 this 上加锁，保证回调的先后顺序）
+        private volatile boolean saturated;
+
+        // 平滑加权轮询的当前权重（只在调度线程中读写）
+        private int currentWeight;
+
+        Lane(PriorityLane lane, int weight, ClusterRateLimiter rateLimiter, int capacity) {
+            this.lane = lane;
+            this.weight = weight;
+            this.rateLimiter = rateLimiter;
+            this.capacity = capacity;
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        boolean isEmpty() {
+            return queue.isEmpty() && overflow.isEmpty();
+        }
+
+        DispatchTask poll(LanePressure pressure) {
+            DispatchTask task = queue.poll();
+            if (task == null) {
+                task = overflow.poll();
+            }
+            if (saturated) {
+                updatePressure(pressure);
+            }
+            return task;
+        }
+
+        synchronized void updatePressure(LanePressure pressure) {
+            int size = queue.size() + overflow.size();
+            if (!saturated && size >= capacity) {
+                saturated = true;
+                log.warn("⚠️ 通道已满，暂停消费: {}, 排队: {}", lane, size);
+                pressure.saturated(lane);
+            } else if (saturated && size <= capacity / 2) {
+                saturated = false;
+                log.info("通道排队回落，恢复消费: {}, 排队: {}", lane, size);
+                pressure.drained(lane);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.xidian.chatservice.dispatch;
+
+import lombok.Getter;
+
+/**
+ * 优先级通道
+ *
+ * 每条通道对应一个独立的 Kafka Topic，VIP 请求不会排在普通请求后面
+ */
+@Getter
+public enum PriorityLane {
+
+    /**
+     * VIP 通道（priority >= 2）
+     */
+    VIP("chat-request-vip"),
+
+    /**
+     * 普通通道（priority < 2）
+     */
+    NORMAL("chat-request");
+
+    /**
+     * VIP 的最低优先级
+     */
+    public static final int VIP_PRIORITY = 2;
+
+    /**
+     * 优先级取值范围：0 ~ 5
+     */
+    public static final int MIN_PRIORITY = 0;
+    public static final int MAX_PRIORITY = 5;
+
+    /**
+     * 通道对应的 Kafka Topic
+     */
+    private final String topic;
+
+    PriorityLane(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * 根据请求优先级选择通道
+     *
+     * @param priority 优先级（为空按普通处理）
+     * @return 通道
+     */
+    public static PriorityLane of(Integer priority) {
+        if (priority != null && priority >= VIP_PRIORITY) {
+            return VIP;
+        }
+        return NORMAL;
+    }
+
+    /**
+     * 把优先级限制在 0 ~ 5 之间
+     */
+    public static int normalize(Integer priority) {
+        if (priority == null) {
+            return 1;
+        }
+        return Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority));
+    }
+}
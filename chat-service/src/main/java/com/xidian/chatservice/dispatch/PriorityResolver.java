@@ -0,0 +1,54 @@
+package com.xidian.chatservice.dispatch;
+
+import com.xidian.chatservice.properties.ChatDispatchProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 请求优先级判定
+ *
+ * VIP 通道有独立的限流额度并且优先出队，不能由调用方自己声明：
+ * - 客户端传入的 priority 只能在普通范围内选择（0 ~ 1），更高的值按 1 处理
+ * - VIP 等级由服务端决定：userId 在 chat.dispatch.vip-users 名单中，
+ *   或网关带上正确的 X-Gateway-Token 并通过 X-Chat-Priority 指定优先级
+ */
+@Component
+public class PriorityResolver {
+
+    private final ChatDispatchProperties properties;
+
+    public PriorityResolver(ChatDispatchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @param userId 用户ID
+     * @param requested 客户端传入的优先级（可选，不可信）
+     * @param gatewayToken 请求头 X-Gateway-Token（可选）
+     * @param gatewayPriority 请求头 X-Chat-Priority（可选，令牌正确时才采用）
+     * @return 0 ~ 5 的优先级
+     */
+    public int resolve(String userId, Integer requested, String gatewayToken, Integer gatewayPriority) {
+        if (gatewayPriority != null && trustedGateway(gatewayToken)) {
+            return PriorityLane.normalize(gatewayPriority);
+        }
+
+        int priority = Math.min(PriorityLane.normalize(requested), PriorityLane.VIP_PRIORITY - 1);
+        if (userId != null && properties.getVipUsers().contains(userId)) {
+            return PriorityLane.VIP_PRIORITY;
+        }
+        return priority;
+    }
+
+    private boolean trustedGateway(String gatewayToken) {
+        String expected = properties.getGatewayToken();
+        if (expected == null || expected.isEmpty() || gatewayToken == null) {
+            return false;
+        }
+        // 按常量时间比较，避免通过响应时间逐字节猜出令牌
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                gatewayToken.getBytes(StandardCharsets.UTF_8));
+    }
+}
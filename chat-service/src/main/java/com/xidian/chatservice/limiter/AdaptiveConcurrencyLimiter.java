@@ -0,0 +1,328 @@
+package com.xidian.chatservice.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 自适应并发限流器（梯度算法 + AIMD 退避，思路参考 Netflix concurrency-limits）
+ *
+ * 固定的 QPS 限流管不住"上游变慢"：每秒 20 个请求，如果每个生成从 10 秒变成 60 秒，
+ * 同时在途的调用会从 200 涨到 1200。这里直接限制"在途调用数"，并根据观测到的延迟自动调整上限：
+ *
+ * - 首个片段延迟（TTFT）接近历史最小值：说明上游很空闲，上限缓慢增长
+ * - TTFT 明显变大：说明上游开始排队，按 minRtt / sample 的比例收缩上限
+ * - 调用失败，或整个流耗时超过阈值：直接乘以 backoffRatio 快速退避
+ *
+ * 拿不到许可的调用进入一个有界的等待队列（不占用线程），有许可释放时按先后顺序唤醒
+ *
+ * 调度器出队时先 reserve() 预留一个额度：从出队到真正 acquire 之间（切线程、查缓存）这个请求也计入 hasCapacity，
+ * 调度器不会趁这段时间多放行；带预留的 acquire 不受等待队列上限约束，已出队的请求不会被拒绝
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double rttTolerance;
+    private final double backoffRatio;
+    private final long maxStreamNanos;
+    private final int maxWaiters;
+
+    // 每隔多少个样本重新探测一次最小延迟（上游基线变化时能跟上）
+    private static final int MIN_RTT_RESET_SAMPLES = 500;
+
+    // ===== 以下字段受 this 锁保护 =====
+    private double limit;
+    private int inFlight;
+    // 已出队、还没有 acquire 的预留额度
+    private int reserved;
+    private long minRttNanos;
+    private long sampleCount;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit 最小并发上限
+     * @param maxLimit 最大并发上限
+     * @param smoothing 平滑系数（0~1，越大调整越快）
+     * @param rttTolerance 延迟容忍度（sample <= minRtt * tolerance 视为没有排队）
+     * @param backoffRatio 失败时的退避系数
+     * @param maxStreamTimeMs 整个流的耗时超过该值视为上游过载
+     * @param maxWaiters 等待队列上限
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double smoothing, double rttTolerance, double backoffRatio,
+                                      long maxStreamTimeMs, int maxWaiters) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.rttTolerance = rttTolerance;
+        this.backoffRatio = backoffRatio;
+        this.maxStreamNanos = TimeUnit.MILLISECONDS.toNanos(maxStreamTimeMs);
+        this.maxWaiters = maxWaiters;
+    }
+
+    /**
+     * 获取一个许可（非阻塞）
+     *
+     * 有许可时立即完成；否则进入等待队列，等其他调用结束后完成；
+     * 等待队列已满时以 RejectedExecutionException 结束
+     */
+    public Mono<Permit> acquire() {
+        return acquire(null);
+    }
+
+    /**
+     * 用调度器预留的额度获取许可：不会因为等待队列已满被拒绝，拿到许可时回调 reservation 的 onGranted
+     *
+     * @param reservation 出队时的预留额度（没有经过调度器时为 null）
+     */
+    public Mono<Permit> acquire(Reservation reservation) {
+        return Mono.<Permit>create(sink -> {
+            Waiter waiter = new Waiter(sink, reservation);
+            boolean granted = false;
+            synchronized (this) {
+                boolean reservedCall = reservation != null && reservation.consume();
+                if (reservedCall) {
+                    reserved--;
+                }
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    granted = true;
+                } else if (reservedCall || waiters.size() < maxWaiters) {
+                    waiters.addLast(waiter);
+                } else {
+                    sink.error(new RejectedExecutionException("并发已达上限: " + (int) limit));
+                    return;
+                }
+            }
+
+            if (granted) {
+                waiter.grant();
+            } else {
+                // 订阅被取消时（例如前端断开），从等待队列中移除
+                sink.onCancel(() -> removeWaiter(waiter));
+            }
+        })
+        // 已经出队的等待者恰好在此时被取消，许可会被丢弃，这里把它还回去
+        .doOnDiscard(Permit.class, Permit::onIgnore);
+    }
+
+    /**
+     * 调度器出队时预留一个额度（计入 hasCapacity，直到 acquire 或 cancel）
+     */
+    public synchronized Reservation reserve() {
+        reserved++;
+        return new Reservation();
+    }
+
+    /**
+     * 是否还有空闲的并发额度（调度器据此决定是否继续出队）
+     */
+    public synchronized boolean hasCapacity() {
+        return inFlight + reserved + waiters.size() < (int) limit;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getReserved() {
+        return reserved;
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private synchronized void unreserve() {
+        reserved--;
+    }
+
+    /**
+     * 释放许可，并按新的上限唤醒等待者
+     */
+    private void release() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            while (!waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                granted.add(waiters.pollFirst());
+            }
+        }
+        // 在锁外完成，避免在锁内执行下游逻辑
+        for (Waiter waiter : granted) {
+            waiter.grant();
+        }
+    }
+
+    /**
+     * 根据一次成功调用的延迟调整上限
+     */
+    private synchronized void onSample(long ttftNanos, long totalNanos) {
+        if (totalNanos > maxStreamNanos) {
+            backoff();
+            return;
+        }
+
+        sampleCount++;
+        if (minRttNanos == 0 || ttftNanos < minRttNanos || sampleCount % MIN_RTT_RESET_SAMPLES == 0) {
+            minRttNanos = ttftNanos;
+        }
+
+        // 梯度：延迟没有变大时为 1，延迟越大越小（最多一次收缩一半）
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * minRttNanos / (double) ttftNanos));
+
+        // 留出 sqrt(limit) 的排队余量，让上限在空闲时可以缓慢增长
+        double newLimit = limit * gradient + Math.sqrt(limit);
+
+        // 在途调用不到上限的一半，说明是请求量少而不是上游快，不增长
+        if (inFlight < limit / 2) {
+            newLimit = Math.min(newLimit, limit);
+        }
+
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        updateLimit(newLimit);
+    }
+
+    private synchronized void backoff() {
+        updateLimit(limit * backoffRatio);
+    }
+
+    private void updateLimit(double newLimit) {
+        double clamped = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) clamped != (int) limit) {
+            log.info("📐 并发上限调整: {} -> {}, inFlight: {}", (int) limit, (int) clamped, inFlight);
+        }
+        limit = clamped;
+    }
+
+    /**
+     * 等待队列中的一个调用
+     */
+    private final class Waiter {
+
+        private final MonoSink<Permit> sink;
+        private final Reservation reservation;
+
+        Waiter(MonoSink<Permit> sink, Reservation reservation) {
+            this.sink = sink;
+            this.reservation = reservation;
+        }
+
+        void grant() {
+            if (reservation != null) {
+                reservation.granted();
+            }
+            sink.success(new Permit());
+        }
+    }
+
+    /**
+     * 调度器出队时预留的额度
+     *
+     * 恰好被 acquire 消耗或 cancel 归还一次；请求没有走到 acquire（命中缓存、合并到其他生成、订阅前被取消）时
+     * 调用方必须 cancel，否则额度一直被占着
+     */
+    public class Reservation {
+
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile Runnable onGranted = () -> { };
+
+        /**
+         * 登记拿到许可时的回调（在释放许可的线程或订阅线程中执行，应当很快）
+         */
+        public void onGranted(Runnable callback) {
+            this.onGranted = callback;
+        }
+
+        /**
+         * 归还没有用掉的预留额度（已经被 acquire 消耗时什么也不做）
+         */
+        public void cancel() {
+            if (settled.compareAndSet(false, true)) {
+                unreserve();
+            }
+        }
+
+        private boolean consume() {
+            return settled.compareAndSet(false, true);
+        }
+
+        private void granted() {
+            try {
+                onGranted.run();
+            } catch (RuntimeException e) {
+                log.error("❌ 许可回调异常: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 一次调用持有的许可
+     *
+     * 调用方负责在流结束时恰好调用一次 onSuccess / onDropped / onIgnore
+     */
+    public class Permit {
+
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long firstChunkNanos;
+
+        /**
+         * 收到第一个片段时调用（记录 TTFT）
+         */
+        public void onFirstChunk() {
+            if (firstChunkNanos == 0) {
+                firstChunkNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * 调用正常结束：用延迟样本调整上限
+         */
+        public void onSuccess() {
+            if (released.compareAndSet(false, true)) {
+                long now = System.nanoTime();
+                long ttft = (firstChunkNanos == 0 ? now : firstChunkNanos) - startNanos;
+                onSample(ttft, now - startNanos);
+                release();
+            }
+        }
+
+        /**
+         * 调用失败（超时、限流、上游报错）：快速退避
+         */
+        public void onDropped() {
+            if (released.compareAndSet(false, true)) {
+                backoff();
+                release();
+            }
+        }
+
+        /**
+         * 调用被主动取消（例如前端断开）：不作为延迟样本
+         */
+        public void onIgnore() {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.xidian.chatservice.limiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 集群级限流器（带批量租约）
+ *
+ * 令牌存放在共享的 {@link TokenBucketStore} 中，所有实例共同消耗同一个桶，
+ * 扩容到 N 个实例后，打到大模型平台的总 QPS 仍然是 permitsPerSecond
+ *
+ * 为了不让每个请求都访问一次共享存储，每次向存储"批量预取" leaseBatchSize 个令牌，
+ * 本地用完再去取；租约有有效期，防止某个实例囤积令牌，过期未用完的令牌归还给共享存储（不浪费集群预算）
+ *
+ * 锁只保护本地租约，访问共享存储在锁外进行：同一时刻只有一个线程去预取，
+ * 其他线程发现租约已空、正在预取时直接返回 false（调用方稍后重试），不排队等一次远程调用
+ */
+public class ClusterRateLimiter {
+
+    private final TokenBucketStore store;
+    private final String key;
+    private final double permitsPerSecond;
+    private final long capacity;
+    private final long leaseBatchSize;
+    private final long leaseTtlNanos;
+
+    // ===== 以下字段受 this 锁保护 =====
+    // 本地租约中剩余的令牌
+    private long leasedPermits;
+    private long leaseExpireNanos;
+    // 是否有线程正在向共享存储预取
+    private boolean refilling;
+
+    /**
+     * @param store 令牌桶存储
+     * @param key 令牌桶的 key
+     * @param permitsPerSecond 集群总速率
+     * @param leaseBatchSize 每次预取的令牌数（1 表示不预取）
+     * @param leaseTtlMs 租约有效期（毫秒）
+     */
+    public ClusterRateLimiter(TokenBucketStore store, String key, double permitsPerSecond,
+                              long leaseBatchSize, long leaseTtlMs) {
+        this.store = store;
+        this.key = key;
+        this.permitsPerSecond = permitsPerSecond;
+        // 桶容量：最多允许 1 秒的突发
+        this.capacity = Math.max(1, (long) Math.ceil(permitsPerSecond));
+        this.leaseBatchSize = Math.max(1, leaseBatchSize);
+        this.leaseTtlNanos = TimeUnit.MILLISECONDS.toNanos(leaseTtlMs);
+    }
+
+    /**
+     * 尝试获取一个许可（不等待）
+     *
+     * @return 是否获取成功
+     */
+    public boolean tryAcquire() {
+        long expired;
+        synchronized (this) {
+            // 1. 本地租约还有令牌，直接使用（不访问共享存储）
+            if (leasedPermits > 0 && System.nanoTime() < leaseExpireNanos) {
+                leasedPermits--;
+                return true;
+            }
+            // 另一个线程正在预取，不在这里等它的远程调用
+            if (refilling) {
+                return false;
+            }
+            refilling = true;
+            expired = leasedPermits;
+            leasedPermits = 0;
+        }
+
+        // 2. 租约用完或已过期：在锁外归还过期的令牌，再向共享存储批量预取
+        long granted = 0;
+        try {
+            if (expired > 0) {
+                store.release(key, expired, permitsPerSecond, capacity);
+            }
+            granted = store.tryAcquire(key, leaseBatchSize, permitsPerSecond, capacity);
+        } finally {
+            synchronized (this) {
+                refilling = false;
+                if (granted > 0) {
+                    leasedPermits = granted - 1;
+                    leaseExpireNanos = System.nanoTime() + leaseTtlNanos;
+                }
+            }
+        }
+        return granted > 0;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,55 @@
+package com.xidian.chatservice.limiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存令牌桶（单实例部署使用）
+ *
+ * 只在当前 JVM 内生效，多实例部署时需要换成共享存储（如 Redis）
+ */
+public class InMemoryTokenBucketStore implements TokenBucketStore {
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    @Override
+    public long tryAcquire(String key, long permits, double permitsPerSecond, long capacity) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity));
+        synchronized (bucket) {
+            long now = System.nanoTime();
+            bucket.refill(now, permitsPerSecond, capacity);
+            long granted = Math.min(permits, (long) bucket.tokens);
+            bucket.tokens -= granted;
+            return granted;
+        }
+    }
+
+    @Override
+    public void release(String key, long permits, double permitsPerSecond, long capacity) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity));
+        synchronized (bucket) {
+            bucket.refill(System.nanoTime(), permitsPerSecond, capacity);
+            bucket.tokens = Math.min(capacity, bucket.tokens + permits);
+        }
+    }
+
+    /**
+     * 单个令牌桶
+     */
+    private static class Bucket {
+
+        private double tokens;
+        private long lastRefillNanos;
+
+        Bucket(long capacity) {
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        void refill(long now, double permitsPerSecond, long capacity) {
+            double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+            tokens = Math.min(capacity, tokens + elapsedSeconds * permitsPerSecond);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.xidian.chatservice.limiter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Redis 风格的令牌桶（本地替身）
+ *
+ * 项目里还没有引入 Redis 客户端，这里在进程内模拟 Redis 的行为：
+ * - 数据以 Hash 的形式存放（字段值都是字符串），和 HMGET / HMSET 一致
+ * - 单线程执行脚本：所有脚本串行执行，相当于 EVAL 的原子性
+ * - 使用"服务端时间"（TIME 命令）计算补充的令牌，避免各实例时钟不一致
+ * - 空闲的 key 会过期（PEXPIRE），不会无限堆积
+ * - 可以模拟一次网络往返的耗时，用于评估批量预取的收益
+ *
+ * 接入真实 Redis 时，只需用 {@link #LUA_SCRIPT} 实现同一个 {@link TokenBucketStore} 接口
+ */
+public class RedisStyleTokenBucketStore implements TokenBucketStore {
+
+    /**
+     * 真实 Redis 上执行的脚本（KEYS[1]=key, ARGV=permits, rate, capacity）
+     */
+    public static final String LUA_SCRIPT = """
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000000 + tonumber(t[2])
+            local data = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local rate = tonumber(ARGV[2])
+            local capacity = tonumber(ARGV[3])
+            local tokens = tonumber(data[1]) or capacity
+            local ts = tonumber(data[2]) or now
+            tokens = math.min(capacity, tokens + (now - ts) / 1000000 * rate)
+            local granted = math.min(tonumber(ARGV[1]), math.floor(tokens))
+            redis.call('HMSET', KEYS[1], 'tokens', tokens - granted, 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 1000)
+            return granted
+            """;
+
+    /**
+     * 归还令牌的脚本（KEYS[1]=key, ARGV=permits, rate, capacity）
+     */
+    public static final String RELEASE_LUA_SCRIPT = """
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000000 + tonumber(t[2])
+            local data = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local rate = tonumber(ARGV[2])
+            local capacity = tonumber(ARGV[3])
+            local tokens = tonumber(data[1]) or capacity
+            local ts = tonumber(data[2]) or now
+            tokens = math.min(capacity, tokens + (now - ts) / 1000000 * rate + tonumber(ARGV[1]))
+            redis.call('HMSET', KEYS[1], 'tokens', tokens, 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 1000)
+            return 0
+            """;
+
+    // 模拟的键空间：key -> Hash
+    private final Map<String, Map<String, String>> keyspace = new HashMap<>();
+
+    // key 的过期时间（微秒）
+    private final Map<String, Long> expireAt = new HashMap<>();
+
+    // 模拟一次网络往返的耗时（纳秒），0 表示不模拟
+    private final long roundTripNanos;
+
+    public RedisStyleTokenBucketStore() {
+        this(0);
+    }
+
+    public RedisStyleTokenBucketStore(long roundTripMicros) {
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    @Override
+    public long tryAcquire(String key, long permits, double permitsPerSecond, long capacity) {
+        // 请求发往 Redis（半个往返）
+        simulateNetwork();
+        long granted = eval(key, permits, permitsPerSecond, capacity);
+        // 结果返回客户端（半个往返）
+        simulateNetwork();
+        return granted;
+    }
+
+    @Override
+    public void release(String key, long permits, double permitsPerSecond, long capacity) {
+        simulateNetwork();
+        evalRelease(key, permits, permitsPerSecond, capacity);
+        simulateNetwork();
+    }
+
+    /**
+     * 与 LUA_SCRIPT 等价的逻辑；synchronized 模拟 Redis 单线程串行执行脚本
+     */
+    private synchronized long eval(String key, long permits, double permitsPerSecond, long capacity) {
+        long now = serverTimeMicros();
+        Map<String, String> hash = load(key, now);
+        double tokens = refill(hash, now, permitsPerSecond, capacity);
+        long granted = Math.min(permits, (long) Math.floor(tokens));
+        store(key, hash, tokens - granted, now, permitsPerSecond, capacity);
+        return granted;
+    }
+
+    /**
+     * 与 RELEASE_LUA_SCRIPT 等价的逻辑
+     */
+    private synchronized void evalRelease(String key, long permits, double permitsPerSecond, long capacity) {
+        long now = serverTimeMicros();
+        Map<String, String> hash = load(key, now);
+        double tokens = Math.min(capacity, refill(hash, now, permitsPerSecond, capacity) + permits);
+        store(key, hash, tokens, now, permitsPerSecond, capacity);
+    }
+
+    private Map<String, String> load(String key, long now) {
+        Long expire = expireAt.get(key);
+        if (expire != null && expire <= now) {
+            keyspace.remove(key);
+            expireAt.remove(key);
+        }
+        return keyspace.computeIfAbsent(key, k -> new HashMap<>());
+    }
+
+    private static double refill(Map<String, String> hash, long now, double permitsPerSecond, long capacity) {
+        double tokens = hash.containsKey("tokens") ? Double.parseDouble(hash.get("tokens")) : capacity;
+        long ts = hash.containsKey("ts") ? Long.parseLong(hash.get("ts")) : now;
+        return Math.min(capacity, tokens + (now - ts) / 1_000_000.0 * permitsPerSecond);
+    }
+
+    private void store(String key, Map<String, String> hash, double tokens, long now,
+                       double permitsPerSecond, long capacity) {
+        hash.put("tokens", String.valueOf(tokens));
+        hash.put("ts", String.valueOf(now));
+        expireAt.put(key, now + (long) Math.ceil(capacity / permitsPerSecond * 1_000_000) + 1_000_000);
+    }
+
+    /**
+     * 相当于 Redis 的 TIME 命令（微秒）
+     */
+    private long serverTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime());
+    }
+
+    private void simulateNetwork() {
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos / 2);
+        }
+    }
+}
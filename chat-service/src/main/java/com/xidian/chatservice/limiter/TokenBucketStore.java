@@ -0,0 +1,33 @@
+package com.xidian.chatservice.limiter;
+
+/**
+ * 令牌桶存储后端
+ *
+ * 所有实例共享同一个存储，才能做到"集群级"限流；
+ * 每次调用必须是原子的（Redis 用 Lua 脚本保证，内存实现用锁保证）
+ */
+public interface TokenBucketStore {
+
+    /**
+     * 从令牌桶中尽量取出 permits 个令牌
+     *
+     * 先按经过的时间补充令牌（不超过 capacity），再取 min(可用令牌, permits) 个
+     *
+     * @param key 令牌桶的 key（不同通道使用不同的桶）
+     * @param permits 希望获取的令牌数
+     * @param permitsPerSecond 令牌生成速率（集群总速率）
+     * @param capacity 桶容量（允许的最大突发）
+     * @return 实际取到的令牌数（0 ~ permits）
+     */
+    long tryAcquire(String key, long permits, double permitsPerSecond, long capacity);
+
+    /**
+     * 归还没有用掉的令牌（租约过期时），归还后不超过 capacity
+     *
+     * @param key 令牌桶的 key
+     * @param permits 归还的令牌数
+     * @param permitsPerSecond 令牌生成速率（集群总速率）
+     * @param capacity 桶容量
+     */
+    void release(String key, long permits, double permitsPerSecond, long capacity);
+}
@@ -1,13 +1,34 @@
 package com.xidian.chatservice.listener;
 
-import com.google.common.util.concurrent.RateLimiter;
+import com.xidian.chatservice.cluster.ResponseFanoutRelay;
+import com.xidian.chatservice.dispatch.PriorityDispatcher;
+import com.xidian.chatservice.dispatch.PriorityLane;
+import com.xidian.chatservice.limiter.AdaptiveConcurrencyLimiter;
+import com.xidian.chatservice.manager.ChatResponseSink;
 import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.manager.SseStreamSubscriber;
+import com.xidian.chatservice.metrics.ChatLatencyMetrics;
 import com.xidian.chatservice.model.ChatRequest;
-import com.xidian.chatservice.model.ChatResponse;
+import com.xidian.chatservice.properties.ChatListenerProperties;
 import com.xidian.chatservice.service.LLMService;
+import com.xidian.chatservice.service.impl.ConcurrencyLimitedLLMService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.context.Context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Kafka 消费者
@@ -17,73 +38,272 @@ import org.springframework.stereotype.Component;
 @Component
 public class ChatRequestListener {
 
+    // 监听容器 ID（暂停 / 恢复拉取时按 ID 查找容器）
+    public static final String NORMAL_LISTENER_ID = "chat-request-listener";
+    public static final String VIP_LISTENER_ID = "chat-request-vip-listener";
+
+    // 大模型流最多领先 SSE 写入的片段数（背压缓冲区大小）
+    private static final int STREAM_PREFETCH = 32;
+
     private final SseEmitterManager sseEmitterManager;
     private final LLMService llmService;
 
-    // 限流器：每秒最多 20 个请求（通义千问限制）
-    private final RateLimiter rateLimiter = RateLimiter.create(20.0);
+    // 大模型输出的去向：单实例写本地连接，多实例经响应 Topic 广播
+    private final ChatResponseSink responseSink;
+
+    // 优先级调度器（VIP / 普通通道，各自独立限流）
+    private final PriorityDispatcher priorityDispatcher;
+
+    // SSE 写入调度器（不占用 Kafka 消费线程和 Netty 事件循环线程）
+    private final Scheduler chatStreamScheduler;
+
+    // 虚拟线程模式：每条消息一个虚拟线程，按 ordering 保序（同一分区内也可以并行），生成结束后才 ack
+    private final boolean virtualMode;
+    private final ChatListenerProperties.Ordering ordering;
+    private final KeyOrderedExecutor recordExecutor;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+
+    // 请求链路延迟指标（排队、限流等待、首字延迟、片段间隔、总耗时）
+    private final ChatLatencyMetrics latencyMetrics;
 
     public ChatRequestListener(SseEmitterManager sseEmitterManager,
-                               LLMService llmService) {
+                               LLMService llmService,
+                               PriorityDispatcher priorityDispatcher,
+                               @Qualifier("chatStreamScheduler") Scheduler chatStreamScheduler,
+                               ChatListenerProperties listenerProperties,
+                               @Qualifier("chatRecordExecutor") KeyOrderedExecutor recordExecutor,
+                               ObjectProvider<ResponseFanoutRelay> fanoutRelay,
+                               ChatLatencyMetrics latencyMetrics,
+                               KafkaListenerEndpointRegistry listenerRegistry) {
         this.sseEmitterManager = sseEmitterManager;
         this.llmService = llmService;
+        this.responseSink = fanoutRelay.getIfAvailable(() -> sseEmitterManager);
+        this.priorityDispatcher = priorityDispatcher;
+        this.chatStreamScheduler = chatStreamScheduler;
+        this.virtualMode = listenerProperties.getMode() == ChatListenerProperties.Mode.VIRTUAL;
+        this.ordering = listenerProperties.getOrdering();
+        this.recordExecutor = recordExecutor;
+        this.latencyMetrics = latencyMetrics;
+        this.listenerRegistry = listenerRegistry;
+
+        // 在途消息达到上限时暂停拉取（不阻塞消费线程），回落后恢复
+        recordExecutor.onPressure(new KeyOrderedExecutor.Pressure() {
+            @Override
+            public void saturated() {
+                forEachListener(MessageListenerContainer::pause, NORMAL_LISTENER_ID, VIP_LISTENER_ID);
+            }
+
+            @Override
+            public void drained() {
+                forEachListener(MessageListenerContainer::resume, NORMAL_LISTENER_ID, VIP_LISTENER_ID);
+            }
+        });
+
+        // 通道排满时只暂停这条通道的消费（VIP 不受普通通道积压影响），回落后恢复
+        priorityDispatcher.onLanePressure(new PriorityDispatcher.LanePressure() {
+            @Override
+            public void saturated(PriorityLane lane) {
+                forEachListener(MessageListenerContainer::pause, listenerId(lane));
+            }
+
+            @Override
+            public void drained(PriorityLane lane) {
+                forEachListener(MessageListenerContainer::resume, listenerId(lane));
+            }
+        });
     }
 
     /**
-     * 监听 Kafka 消息
+     * 监听普通通道
      *
      * topics: 监听的 Topic 名称
      * groupId: 消费者组ID
      * concurrency: 并发线程数（5个线程同时消费）
      */
     @KafkaListener(
+            id = NORMAL_LISTENER_ID,
+            idIsGroup = false,
             topics = "chat-request",
             groupId = "chat-consumer-group",
             concurrency = "5"
     )
-    public void handleChatRequest(ChatRequest request) {
-        String requestId = request.getRequestId();
-        log.info("🎯 开始处理请求: {}, question: {}", requestId, request.getQuestion());
+    public void handleChatRequest(ChatRequest request, Acknowledgment ack,
+                                  @Header(KafkaHeaders.RECEIVED_PARTITION) int partition) {
+        dispatch(PriorityLane.NORMAL, partition, request, ack);
+    }
 
-        try {
-            // 1. 限流控制（阻塞直到获取许可）
-            rateLimiter.acquire();
-            log.info("🚦 获取限流许可: {}", requestId);
-
-            // 2. 等待 SSE 连接建立（最多等待 10 秒）
-            int waitCount = 0;
-            while (!sseEmitterManager.exists(requestId) && waitCount < 100) {
-                Thread.sleep(100);  // 每次等待 100ms
-                waitCount++;
+    /**
+     * 监听 VIP 通道
+     *
+     * 使用独立的消费线程：普通通道积压（暂停消费）时，VIP 消息照常消费
+     */
+    @KafkaListener(
+            id = VIP_LISTENER_ID,
+            idIsGroup = false,
+            topics = "chat-request-vip",
+            groupId = "chat-consumer-group",
+            concurrency = "2"
+    )
+    public void handleVipChatRequest(ChatRequest request, Acknowledgment ack,
+                                     @Header(KafkaHeaders.RECEIVED_PARTITION) int partition) {
+        dispatch(PriorityLane.VIP, partition, request, ack);
+    }
+
+    /**
+     * 把请求放入对应的优先级通道，由调度器按权重、限流和并发上限出队
+     *
+     * 拿到并发许可（或者命中缓存、合并到其他生成、结束）时才 ack：还在通道里排队、等待许可的请求都没有提交位点，
+     * 进程退出后重新投递。ack 乱序到达，由容器的 asyncAcks 只提交连续完成的水位线
+     *
+     * 通道已满（上游变慢、并发上限收缩）时不阻塞消费线程、也不退回，而是暂停这条通道的消费，排队回落后恢复
+     *
+     * 虚拟线程模式下交给 recordExecutor，消费线程只负责拉取（在途消息过多时暂停容器，不阻塞）
+     */
+    private void dispatch(PriorityLane lane, int partition, ChatRequest request, Acknowledgment ack) {
+        log.info("🎯 开始处理请求: {}, lane: {}, question: {}",
+                request.getRequestId(), lane, request.getQuestion());
+
+        // 从这里开始计时：提交到取出为排队时间，取出到拿到许可为限流等待
+        ChatLatencyMetrics.Trace trace = latencyMetrics.start(request);
+
+        if (virtualMode) {
+            recordExecutor.submit(orderingKey(lane, partition, request),
+                    () -> processRecord(lane, request, trace, ack));
+            return;
+        }
+
+        // 1. 放入通道（拿到许可时 ack，只 ack 一次）
+        Runnable acknowledge = once(ack::acknowledge);
+        priorityDispatcher.offer(lane, reservation -> {
+            try {
+                process(request, trace, reservation, acknowledge, new CompletableFuture<>());
+            } catch (RuntimeException e) {
+                // 没能开始生成也要 ack，否则这个分区的位点会一直停在这里
+                acknowledge.run();
+                throw e;
             }
+        });
+    }
 
-            // 如果 10 秒后还没建立连接，放弃处理
-            if (!sseEmitterManager.exists(requestId)) {
-                log.warn("⚠️ SSE 连接未建立，放弃处理: {}", requestId);
-                return;
+    /**
+     * 暂停 / 恢复监听容器：暂停后已拉取的这一批照常处理，下一次 poll 起不再返回消息（心跳照常，不触发再均衡）
+     */
+    private void forEachListener(Consumer<MessageListenerContainer> action, String... ids) {
+        for (String id : ids) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container != null) {
+                action.accept(container);
             }
+        }
+    }
+
+    private static String listenerId(PriorityLane lane) {
+        return lane == PriorityLane.VIP ? VIP_LISTENER_ID : NORMAL_LISTENER_ID;
+    }
 
-            log.info("✅ SSE 连接已建立，开始调用大模型: {}", requestId);
+    private static Runnable once(Runnable action) {
+        AtomicBoolean done = new AtomicBoolean();
+        return () -> {
+            if (!done.get() && done.compareAndSet(false, true)) {
+                action.run();
+            }
+        };
+    }
 
-            // 3. 调用大模型 API（流式响应）
-            llmService.streamChat(request, (chunk) -> {
-                // 每收到一个片段，就推送给前端
-                ChatResponse response = ChatResponse.chunk(requestId, chunk);
-                sseEmitterManager.sendMessage(requestId, response);
-            });
+    /**
+     * 保序的 key：相同 key 的消息串行处理，不同 key 并行
+     *
+     * 没有会话 / 用户信息的请求彼此独立，用 requestId 作为 key（不保序）
+     */
+    private String orderingKey(PriorityLane lane, int partition, ChatRequest request) {
+        return switch (ordering) {
+            case PARTITION -> lane.getTopic() + "-" + partition;
+            case SESSION -> StringUtils.hasText(request.getSessionId())
+                    ? "session:" + request.getSessionId()
+                    : userKey(request);
+            case USER -> userKey(request);
+        };
+    }
 
-            // 4. 完成响应
-            sseEmitterManager.complete(requestId, "");
-            log.info("✅ 请求处理完成: {}", requestId);
+    private static String userKey(ChatRequest request) {
+        return StringUtils.hasText(request.getUserId())
+                ? "user:" + request.getUserId()
+                : "request:" + request.getRequestId();
+    }
 
+    /**
+     * 虚拟线程模式下处理一条消息（在虚拟线程中执行，可以放心阻塞）
+     *
+     * 通道满了就等，生成结束后才 ack：进程中途退出时，没有生成完的请求会被重新投递
+     */
+    private void processRecord(PriorityLane lane, ChatRequest request, ChatLatencyMetrics.Trace trace,
+                               Acknowledgment ack) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            priorityDispatcher.put(lane, reservation -> {
+                try {
+                    process(request, trace, reservation, () -> { }, done);
+                } catch (RuntimeException e) {
+                    // 没能开始生成也要结束等待，否则这个分区会一直卡住
+                    done.completeExceptionally(e);
+                    throw e;
+                }
+            });
+            done.exceptionally(e -> null).join();
+            ack.acknowledge();
         } catch (InterruptedException e) {
-            log.error("❌ 请求处理被中断: {}", requestId);
-            sseEmitterManager.sendError(requestId, "处理被中断");
+            // 停机中，不 ack，重启后重新投递
             Thread.currentThread().interrupt();
+            log.warn("⚠️ 处理被中断，等待重新投递: {}", request.getRequestId());
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("❌ 请求处理异常: {}, error: {}", requestId, e.getMessage(), e);
-            sseEmitterManager.sendError(requestId, "处理异常: " + e.getMessage());
+    /**
+     * 出队后执行（在调度线程中执行，只做订阅，不阻塞）
+     *
+     * 大模型调用经过 ConcurrencyLimitedLLMService，用出队时预留的额度获取许可，在途调用数受自适应上限约束
+     *
+     * @param trace 延迟跟踪（拿到许可、每个片段、结束时记录；经 Reactor Context 交给服务层标记输出来源）
+     * @param reservation 出队时预留的并发额度（经 Reactor Context 带给 ConcurrencyLimitedLLMService，不用时归还）
+     * @param onStarted 拿到许可、收到第一个片段或结束时调用（平台线程模式下在这里 ack），可能被调用多次
+     * @param done 生成结束（完成、出错或被取消）时完成
+     */
+    private void process(ChatRequest request, ChatLatencyMetrics.Trace trace,
+                         AdaptiveConcurrencyLimiter.Reservation reservation,
+                         Runnable onStarted, CompletableFuture<Void> done) {
+        String requestId = request.getRequestId();
+
+        // 2. 立即打开流，不等前端建立 SSE 连接：片段先缓存，前端连接时补发
+        if (!sseEmitterManager.openStream(requestId)) {
+            log.warn("⚠️ 请求已在处理中，忽略重复消息: {}", requestId);
+            reservation.cancel();
+            onStarted.run();
+            done.complete(null);
+            return;
         }
+
+        log.info("✅ 开始调用大模型: {}", requestId);
+        // limiter.wait 记到拿到并发许可为止（命中缓存、合并到其他生成时不拿许可，不记录）
+        reservation.onGranted(() -> {
+            trace.dispatched();
+            log.info("🚦 拿到并发许可: {}", requestId);
+            onStarted.run();
+        });
+
+        // 3. 订阅大模型流（非阻塞），由 SseStreamSubscriber 逐个片段推送给前端
+        //    publishOn 的队列最多缓存 STREAM_PREFETCH 个片段，SSE 写得慢时上游自动减速
+        //    命中缓存、合并到其他生成时不会用到预留额度，结束时归还
+        llmService.streamChatReactive(request)
+                .contextWrite(Context.of(ConcurrencyLimitedLLMService.RESERVATION_KEY, reservation,
+                        ChatLatencyMetrics.TRACE_KEY, trace))
+                .subscribeOn(chatStreamScheduler)
+                .doOnNext(chunk -> onStarted.run())
+                .publishOn(chatStreamScheduler, STREAM_PREFETCH)
+                .doFinally(signal -> {
+                    reservation.cancel();
+                    onStarted.run();
+                    done.complete(null);
+                })
+                .subscribe(new SseStreamSubscriber(requestId, responseSink, trace));
     }
-}
\ No newline at end of file
+}
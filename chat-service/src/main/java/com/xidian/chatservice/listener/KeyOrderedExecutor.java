@@ -0,0 +1,139 @@
+package com.xidian.chatservice.listener;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按 key 保序的执行器（思路参考 Confluent parallel-consumer）
+ *
+ * 每条消息交给 executor（虚拟线程）执行，同一个 key 的消息串成一条链，
+ * 前一条执行完才开始下一条；不同 key 之间完全并行，哪怕它们来自同一个分区。
+ * key 可以是 topic-partition（分区内严格保序），也可以是 sessionId / userId（只在会话或用户内保序）。
+ *
+ * 同一分区内的消息因此会乱序完成，位点提交由监听容器的 asyncAcks 负责：
+ * 只提交"之前所有消息都已完成"的连续位点（水位线），没完成的消息在重启后重新投递。
+ *
+ * 提交从不阻塞消费线程（阻塞超过 max.poll.interval.ms 会触发再均衡）：
+ * 在途消息数达到上限时通知 Pressure 暂停监听容器，降到一半以下时恢复。
+ * 暂停在下一次 poll 生效，已经拉取到的这一批仍会提交，所以上限是软上限（最多超出一批）
+ */
+@Slf4j
+public class KeyOrderedExecutor {
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // 是否已通知暂停（saturated 和 drained 成对调用，状态切换在 this 上加锁，保证回调的先后顺序）
+    private volatile boolean saturated;
+    private volatile Pressure pressure = Pressure.NONE;
+
+    // 每个 key 最后一条消息的完成信号（链尾），执行完且没有后继时移除，map 大小不超过在途消息数
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    /**
+     * @param executor 执行消息的线程（虚拟线程执行器）
+     * @param maxInFlight 同时在途的消息数上限
+     */
+    public KeyOrderedExecutor(Executor executor, int maxInFlight) {
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 登记在途消息数的高低水位回调（由监听器暂停 / 恢复容器）
+     */
+    public void onPressure(Pressure pressure) {
+        this.pressure = pressure;
+    }
+
+    /**
+     * 提交一条消息
+     *
+     * @param key 保序的粒度（同一 key 串行，不同 key 并行）
+     * @param task 处理逻辑（可以阻塞，直到这条消息处理完）
+     */
+    public void submit(String key, Runnable task) {
+        if (inFlight.incrementAndGet() >= maxInFlight) {
+            updatePressure();
+        }
+
+        CompletableFuture<Void> current = tails.compute(key, (k, tail) -> {
+            CompletableFuture<Void> previous = tail == null ? CompletableFuture.completedFuture(null) : tail;
+            // 不管前一条成功与否，都接着执行
+            return previous.handleAsync((r, e) -> {
+                runSafely(key, task);
+                return null;
+            }, executor);
+        });
+        current.whenComplete((r, e) -> {
+            tails.remove(key, current);
+            inFlight.decrementAndGet();
+            if (saturated) {
+                updatePressure();
+            }
+        });
+    }
+
+    /**
+     * 按当前在途消息数切换暂停状态（只在接近上限或已暂停时调用，平时不加锁）
+     */
+    private synchronized void updatePressure() {
+        int count = inFlight.get();
+        if (!saturated && count >= maxInFlight) {
+            saturated = true;
+            log.warn("⚠️ 在途消息数达到上限 {}，暂停拉取", maxInFlight);
+            pressure.saturated();
+        } else if (saturated && count <= maxInFlight / 2) {
+            saturated = false;
+            log.info("在途消息数回落到 {}，恢复拉取", count);
+            pressure.drained();
+        }
+    }
+
+    /**
+     * 当前在途（排队 + 执行中）的消息数
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * 在途消息数的高低水位回调
+     */
+    public interface Pressure {
+
+        Pressure NONE = new Pressure() {
+            @Override
+            public void saturated() {
+            }
+
+            @Override
+            public void drained() {
+            }
+        };
+
+        /**
+         * 在途消息数达到上限（在消费线程中调用）
+         */
+        void saturated();
+
+        /**
+         * 在途消息数降到上限的一半以下（在执行消息的线程中调用）
+         */
+        void drained();
+    }
+
+    private void runSafely(String key, Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("❌ 消息处理异常: {}, error: {}", key, e.getMessage(), e);
+        }
+    }
+}
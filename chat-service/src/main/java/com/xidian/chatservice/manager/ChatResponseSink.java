@@ -0,0 +1,69 @@
+package com.xidian.chatservice.manager;
+
+import com.xidian.chatservice.model.ChatResponse;
+
+/**
+ * 大模型输出的去向
+ *
+ * 单实例部署时直接写本地的 SseEmitterManager；
+ * 多实例部署时写 ResponseFanoutRelay，经 Kafka 广播到持有前端连接的实例
+ */
+public interface ChatResponseSink {
+
+    /**
+     * 推送一个内容片段
+     *
+     * @return 返回 false 时调用方应停止生成
+     */
+    boolean sendMessage(String requestId, ChatResponse response);
+
+    /**
+     * 生成正常结束
+     */
+    void complete(String requestId, String finalMessage);
+
+    /**
+     * 生成异常结束
+     */
+    void sendError(String requestId, String errorMessage);
+
+    /**
+     * 打开一个请求的输出通道（生成开始时调用一次）
+     *
+     * 调用方持有通道，之后每个片段直接写通道，不再按 requestId 查找；
+     * 默认实现只是转调上面三个方法
+     */
+    default Channel open(String requestId) {
+        return new Channel() {
+            @Override
+            public boolean send(String content) {
+                return sendMessage(requestId, ChatResponse.chunk(requestId, content));
+            }
+
+            @Override
+            public void complete(String finalMessage) {
+                ChatResponseSink.this.complete(requestId, finalMessage);
+            }
+
+            @Override
+            public void error(String errorMessage) {
+                sendError(requestId, errorMessage);
+            }
+        };
+    }
+
+    /**
+     * 单个请求的输出通道
+     */
+    interface Channel {
+
+        /**
+         * @return 返回 false 时调用方应停止生成
+         */
+        boolean send(String content);
+
+        void complete(String finalMessage);
+
+        void error(String errorMessage);
+    }
+}
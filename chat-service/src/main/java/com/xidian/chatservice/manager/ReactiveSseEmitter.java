@@ -0,0 +1,82 @@
+package com.xidian.chatservice.manager;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 响应式 SSE 连接（运行在 Netty 上，不占用 Servlet 异步上下文）
+ *
+ * 对 SseStream 来说它和普通 SseEmitter 一样：合并写入、重放缓冲区、断线续传全部复用；
+ * 区别是帧不交给 Servlet 容器，而是写进这个连接自己的 Sinks.Many，由 Netty 事件循环订阅后写出
+ *
+ * - send：帧放进有界队列（queueFrames 帧），前端读得太慢、队列满时抛 IOException，
+ *   SseStream 会把连接当作已断开（帧仍在重放缓冲区里，前端重连后补发）
+ * - complete / completeWithError：结束 Flux（错误帧已经写出，HTTP 响应正常结束）
+ * - Flux 结束或被前端取消时，调用 onCompletion 注册的回调（SseEmitterManager 在这里断开流）
+ *
+ * send 只在 SseStream 的锁内调用，对 Sink 的写入天然是串行的
+ */
+public class ReactiveSseEmitter extends SseEmitter {
+
+    private final Sinks.Many<byte[]> sink;
+
+    private volatile Runnable completionCallback;
+
+    public ReactiveSseEmitter(int queueFrames) {
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<byte[]>get(queueFrames).get());
+    }
+
+    /**
+     * 发给前端的帧（每个元素是一帧完整的 SSE 事件）
+     */
+    public Flux<byte[]> frames() {
+        return sink.asFlux().doFinally(signal -> {
+            Runnable callback = completionCallback;
+            if (callback != null) {
+                callback.run();
+            }
+        });
+    }
+
+    @Override
+    public void send(Set<DataWithMediaType> items) throws IOException {
+        for (DataWithMediaType item : items) {
+            Sinks.EmitResult result = sink.tryEmitNext((byte[]) item.getData());
+            if (result.isFailure()) {
+                throw new IOException("响应式 SSE 连接不可写: " + result);
+            }
+        }
+    }
+
+    @Override
+    public void complete() {
+        sink.tryEmitComplete();
+    }
+
+    @Override
+    public void completeWithError(Throwable ex) {
+        // 错误帧已经写出，正常结束 HTTP 响应
+        sink.tryEmitComplete();
+    }
+
+    @Override
+    public void onCompletion(Runnable callback) {
+        this.completionCallback = callback;
+    }
+
+    @Override
+    public void onTimeout(Runnable callback) {
+        // 没有容器超时，连接时长由 SseEmitterManager 的时间轮限制，到期时 complete，结束时走 onCompletion
+    }
+
+    @Override
+    public void onError(Consumer<Throwable> callback) {
+        // 前端断开表现为取消订阅，同样走 onCompletion
+    }
+}
@@ -0,0 +1,98 @@
+package com.xidian.chatservice.manager;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量请求的多路复用 SSE 连接
+ *
+ * 一个批次的所有请求共用一个 HTTP 连接。每个请求仍然有自己的 SseStream（合并写入、重放缓冲区都不变），
+ * 只是 attach 的不是独立的 SseEmitter，而是这里的成员 emitter：
+ * - send：帧原样写到共享连接，帧的 data 里带 requestId，前端按它分流；
+ *   ResponseBodyEmitter.send 本身是同步的，不同请求的帧不会交错
+ * - complete / completeWithError：只表示这个请求结束（结束帧 / 错误帧已经写出），全部请求结束后关闭共享连接
+ *
+ * 帧 id 按请求各自递增，批量连接不支持 Last-Event-ID 续传，单个请求可以改用 /api/stream/{requestId} 续传
+ */
+public class SseBatchEmitter {
+
+    private final SseEmitter connection;
+
+    // 还没有结束的请求数
+    private final AtomicInteger remaining;
+
+    public SseBatchEmitter(SseEmitter connection, int size) {
+        this.connection = connection;
+        this.remaining = new AtomicInteger(size);
+    }
+
+    public SseEmitter getConnection() {
+        return connection;
+    }
+
+    /**
+     * 为批次中的一个请求创建成员 emitter（交给 SseStream.attach）
+     */
+    public SseEmitter newMember() {
+        return new Member();
+    }
+
+    /**
+     * 批次内的请求是否都已结束
+     */
+    public boolean isDone() {
+        return remaining.get() == 0;
+    }
+
+    /**
+     * 在共享连接上写一个心跳
+     *
+     * @return 连接已不可写时返回 false
+     */
+    public boolean heartbeat() {
+        try {
+            connection.send(Set.of(new DataWithMediaType(SseStream.HEARTBEAT, MediaType.TEXT_EVENT_STREAM)));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void memberDone() {
+        if (remaining.decrementAndGet() == 0) {
+            connection.complete();
+        }
+    }
+
+    /**
+     * 写入共享连接的成员 emitter（不会交给容器，自己不持有连接，心跳和时长由批次负责）
+     */
+    final class Member extends SseEmitter {
+
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            connection.send(items);
+        }
+
+        @Override
+        public void complete() {
+            if (done.compareAndSet(false, true)) {
+                memberDone();
+            }
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            // 错误帧已经写出，共享连接上的其他请求不受影响
+            complete();
+        }
+    }
+}
@@ -1,14 +1,29 @@
 package com.xidian.chatservice.manager;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xidian.chatservice.model.ChatResponse;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * SSE 连接管理器
@@ -16,17 +31,90 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 @Slf4j
 @Component
-public class SseEmitterManager {
+public class SseEmitterManager implements ChatResponseSink {
 
-    // 存储 requestId 和 SseEmitter 的映射
-    // 为什么用 ConcurrentHashMap？因为多个线程会同时访问
-    private final Map<String, SseEmitter> emitterMap = new ConcurrentHashMap<>();
+    // 存储 requestId 和 SseStream（SseEmitter + 合并写入缓冲区 + 重放缓冲区）的映射
+    // 前端断开后流仍会保留一段时间，等待带 Last-Event-ID 的重连
+    // 键是 UUID 的两个 long，按分片加锁（见 StreamRegistry）；生成过程中的片段经 open 返回的通道直接写流，不查这张表
+    private final StreamRegistry<SseStream> streamMap;
 
-    // 超时时间：5分钟（300秒）
-    private static final long TIMEOUT = 5 * 60 * 1000L;
+    private static final String RESUME_EXPIRED = "续传数据已过期，请重新提问";
 
-    // JSON 转换工具
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String PENDING_ABORTED = "等待连接超时或缓冲已满，已停止生成，请重新提问";
+
+    // 所有重放缓冲区共享的字节计数
+    private final AtomicLong replayBytes = new AtomicLong();
+
+    // 已结束的流（按结束先后），重放缓冲区超出总量时从队头开始回收
+    private final Queue<FinishedStream> finishedQueue = new ConcurrentLinkedQueue<>();
+
+    // 批次 ID → 批次内的 requestId（批量提交时登记，连接批量 SSE 时使用），一段时间无人连接后过期
+    private final Cache<String, List<String>> batches;
+
+    // 合并写入的定时 flush 调度器
+    private final TaskScheduler flushScheduler;
+
+    // 所有连接共用的写线程池：帧先进入每个连接的发送队列（SseOutbound），由这里的线程写出
+    private final Executor writerExecutor;
+    private final SseOutbound.Stats outboundStats = new SseOutbound.Stats();
+    // 单次写入超时检测（慢连接断开，卡住期间给写线程池补线程）
+    private final SseWriteWatchdog writeWatchdog;
+
+    // 所有流的心跳、空闲超时、连接时长和过期回收共用一个时间轮（每个流同一时刻只有一个定时任务）
+    private final TimingWheel timingWheel;
+    private final long heartbeatNanos;
+    private final long idleTimeoutNanos;
+    private final long maxConnectionNanos;
+
+    private final ChatStreamProperties properties;
+
+    // 前端连接时，流已经打开了多久（纳秒）；由延迟指标登记，默认不记录
+    private volatile LongConsumer rendezvousListener = nanos -> { };
+
+    // 前端首次连接到一个本实例没有生成的流时的回调（参数为 requestId）；由响应广播登记，默认不处理
+    private volatile Consumer<String> remoteAttachListener = requestId -> { };
+
+    public SseEmitterManager(@Qualifier("sseFlushScheduler") TaskScheduler flushScheduler,
+                             @Qualifier("sseWriterExecutor") Executor writerExecutor,
+                             @Qualifier("sseTimerExecutor") Executor timerExecutor,
+                             ChatStreamProperties properties) {
+        this.flushScheduler = flushScheduler;
+        this.writerExecutor = writerExecutor;
+        this.writeWatchdog = new SseWriteWatchdog(properties.getWriteTimeoutMs(), writerExecutor,
+                properties.getWriterMaxThreads());
+        this.properties = properties;
+        this.streamMap = new StreamRegistry<>(properties.getRegistryShards());
+        this.batches = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(properties.getMaxConnectionMs()))
+                .build();
+        // 到期任务在独立的线程池上执行：写线程全部卡在慢连接上时，心跳、超时和写入超时检查照常进行
+        // （到期任务只入队、不写 socket；批量连接的心跳交给写线程池）
+        this.timingWheel = new TimingWheel("sse-timer", properties.getTimerTickMs(), properties.getTimerWheelSize(),
+                timerExecutor);
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(properties.getHeartbeatIntervalMs());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(properties.getIdleTimeoutMs());
+        this.maxConnectionNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMaxConnectionMs());
+        watchWrites();
+    }
+
+    @PreDestroy
+    public void stop() {
+        timingWheel.stop();
+    }
+
+    /**
+     * 登记前端连接时的回调：参数是流打开后等了多久前端才连接（纳秒），前端先连接时为 0
+     */
+    public void onRendezvous(LongConsumer listener) {
+        this.rendezvousListener = listener;
+    }
+
+    /**
+     * 登记前端首次连接时的回调：本实例还没有开始生成这个请求（生成可能在其他实例上），参数是 requestId
+     */
+    public void onRemoteAttach(Consumer<String> listener) {
+        this.remoteAttachListener = listener;
+    }
 
     /**
      * 创建 SSE 连接
@@ -35,64 +123,200 @@ public class SseEmitterManager {
      * @return SseEmitter 对象
      */
     public SseEmitter createEmitter(String requestId) {
+        return createEmitter(requestId, 0);
+    }
+
+    /**
+     * 创建（或恢复）SSE 连接
+     *
+     * 流已存在时（前端断线重连），先重放 lastEventId 之后的帧，再继续实时推送
+     *
+     * @param requestId 请求ID
+     * @param lastEventId 前端收到的最后一帧 ID（Last-Event-ID 请求头，首次连接为 0）
+     * @return SseEmitter 对象
+     */
+    public SseEmitter createEmitter(String requestId, long lastEventId) {
         // 创建 SseEmitter 对象，设置超时时间
-        SseEmitter emitter = new SseEmitter(TIMEOUT);
+        return attachEmitter(requestId, lastEventId, newEmitter());
+    }
+
+    /**
+     * 创建（或恢复）响应式 SSE 连接（Netty 上的 /api/stream/{requestId}）
+     *
+     * 与 createEmitter 共用同一个流：合并写入、重放缓冲区、断线续传的行为完全相同
+     *
+     * @param requestId 请求ID
+     * @param lastEventId 前端收到的最后一帧 ID（首次连接为 0）
+     * @return 响应式连接，帧从 frames() 读取
+     */
+    public ReactiveSseEmitter createReactiveEmitter(String requestId, long lastEventId) {
+        return attachEmitter(requestId, lastEventId, new ReactiveSseEmitter(properties.getReactiveQueueFrames()));
+    }
+
+    /**
+     * 把连接挂到请求的流上（不存在时新建），重放 lastEventId 之后的帧
+     */
+    private <T extends SseEmitter> T attachEmitter(String requestId, long lastEventId, T emitter) {
+        // 已回收的流视为不存在
+        SseStream stream = streamMap.compute(requestId,
+                (id, old) -> old == null || old.isClosed() ? newStream(id) : old);
+        boolean firstAttach = stream.isPending();
 
         // 注册完成回调（连接正常关闭时触发）
         emitter.onCompletion(() -> {
             log.info("SSE 连接完成: {}", requestId);
-            emitterMap.remove(requestId);  // 从 Map 中删除
+            detachStream(requestId, stream, emitter);
         });
 
-        // 注册超时回调（超过5分钟未完成时触发）
+        // 注册超时回调（连接时长由时间轮管理，容器不再计时，一般不会触发）
         emitter.onTimeout(() -> {
             log.warn("SSE 连接超时: {}", requestId);
-            emitterMap.remove(requestId);
+            detachStream(requestId, stream, emitter);
         });
 
         // 注册错误回调（连接出错时触发）
         emitter.onError((e) -> {
             log.error("SSE 连接异常: {}, error: {}", requestId, e.getMessage());
-            emitterMap.remove(requestId);
+            detachStream(requestId, stream, emitter);
         });
 
-        // 存储到 Map 中
-        emitterMap.put(requestId, emitter);
-        log.info("创建 SSE 连接: {}, 当前连接数: {}", requestId, emitterMap.size());
+        if (!stream.attach(emitter, lastEventId)) {
+            // 缺失的帧已被淘汰（或流刚好被回收），无法无缝续传
+            log.warn("SSE 续传失败: {}, lastEventId: {}", requestId, lastEventId);
+            rejectResume(requestId, emitter);
+            return emitter;
+        }
 
+        long claimedAt = stream.getClaimedAtNanos();
+        if (firstAttach && claimedAt != 0) {
+            // 生成先开始，前端后连接：这段时间的片段都在缓冲区里等着
+            rendezvousListener.accept(System.nanoTime() - claimedAt);
+        } else if (firstAttach && lastEventId == 0) {
+            // 本实例没有生成这个请求：其他实例可能已经生成了一部分，请它补发
+            remoteAttachListener.accept(requestId);
+        }
+
+        if (lastEventId > 0) {
+            log.info("恢复 SSE 连接: {}, lastEventId: {}", requestId, lastEventId);
+        } else {
+            log.info("创建 SSE 连接: {}, 当前连接数: {}", requestId, streamMap.size());
+        }
+
+        enforceReplayBudget();
         return emitter;
     }
 
     /**
-     * 推送消息到前端
+     * 登记一个批次（批量提交接口在请求全部入队后调用）
      *
-     * @param requestId 请求ID
-     * @param response 响应对象
-     * @return 是否成功
+     * 批次只保存在本实例的内存中，批量 SSE 连接必须连到提交所在的实例（广播模式下不支持批量提交）
      */
-    public boolean sendMessage(String requestId, ChatResponse response) {
-        // 从 Map 中获取对应的 SseEmitter
-        SseEmitter emitter = emitterMap.get(requestId);
+    public void registerBatch(String batchId, List<String> requestIds) {
+        batches.put(batchId, List.copyOf(requestIds));
+    }
 
-        if (emitter == null) {
-            log.warn("SSE 连接不存在: {}", requestId);
-            return false;
+    /**
+     * 创建批量 SSE 连接：批次内所有请求的输出都写到这一个连接上
+     *
+     * 每个请求照常创建（或复用）自己的流，attach 共享连接的成员 emitter，
+     * 已经生成的内容先补发，之后实时推送；全部请求结束后连接关闭
+     *
+     * @param batchId 批次ID（从 /api/chat/submit/batch 获得）
+     * @return 批次不存在（或已过期）时返回 null
+     */
+    public SseEmitter createBatchEmitter(String batchId) {
+        List<String> requestIds = batches.getIfPresent(batchId);
+        if (requestIds == null) {
+            return null;
         }
 
-        try {
-            // 发送 JSON 格式的数据
-            emitter.send(SseEmitter.event()
-                    .name("message")  // 事件名称
-                    .data(objectMapper.writeValueAsString(response)));  // JSON 数据
+        SseBatchEmitter batch = new SseBatchEmitter(newEmitter(), requestIds.size());
+        SseStream[] streams = new SseStream[requestIds.size()];
+        SseEmitter[] members = new SseEmitter[requestIds.size()];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = streamMap.compute(requestIds.get(i),
+                    (id, old) -> old == null || old.isClosed() ? newStream(id) : old);
+            members[i] = batch.newMember();
+        }
+
+        // 共享连接关闭（完成、出错、到达时长上限）时，所有请求的流都断开，等待重连
+        Runnable detachAll = () -> {
+            for (int i = 0; i < streams.length; i++) {
+                detachStream(requestIds.get(i), streams[i], members[i]);
+            }
+        };
+        SseEmitter connection = batch.getConnection();
+        connection.onCompletion(() -> {
+            log.info("批量 SSE 连接完成: {}", batchId);
+            detachAll.run();
+        });
+        connection.onError((e) -> {
+            log.error("批量 SSE 连接异常: {}, error: {}", batchId, e.getMessage());
+            detachAll.run();
+        });
 
-            log.debug("发送消息: {}, content: {}", requestId, response.getContent());
-            return true;
+        for (int i = 0; i < streams.length; i++) {
+            if (!streams[i].attach(members[i], 0)) {
+                // 流刚好被回收，这个请求在批量连接上直接以错误结束
+                rejectResume(requestIds.get(i), members[i]);
+            }
+        }
 
-        } catch (IOException e) {
-            log.error("发送 SSE 消息失败: {}, error: {}", requestId, e.getMessage());
-            emitterMap.remove(requestId);  // 发送失败，删除连接
+        log.info("创建批量 SSE 连接: {}, 请求数: {}, 当前连接数: {}", batchId, streams.length, streamMap.size());
+        watchBatch(batchId, batch, System.nanoTime());
+        enforceReplayBudget();
+        return connection;
+    }
+
+    /**
+     * 在前端连接之前打开流（非阻塞）
+     *
+     * 大模型可以立即开始生成，片段先缓存在流里，前端连接（createEmitter）的瞬间一次性补发；
+     * 超过 connectTimeoutMs 仍未连接，流会停止接收片段并被回收
+     *
+     * @param requestId 请求ID
+     * @return 已经有其他生成在使用这个流（例如 Kafka 重复投递）时返回 false
+     */
+    public boolean openStream(String requestId) {
+        SseStream stream = streamMap.compute(requestId,
+                (id, old) -> old == null || old.isClosed() ? newStream(id) : old);
+
+        // 前端迟迟不连接时，由时间轮回收
+        if (!stream.claimGeneration()) {
             return false;
         }
+        if (!stream.isPending()) {
+            // 前端已经在等了
+            rendezvousListener.accept(0);
+        }
+        return true;
+    }
+
+    /**
+     * 打开请求的输出通道：只在这里按 requestId 查一次流，之后的片段直接写到流上
+     *
+     * 通道绑定的是打开时的那个流：流被回收后（即使前端重连时建了新流）写入都返回 false，生成随之停止
+     *
+     * @param requestId 请求ID
+     * @return 输出通道（流不存在时，写入直接返回 false）
+     */
+    @Override
+    public Channel open(String requestId) {
+        return new StreamChannel(requestId, streamMap.get(requestId));
+    }
+
+    /**
+     * 推送消息到前端
+     *
+     * 内容片段会先进入合并缓冲区，由 SseStream 决定何时真正写出
+     *
+     * @param requestId 请求ID
+     * @param response 响应对象
+     * @return 是否成功
+     */
+    @Override
+    public boolean sendMessage(String requestId, ChatResponse response) {
+        return send(requestId, streamMap.get(requestId), response.getContent());
     }
 
     /**
@@ -101,27 +325,9 @@ public class SseEmitterManager {
      * @param requestId 请求ID
      * @param finalMessage 最终消息（可为空）
      */
+    @Override
     public void complete(String requestId, String finalMessage) {
-        SseEmitter emitter = emitterMap.get(requestId);
-
-        if (emitter != null) {
-            try {
-                // 发送结束标志
-                ChatResponse response = ChatResponse.end(requestId);
-                emitter.send(SseEmitter.event()
-                        .name("message")
-                        .data(objectMapper.writeValueAsString(response)));
-
-                // 标记连接完成
-                emitter.complete();
-                log.info("SSE 连接完成: {}", requestId);
-
-            } catch (IOException e) {
-                log.error("完成 SSE 连接失败: {}", requestId);
-            } finally {
-                emitterMap.remove(requestId);
-            }
-        }
+        complete(requestId, streamMap.get(requestId), finalMessage);
     }
 
     /**
@@ -130,38 +336,302 @@ public class SseEmitterManager {
      * @param requestId 请求ID
      * @param errorMessage 错误信息
      */
+    @Override
     public void sendError(String requestId, String errorMessage) {
-        SseEmitter emitter = emitterMap.get(requestId);
-
-        if (emitter != null) {
-            try {
-                ChatResponse response = ChatResponse.error(requestId, errorMessage);
-                emitter.send(SseEmitter.event()
-                        .name("error")
-                        .data(objectMapper.writeValueAsString(response)));
-
-                // 标记连接异常结束
-                emitter.completeWithError(new RuntimeException(errorMessage));
-
-            } catch (IOException e) {
-                log.error("发送错误消息失败: {}", requestId);
-            } finally {
-                emitterMap.remove(requestId);
+        sendError(requestId, streamMap.get(requestId), errorMessage);
+    }
+
+    private boolean send(String requestId, SseStream stream, String content) {
+        if (stream == null) {
+            log.warn("SSE 连接不存在: {}", requestId);
+            return false;
+        }
+
+        if (!stream.append(content)) {
+            if (stream.isPending() && !stream.isFinished() && !stream.isClosed()) {
+                // 等待连接期间停止生成：记录错误，前端稍后连接时能看到原因
+                stream.error(PENDING_ABORTED);
+                onFinished(requestId, stream);
+            } else {
+                removeStream(requestId, stream);  // 流已结束或前端长时间未重连，删除
+            }
+            return false;
+        }
+
+        if (replayBytes.get() > properties.getReplayMaxTotalBytes()) {
+            enforceReplayBudget();
+        }
+        return true;
+    }
+
+    private void complete(String requestId, SseStream stream, String finalMessage) {
+        if (stream != null) {
+            if (finalMessage != null && !finalMessage.isEmpty()) {
+                stream.append(finalMessage);
             }
+            // 发送剩余内容和结束标志（流保留一段时间，供断线的前端补发）
+            stream.complete();
+            onFinished(requestId, stream);
+        }
+    }
+
+    private void sendError(String requestId, SseStream stream, String errorMessage) {
+        if (stream != null) {
+            stream.error(errorMessage);
+            onFinished(requestId, stream);
         }
     }
 
     /**
-     * 检查连接是否存在
+     * 写入其他实例（经响应 Topic）广播过来的消息
+     *
+     * 只写入本地已有的流（前端连在本实例上），不为其他实例的请求创建流；
+     * 补发消息同时带有内容和结束 / 错误标记，先写内容再结束
+     *
+     * @param response 片段 / 结束 / 错误 / 补发消息
+     * @return 本地没有这个请求的流（或已结束）时返回 false
+     */
+    public boolean acceptRemote(ChatResponse response) {
+        String requestId = response.getRequestId();
+
+        SseStream stream = streamMap.get(requestId);
+        if (stream == null || stream.isClosed()) {
+            return false;
+        }
+
+        String content = response.getContent();
+        if (content != null && !content.isEmpty() && !stream.append(content)) {
+            // 前端已断开过久，不再缓存
+            removeStream(requestId, stream);
+            return false;
+        }
+        if (response.getError() != null) {
+            stream.error(response.getError());
+            onFinished(requestId, stream);
+        } else if (Boolean.TRUE.equals(response.getIsEnd())) {
+            stream.complete();
+            onFinished(requestId, stream);
+        }
+        return true;
+    }
+
+    /**
+     * 检查流是否存在（包括前端已断开、等待重连的流）
      */
     public boolean exists(String requestId) {
-        return emitterMap.containsKey(requestId);
+        return streamMap.containsKey(requestId);
     }
 
     /**
-     * 获取当前连接数
+     * 检查前端当前是否处于连接状态
+     */
+    public boolean isConnected(String requestId) {
+        SseStream stream = streamMap.get(requestId);
+        return stream != null && stream.isAttached();
+    }
+
+    /**
+     * 获取正在等待前端第一次连接的流数量
+     */
+    public int getWaitingCount() {
+        int[] count = new int[1];
+        streamMap.forEach(stream -> {
+            if (stream.isPending()) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * 获取当前连接数（包括等待重连的流）
      */
     public int getConnectionCount() {
-        return emitterMap.size();
+        return streamMap.size();
+    }
+
+    /**
+     * 获取重放缓冲区占用的总字节数
+     */
+    public long getReplayBytes() {
+        return replayBytes.get();
+    }
+
+    /**
+     * 获取请求当前连接的发送队列里积压的帧数
+     */
+    public int getQueuedFrames(String requestId) {
+        SseStream stream = streamMap.get(requestId);
+        return stream == null ? 0 : stream.getQueuedFrames();
+    }
+
+    /**
+     * 发送队列统计：积压帧数、跟不上的次数、丢弃的帧数、因为跟不上被断开的连接数
+     */
+    public SseOutbound.Stats getOutboundStats() {
+        return outboundStats;
+    }
+
+    /**
+     * 写入超时、还没返回的连接数（每个占用一个写线程）
+     */
+    public int getStuckWrites() {
+        return writeWatchdog.getStuckWrites();
+    }
+
+    /**
+     * 容器不再为连接计时（超时为 0 表示不超时），连接时长和空闲超时由时间轮管理
+     */
+    protected SseEmitter newEmitter() {
+        return new SseEmitter(0L);
+    }
+
+    private SseStream newStream(String requestId) {
+        SseReplayBuffer replayBuffer = new SseReplayBuffer(properties.getReplayMaxBytes(), replayBytes);
+        // 前端第一次连接之前不淘汰，保证能从头补发
+        replayBuffer.setEvictable(false);
+        SseStream stream = new SseStream(requestId, flushScheduler,
+                properties.getCoalesceWindowMs(), properties.getCoalesceMaxBytes(),
+                replayBuffer, properties.getReplayRetentionMs(), properties.getConnectTimeoutMs(),
+                this::newOutbound);
+        // 下一格就检查一次，由 onTimer 算出之后的检查时间
+        watch(requestId, stream, 0);
+        return stream;
+    }
+
+    private SseOutbound newOutbound(String requestId, SseEmitter emitter, Runnable onBroken, Runnable onDrained) {
+        return new SseOutbound(requestId, emitter, writerExecutor, properties.getOutboundMaxFrames(),
+                properties.getSlowConsumerPolicy(), outboundStats, writeWatchdog, onBroken, onDrained);
+    }
+
+    /**
+     * 连接断开：流保留到保留时间结束，期间前端可以带 Last-Event-ID 重连
+     */
+    private void detachStream(String requestId, SseStream stream, SseEmitter emitter) {
+        stream.detach(emitter);
+    }
+
+    /**
+     * 生成结束：登记到已结束队列，超出总量时优先回收
+     */
+    private void onFinished(String requestId, SseStream stream) {
+        finishedQueue.add(new FinishedStream(requestId, stream));
+        enforceReplayBudget();
+    }
+
+    /**
+     * 流的定时任务：到期时检查过期、心跳、空闲超时和连接时长，再按下一个需要检查的时间点重新放回时间轮
+     *
+     * 每个流从创建到回收只有这一个任务；有新内容时只更新流里的时间戳，不需要重新登记
+     */
+    private void watch(String requestId, SseStream stream, long delayNanos) {
+        timingWheel.schedule(() -> {
+            long now = System.nanoTime();
+            if (stream.isExpired(now)) {
+                log.info("SSE 流过期回收: {}", requestId);
+                removeStream(requestId, stream);
+                return;
+            }
+            long next = stream.onTimer(now, heartbeatNanos, idleTimeoutNanos, maxConnectionNanos);
+            if (next >= 0) {
+                watch(requestId, stream, next);
+            }
+        }, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+    }
+
+    /**
+     * 批量连接的定时任务：定期写心跳，到达时长上限时关闭共享连接（各请求的流断开，等待重连）
+     *
+     * 心跳直接写共享连接，交给写线程池执行，不占用时间轮的线程
+     */
+    private void watchBatch(String batchId, SseBatchEmitter batch, long attachedAtNanos) {
+        timingWheel.schedule(() -> writerExecutor.execute(() -> {
+            if (batch.isDone()) {
+                return;
+            }
+            if (System.nanoTime() - attachedAtNanos >= maxConnectionNanos) {
+                log.info("批量 SSE 连接达到时长上限，关闭: {}", batchId);
+                batch.getConnection().complete();
+                return;
+            }
+            if (batch.heartbeat()) {
+                watchBatch(batchId, batch, attachedAtNanos);
+            }
+        }), TimeUnit.NANOSECONDS.toMillis(heartbeatNanos));
+    }
+
+    /**
+     * 写入超时检查：每隔超时时间的一半检查一次正在写的连接
+     */
+    private void watchWrites() {
+        timingWheel.schedule(() -> {
+            writeWatchdog.check(System.nanoTime());
+            watchWrites();
+        }, writeWatchdog.getCheckIntervalMs());
+    }
+
+    /**
+     * 重放缓冲区总量超限时，按结束先后回收已结束的流
+     *
+     * 进行中的流不回收（单个流已有上限）
+     */
+    private void enforceReplayBudget() {
+        while (replayBytes.get() > properties.getReplayMaxTotalBytes()) {
+            FinishedStream oldest = finishedQueue.poll();
+            if (oldest == null) {
+                return;
+            }
+            if (!oldest.stream().isClosed()) {
+                log.info("重放缓冲区超出总量，回收已结束的流: {}", oldest.requestId());
+                removeStream(oldest.requestId(), oldest.stream());
+            }
+        }
+    }
+
+    private void rejectResume(String requestId, SseEmitter emitter) {
+        byte[] frame = new SseFrameEncoder().encode(0, "error", requestId, null, true, RESUME_EXPIRED);
+        try {
+            emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(frame, MediaType.TEXT_EVENT_STREAM)));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            log.warn("发送续传失败消息失败: {}, error: {}", requestId, e.getMessage());
+        }
+    }
+
+    private void removeStream(String requestId, SseStream stream) {
+        streamMap.remove(requestId, stream);
+        stream.close();
+    }
+
+    private record FinishedStream(String requestId, SseStream stream) {
+    }
+
+    /**
+     * 绑定到单个流的输出通道
+     */
+    private final class StreamChannel implements Channel {
+
+        private final String requestId;
+        private final SseStream stream;
+
+        StreamChannel(String requestId, SseStream stream) {
+            this.requestId = requestId;
+            this.stream = stream;
+        }
+
+        @Override
+        public boolean send(String content) {
+            return SseEmitterManager.this.send(requestId, stream, content);
+        }
+
+        @Override
+        public void complete(String finalMessage) {
+            SseEmitterManager.this.complete(requestId, stream, finalMessage);
+        }
+
+        @Override
+        public void error(String errorMessage) {
+            sendError(requestId, stream, errorMessage);
+        }
     }
-}
\ No newline at end of file
+}
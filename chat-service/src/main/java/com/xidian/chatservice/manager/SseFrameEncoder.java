@@ -0,0 +1,169 @@
+package com.xidian.chatservice.manager;
+
+import com.xidian.chatservice.model.ChatResponse;
+
+import java.util.Arrays;
+
+/**
+ * ChatResponse 专用的 SSE 帧编码器
+ *
+ * 原来的路径：Jackson 先生成一个 JSON String，SseEventBuilder 再拼出 "event:" / "data:" 等多个对象，
+ * 最后由 StringHttpMessageConverter 再编码成字节。这里直接把整帧按 UTF-8 写进一个可复用的字节缓冲区：
+ *
+ *   id:42
+ *   event:message
+ *   data:{"requestId":"...","content":"...","isEnd":false,"error":null}
+ *   (空行)
+ *
+ * 输出与 objectMapper.writeValueAsString + SseEmitter.event() 完全一致，前端无需改动。
+ *
+ * 非线程安全：每个连接一个实例，在 SseStream 的锁内使用
+ */
+public class SseFrameEncoder {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    private byte[] buf;
+    private int pos;
+
+    public SseFrameEncoder() {
+        this(256);
+    }
+
+    public SseFrameEncoder(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    /**
+     * 编码一个 ChatResponse
+     */
+    public byte[] encode(long id, String eventName, ChatResponse response) {
+        return encode(id, eventName, response.getRequestId(), response.getContent(),
+                response.getIsEnd(), response.getError());
+    }
+
+    /**
+     * 编码一帧（content 可以直接传 StringBuilder，不需要先 toString）
+     *
+     * @param id 事件 ID（前端断线重连时通过 Last-Event-ID 带回）
+     * @return 本帧的字节（长度恰好等于帧长度）
+     */
+    public byte[] encode(long id, String eventName, String requestId, CharSequence content,
+                         Boolean isEnd, String error) {
+        pos = 0;
+        writeAscii("id:");
+        writeLong(id);
+        writeAscii("\nevent:");
+        writeAscii(eventName);
+        writeAscii("\ndata:{\"requestId\":");
+        writeJsonString(requestId);
+        writeAscii(",\"content\":");
+        writeJsonString(content);
+        writeAscii(",\"isEnd\":");
+        writeAscii(isEnd == null ? "null" : (isEnd ? "true" : "false"));
+        writeAscii(",\"error\":");
+        writeJsonString(error);
+        writeAscii("}\n\n");
+
+        // 交给容器的数组必须是独立的（容器可能在连接初始化前暂存它）
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void writeAscii(String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf[pos++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value < 0) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        // 先算位数，再从低位往高位填
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+    }
+
+    /**
+     * 写一个 JSON 字符串（带引号），边转义边按 UTF-8 编码
+     */
+    private void writeJsonString(CharSequence s) {
+        if (s == null) {
+            writeAscii("null");
+            return;
+        }
+
+        // 最坏情况：每个字符 6 字节（\\u00XX），加两个引号
+        ensureCapacity(s.length() * 6 + 2);
+        buf[pos++] = '"';
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                switch (c) {
+                    case '"' -> escape('"');
+                    case '\\' -> escape('\\');
+                    case '\n' -> escape('n');
+                    case '\r' -> escape('r');
+                    case '\t' -> escape('t');
+                    case '\b' -> escape('b');
+                    case '\f' -> escape('f');
+                    default -> {
+                        if (c < 0x20) {
+                            // 其余控制字符：\\u00XX
+                            buf[pos++] = '\\';
+                            buf[pos++] = 'u';
+                            buf[pos++] = '0';
+                            buf[pos++] = '0';
+                            buf[pos++] = HEX[c >> 4];
+                            buf[pos++] = HEX[c & 0xF];
+                        } else {
+                            buf[pos++] = (byte) c;
+                        }
+                    }
+                }
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符，与 String.getBytes(UTF_8) 一致替换为 '?'
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        buf[pos++] = '"';
+    }
+
+    private void escape(char c) {
+        buf[pos++] = '\\';
+        buf[pos++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (pos + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+    }
+}
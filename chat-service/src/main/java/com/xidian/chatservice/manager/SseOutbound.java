@@ -0,0 +1,450 @@
+package com.xidian.chatservice.manager;
+
+import com.xidian.chatservice.properties.ChatStreamProperties.SlowConsumerPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个 SSE 连接的发送队列
+ *
+ * 生产方（大模型片段、flush 定时器、时间轮心跳）只把帧放进有界队列，从不直接写 socket：
+ * 前端网络慢时，阻塞的是 writer 线程池里的写任务，而不是大模型流和 Kafka 消费线程
+ * - 每个连接同一时刻最多一个写任务；写任务一次取出队列里的所有帧，拼成一次 send（一次写、一次 flush）
+ * - 每次 send 的耗时由 SseWriteWatchdog 检查：单次写入超过上限的连接按慢消费者断开（写线程卡住期间由 watchdog 补线程），
+ *   慢连接不会拖住其他连接的写入
+ * - 队列达到 maxFrames 帧说明前端跟不上，按 SlowConsumerPolicy 处理：
+ *   COALESCE：由 SseStream 暂停生成新的内容帧，片段继续合并在缓冲区里，队列清空后合并成一帧发出（isBackedUp）
+ *   DROP_TO_LATEST：丢弃队列里积压的帧，只保留最新一帧（帧仍在重放缓冲区，前端按 id 发现缺口后可带 Last-Event-ID 重连补齐）
+ *   DISCONNECT：丢弃队列并关闭连接，前端带 Last-Event-ID 重连，从重放缓冲区补发
+ *
+ * complete / completeWithError 同样排在队列之后执行：已入队的帧全部写出后才关闭连接
+ */
+@Slf4j
+public class SseOutbound {
+
+    private final String requestId;
+    private final SseEmitter emitter;
+    private final Executor writers;
+    private final int maxFrames;
+    private final SlowConsumerPolicy policy;
+    private final Stats stats;
+    private final SseWriteWatchdog watchdog;
+    // 写失败（前端已断开）时回调，SseStream 在这里断开连接
+    private final Runnable onBroken;
+    // COALESCE 模式下积压清空时回调，SseStream 在这里发出合并好的内容
+    private final Runnable onDrained;
+
+    // ===== 以下字段受 this 锁保护（锁内只做入队出队，不写 socket） =====
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    // 已有写任务在执行或排队
+    private boolean draining;
+    // 曾经因为积压暂停过内容帧，队列降下来后需要回调 onDrained
+    private boolean backedUp;
+    // 已经请求关闭（正常 / 异常 / 丢弃队列），不再接收新帧
+    private Close close = Close.NONE;
+    private Throwable error;
+    // 写失败或已关闭
+    private boolean dead;
+    // 正在执行 send 及其开始时间
+    private boolean writing;
+    private long writeStartedNanos;
+    // 当前这次 send 超时，连接已按慢消费者断开（send 返回后关闭连接）
+    private boolean writeTimedOut;
+
+    private enum Close {
+        NONE, COMPLETE, ERROR, ABORT
+    }
+
+    public SseOutbound(String requestId, SseEmitter emitter, Executor writers, int maxFrames,
+                       SlowConsumerPolicy policy, Stats stats, SseWriteWatchdog watchdog,
+                       Runnable onBroken, Runnable onDrained) {
+        this.requestId = requestId;
+        this.emitter = emitter;
+        this.writers = writers;
+        this.maxFrames = Math.max(1, maxFrames);
+        this.policy = policy;
+        this.stats = stats;
+        this.watchdog = watchdog;
+        this.onBroken = onBroken;
+        this.onDrained = onDrained;
+    }
+
+    /**
+     * 为 SseStream 创建发送队列（由 SseEmitterManager 提供 writer 线程池、队列上限、策略、统计和写入超时检测）
+     */
+    @FunctionalInterface
+    public interface Factory {
+
+        SseOutbound create(String requestId, SseEmitter emitter, Runnable onBroken, Runnable onDrained);
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * 放入一帧（不阻塞）
+     *
+     * @return 连接已失效（写失败、已关闭，或 DISCONNECT 策略下前端跟不上被断开）时返回 false
+     */
+    public boolean offer(byte[] frame) {
+        synchronized (this) {
+            if (dead || close != Close.NONE) {
+                return false;
+            }
+            if (queue.size() >= maxFrames && !onFull()) {
+                return false;
+            }
+            queue.addLast(frame);
+        }
+        stats.queuedFrames.incrementAndGet();
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * 放入一批帧（重连时重放的帧），拼成一帧入队，不受队列上限约束
+     */
+    public boolean offerAll(List<byte[]> frames) {
+        if (frames.isEmpty()) {
+            return !isDead();
+        }
+        byte[] batch = concat(frames);
+
+        synchronized (this) {
+            if (dead || close != Close.NONE) {
+                return false;
+            }
+            queue.addLast(batch);
+        }
+        stats.queuedFrames.incrementAndGet();
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * COALESCE 策略下，队列已满时返回 true：调用方应暂停生成内容帧，等 onDrained 回调后再发
+     */
+    public synchronized boolean isBackedUp() {
+        if (policy != SlowConsumerPolicy.COALESCE || queue.size() < maxFrames) {
+            return false;
+        }
+        if (!backedUp) {
+            backedUp = true;
+            stats.slowConsumers.incrementAndGet();
+            log.warn("SSE 前端跟不上，暂停发送并合并后续片段: {}, 积压帧数: {}", requestId, queue.size());
+        }
+        return true;
+    }
+
+    /**
+     * 当前积压的帧数
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public synchronized boolean isDead() {
+        return dead;
+    }
+
+    /**
+     * 已入队的帧写完后正常关闭连接
+     */
+    public void complete() {
+        requestClose(Close.COMPLETE, null);
+    }
+
+    /**
+     * 已入队的帧写完后异常关闭连接
+     */
+    public void completeWithError(Throwable ex) {
+        requestClose(Close.ERROR, ex);
+    }
+
+    /**
+     * 丢弃积压的帧，关闭连接（前端可以带 Last-Event-ID 重连）
+     */
+    public void abort() {
+        int dropped;
+        synchronized (this) {
+            if (dead || close == Close.ABORT) {
+                return;
+            }
+            dropped = queue.size();
+            queue.clear();
+            close = Close.ABORT;
+        }
+        stats.queuedFrames.addAndGet(-dropped);
+        scheduleDrain();
+    }
+
+    /**
+     * 前端跟不上、COALESCE 合并的内容也已超过上限时，由 SseStream 调用：丢弃积压的帧并关闭连接
+     */
+    public void evict() {
+        stats.slowConsumerEvictions.incrementAndGet();
+        log.warn("SSE 前端长时间跟不上，断开连接等待重连: {}", requestId);
+        abort();
+    }
+
+    /**
+     * 队列已满（锁内调用）
+     *
+     * @return 是否还能放入新帧
+     */
+    private boolean onFull() {
+        switch (policy) {
+            case DROP_TO_LATEST -> {
+                int dropped = queue.size();
+                queue.clear();
+                stats.queuedFrames.addAndGet(-dropped);
+                stats.droppedFrames.addAndGet(dropped);
+                stats.slowConsumers.incrementAndGet();
+                log.warn("SSE 前端跟不上，丢弃积压的帧: {}, 帧数: {}", requestId, dropped);
+                return true;
+            }
+            case DISCONNECT -> {
+                int dropped = queue.size();
+                queue.clear();
+                close = Close.ABORT;
+                stats.queuedFrames.addAndGet(-dropped);
+                stats.slowConsumers.incrementAndGet();
+                stats.slowConsumerEvictions.incrementAndGet();
+                log.warn("SSE 前端跟不上，断开连接等待重连: {}, 积压帧数: {}", requestId, dropped);
+                // 关闭连接也交给写任务执行
+                scheduleDrainLocked();
+                return false;
+            }
+            default -> {
+                // COALESCE：内容帧已由 SseStream 暂停，这里只有心跳、结束帧这类少量的帧，照常入队
+                return true;
+            }
+        }
+    }
+
+    private void requestClose(Close mode, Throwable ex) {
+        synchronized (this) {
+            if (dead || close != Close.NONE) {
+                return;
+            }
+            close = mode;
+            error = ex;
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        synchronized (this) {
+            scheduleDrainLocked();
+        }
+    }
+
+    private void scheduleDrainLocked() {
+        if (draining || dead) {
+            return;
+        }
+        draining = true;
+        try {
+            writers.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭（停机中），直接放弃这个连接
+            draining = false;
+            dead = true;
+            log.warn("SSE 写线程池已关闭，放弃连接: {}", requestId);
+        }
+    }
+
+    /**
+     * 写任务：取出当前积压的所有帧一次写出；之后还有新帧就重新排队（不独占写线程）
+     */
+    private void drain() {
+        byte[] data = null;
+        int frames;
+        Close closing;
+        synchronized (this) {
+            frames = queue.size();
+            if (frames == 1) {
+                data = queue.poll();
+            } else if (frames > 1) {
+                data = concat(queue);
+                queue.clear();
+            }
+            // 队列里的帧写完后才关闭连接
+            closing = frames == 0 ? close : Close.NONE;
+        }
+        stats.queuedFrames.addAndGet(-frames);
+
+        if (data != null && !send(data)) {
+            return;
+        }
+        if (closing != Close.NONE) {
+            closeEmitter(closing);
+            return;
+        }
+
+        boolean drained = false;
+        synchronized (this) {
+            draining = false;
+            if (!queue.isEmpty() || close != Close.NONE) {
+                scheduleDrainLocked();
+            } else if (backedUp) {
+                backedUp = false;
+                drained = true;
+            }
+        }
+        if (drained) {
+            onDrained.run();
+        }
+    }
+
+    private boolean send(byte[] data) {
+        beginWrite();
+        try {
+            // 帧已经是完整的 "id:...\nevent:...\ndata:...\n\n"，绕过 SseEventBuilder 直接交给容器
+            emitter.send(Set.of(new DataWithMediaType(data, MediaType.TEXT_EVENT_STREAM)));
+            log.debug("发送消息: {}, bytes: {}", requestId, data.length);
+        } catch (IOException | IllegalStateException e) {
+            boolean timedOut = endWrite();
+            // 写失败只断开连接，帧已在重放缓冲区中，前端重连后可以补发
+            log.warn("发送 SSE 消息失败，等待重连: {}, error: {}", requestId, e.getMessage());
+            int dropped;
+            synchronized (this) {
+                dead = true;
+                draining = false;
+                dropped = queue.size();
+                queue.clear();
+            }
+            stats.queuedFrames.addAndGet(-dropped);
+            // 超时时已经断开过
+            if (!timedOut) {
+                onBroken.run();
+            }
+            return false;
+        }
+        if (endWrite()) {
+            // 这次写入超时、连接已按慢消费者断开：写完后关闭连接，前端带 Last-Event-ID 重连
+            closeEmitter(Close.COMPLETE);
+            return false;
+        }
+        return true;
+    }
+
+    private void beginWrite() {
+        synchronized (this) {
+            writing = true;
+            writeStartedNanos = System.nanoTime();
+        }
+        watchdog.begin(this);
+    }
+
+    /**
+     * @return 这次写入是否已被判定为超时
+     */
+    private boolean endWrite() {
+        boolean timedOut;
+        synchronized (this) {
+            writing = false;
+            timedOut = writeTimedOut;
+        }
+        watchdog.end(this, timedOut);
+        return timedOut;
+    }
+
+    /**
+     * 由 SseWriteWatchdog 调用：当前这次 send 超过时间上限时，按慢消费者断开连接
+     *
+     * 不再接收新帧，积压的帧丢弃（都在重放缓冲区中），SseStream 转入等待重连；
+     * 阻塞中的 send 返回后由写线程关闭连接
+     *
+     * @return 是否判定为超时（每次写入最多一次）
+     */
+    boolean expireWrite(long nowNanos, long timeoutNanos) {
+        int dropped;
+        synchronized (this) {
+            if (!writing || writeTimedOut || nowNanos - writeStartedNanos < timeoutNanos) {
+                return false;
+            }
+            writeTimedOut = true;
+            dead = true;
+            dropped = queue.size();
+            queue.clear();
+        }
+        stats.queuedFrames.addAndGet(-dropped);
+        stats.slowConsumers.incrementAndGet();
+        stats.slowConsumerEvictions.incrementAndGet();
+        log.warn("SSE 单次写入超过 {}ms，按慢消费者断开: {}, 丢弃积压帧数: {}",
+                TimeUnit.NANOSECONDS.toMillis(timeoutNanos), requestId, dropped);
+        onBroken.run();
+        return true;
+    }
+
+    private void closeEmitter(Close mode) {
+        synchronized (this) {
+            dead = true;
+            draining = false;
+        }
+        if (mode == Close.ERROR) {
+            emitter.completeWithError(error);
+        } else {
+            emitter.complete();
+        }
+    }
+
+    private static byte[] concat(Collection<byte[]> frames) {
+        int length = 0;
+        for (byte[] frame : frames) {
+            length += frame.length;
+        }
+        byte[] data = new byte[length];
+        int pos = 0;
+        for (byte[] frame : frames) {
+            System.arraycopy(frame, 0, data, pos, frame.length);
+            pos += frame.length;
+        }
+        return data;
+    }
+
+    /**
+     * 所有连接共享的发送队列统计
+     */
+    public static final class Stats {
+
+        // 所有连接当前积压的帧数
+        private final AtomicLong queuedFrames = new AtomicLong();
+        // 队列达到上限的次数（任何策略）
+        private final AtomicLong slowConsumers = new AtomicLong();
+        // DROP_TO_LATEST 丢弃的帧数
+        private final AtomicLong droppedFrames = new AtomicLong();
+        // DISCONNECT（以及合并内容超过上限）断开的连接数
+        private final AtomicLong slowConsumerEvictions = new AtomicLong();
+
+        public long getQueuedFrames() {
+            return queuedFrames.get();
+        }
+
+        public long getSlowConsumers() {
+            return slowConsumers.get();
+        }
+
+        public long getDroppedFrames() {
+            return droppedFrames.get();
+        }
+
+        public long getSlowConsumerEvictions() {
+            return slowConsumerEvictions.get();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.xidian.chatservice.manager;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 单个请求的 SSE 重放缓冲区（有界环形缓冲）
+ *
+ * 按顺序保存已经编码好的 SSE 帧，帧 ID 从 1 开始连续递增。
+ * 超过 maxBytes 时从最旧的帧开始淘汰；所有缓冲区共享一个全局字节计数，供 SseEmitterManager 做总量控制。
+ * 前端第一次连接之前不淘汰（setEvictable(false)），由调用方在接近上限时停止写入。
+ *
+ * 非线程安全：在 SseStream 的锁内使用
+ */
+public class SseReplayBuffer {
+
+    private final int maxBytes;
+    private final AtomicLong totalBytes;
+
+    // ArrayDeque 本身就是循环数组
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    // 缓冲区中最旧一帧的 ID
+    private long firstId = 1;
+    private int bytes;
+    private boolean evictable = true;
+
+    /**
+     * @param maxBytes 单个缓冲区的字节上限
+     * @param totalBytes 全局字节计数（所有缓冲区共享）
+     */
+    public SseReplayBuffer(int maxBytes, AtomicLong totalBytes) {
+        this.maxBytes = maxBytes;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * 追加一帧，返回它的 ID
+     */
+    public long add(byte[] frame) {
+        frames.addLast(frame);
+        bytes += frame.length;
+        totalBytes.addAndGet(frame.length);
+
+        // 至少保留最新的一帧
+        while (evictable && bytes > maxBytes && frames.size() > 1) {
+            evictFirst();
+        }
+        return lastId();
+    }
+
+    /**
+     * 已分配的最大帧 ID（还没有帧时为 0）
+     */
+    public long lastId() {
+        return firstId + frames.size() - 1;
+    }
+
+    /**
+     * 按顺序重放 ID 大于 afterId 的帧
+     *
+     * @param afterId 前端已收到的最后一帧 ID（Last-Event-ID）
+     * @param writer 写出一帧，返回 false 时停止重放
+     * @return afterId 之后的帧已被淘汰（无法无缝续传）时返回 false，此时不会写出任何帧
+     */
+    public boolean replay(long afterId, Predicate<byte[]> writer) {
+        if (afterId + 1 < firstId) {
+            return false;
+        }
+
+        long id = firstId;
+        Iterator<byte[]> it = frames.iterator();
+        while (it.hasNext()) {
+            byte[] frame = it.next();
+            if (id++ > afterId && !writer.test(frame)) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    public int getBytes() {
+        return bytes;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setEvictable(boolean evictable) {
+        this.evictable = evictable;
+    }
+
+    /**
+     * 释放所有帧（流被回收时调用）
+     */
+    public void release() {
+        while (!frames.isEmpty()) {
+            evictFirst();
+        }
+    }
+
+    private void evictFirst() {
+        byte[] evicted = frames.pollFirst();
+        firstId++;
+        bytes -= evicted.length;
+        totalBytes.addAndGet(-evicted.length);
+    }
+}
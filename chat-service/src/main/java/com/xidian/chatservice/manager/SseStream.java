@@ -0,0 +1,469 @@
+package com.xidian.chatservice.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个请求的 SSE 流（合并写入 + 断线续传）
+ *
+ * 大模型每次只返回几个字，如果每个片段都序列化一次、写一次、flush 一次，
+ * 几百个并发流就是每秒几十万次小写入。这里把片段先攒在缓冲区里：
+ * - 第一个片段立即发送，不影响首字延迟
+ * - 之后的片段攒够 maxBatchBytes 字节，或者距第一个未发送片段超过 windowMs，合并成一个 SSE 事件发送
+ *
+ * 每一帧都带递增的 id，并保存在 SseReplayBuffer 里。流的生命周期与 SseEmitter 解耦：
+ * 前端断开后流继续接收大模型输出，前端带着 Last-Event-ID 重连时（attach），先重放缺失的帧，再继续实时推送
+ *
+ * 流也可以在前端连接之前创建（pending）：大模型提前开始生成，片段先进入缓冲区（此时不淘汰，超过上限即停止），
+ * 前端第一次连接时一次性补发
+ *
+ * 连接的超时不再交给 Servlet 容器，由 SseEmitterManager 的时间轮定期调用 onTimer 检查：
+ * 空闲太久写心跳注释（代理不会因为没有数据断开连接）、长时间没有新内容或连接时长到上限时关闭连接（前端可续传）
+ *
+ * 所有状态变更都在 this 锁内进行，定时 flush、片段追加和重连重放不会交错；
+ * 每帧由 SseFrameEncoder 直接编码成字节，放进当前连接的发送队列（SseOutbound），由 writer 线程池写出：
+ * 调用方（大模型流、定时器、时间轮）不会因为前端网络慢而阻塞。前端跟不上、队列积压时（COALESCE 策略），
+ * 暂停生成内容帧，片段继续合并在缓冲区里，积压清空后合并成一帧发出
+ */
+@Slf4j
+public class SseStream {
+
+    // 心跳：SSE 注释行，EventSource 会忽略，也不进入重放缓冲区、不占用事件 id
+    static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final String requestId;
+    private final TaskScheduler flushScheduler;
+    private final Duration window;
+    private final int maxBatchBytes;
+    private final long retentionNanos;
+    private final long connectTimeoutNanos;
+    private final SseOutbound.Factory outboundFactory;
+
+    // ===== 以下字段受 this 锁保护 =====
+    private final SseFrameEncoder encoder = new SseFrameEncoder();
+    private final SseReplayBuffer replayBuffer;
+    private final StringBuilder buffer = new StringBuilder();
+    private int bufferedBytes;
+    private boolean firstChunkSent;
+    private boolean flushScheduled;
+    // 当前连接的发送队列（前端断开期间为 null）
+    private SseOutbound outbound;
+    // 是否有前端连接过（false 表示仍在等待第一次连接）
+    private boolean everAttached;
+    // 创建 / 断开 / 结束的时间，用于判断是否过期
+    private long detachedAtNanos;
+    private long finishedAtNanos;
+    // 当前连接建立的时间、最后一次发出任何内容（包括心跳）的时间、最后一次产生新内容的时间
+    private long attachedAtNanos;
+    private long lastWriteNanos;
+    private long lastContentNanos;
+
+    // 生成已结束（正常完成或出错），不再接收新片段
+    private volatile boolean finished;
+    // 流已被回收，重放缓冲区已释放
+    private volatile boolean closed;
+
+    // 是否已有一次大模型调用在向这个流写入
+    private final AtomicBoolean generationClaimed = new AtomicBoolean();
+    // 登记生成的时间（用于统计前端连接晚了多久）
+    private volatile long claimedAtNanos;
+
+    /**
+     * 创建一个还没有前端连接的流
+     *
+     * @param retentionMs 前端断开 / 生成结束后，流最多保留多久等待重连
+     * @param connectTimeoutMs 创建后最多等待多久第一次连接
+     * @param outboundFactory 为每个连接创建发送队列
+     */
+    public SseStream(String requestId, TaskScheduler flushScheduler, long windowMs, int maxBatchBytes,
+                     SseReplayBuffer replayBuffer, long retentionMs, long connectTimeoutMs,
+                     SseOutbound.Factory outboundFactory) {
+        this.requestId = requestId;
+        this.flushScheduler = flushScheduler;
+        this.window = Duration.ofMillis(windowMs);
+        this.maxBatchBytes = maxBatchBytes;
+        this.replayBuffer = replayBuffer;
+        this.retentionNanos = Duration.ofMillis(retentionMs).toNanos();
+        this.connectTimeoutNanos = Duration.ofMillis(connectTimeoutMs).toNanos();
+        this.outboundFactory = outboundFactory;
+        this.detachedAtNanos = System.nanoTime();
+        this.lastContentNanos = detachedAtNanos;
+    }
+
+    public synchronized SseEmitter getEmitter() {
+        return outbound == null ? null : outbound.getEmitter();
+    }
+
+    /**
+     * 当前是否有前端连接
+     */
+    public synchronized boolean isAttached() {
+        return outbound != null;
+    }
+
+    /**
+     * 当前连接发送队列里积压的帧数
+     */
+    public synchronized int getQueuedFrames() {
+        return outbound == null ? 0 : outbound.size();
+    }
+
+    /**
+     * 是否仍在等待前端第一次连接
+     */
+    public synchronized boolean isPending() {
+        return !everAttached;
+    }
+
+    /**
+     * 登记一次生成（同一个流只允许一次）
+     *
+     * @return 已经有生成在使用这个流时返回 false
+     */
+    public boolean claimGeneration() {
+        if (!generationClaimed.compareAndSet(false, true)) {
+            return false;
+        }
+        claimedAtNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * 登记生成的时间（System.nanoTime），还没有生成登记时返回 0
+     */
+    public long getClaimedAtNanos() {
+        return claimedAtNanos;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 追加一个内容片段
+     *
+     * 前端暂时断开、或者还没有连接时，片段照常进入重放缓冲区
+     *
+     * @return 流已结束 / 被回收，前端断开（未连接）超时，或等待连接期间缓冲区已满时返回 false（调用方应停止生成）
+     */
+    public synchronized boolean append(String content) {
+        if (finished || closed) {
+            return false;
+        }
+        if (outbound == null && System.nanoTime() - detachedAtNanos > idleLimitNanos()) {
+            log.info("前端{}超时，停止生成: {}", everAttached ? "断开" : "未连接", requestId);
+            return false;
+        }
+        // 等待第一次连接期间不能淘汰（前端要从头接收），缓冲区满了只能停止
+        if (!everAttached && replayBuffer.getBytes() + bufferedBytes >= replayBuffer.getMaxBytes()) {
+            log.warn("等待连接期间缓冲区已满，停止生成: {}", requestId);
+            return false;
+        }
+        // 合并期间片段可能暂时不成帧，这里就记为有新内容（空闲超时按生成进度算）
+        lastContentNanos = System.nanoTime();
+
+        // 第一个片段立即发送
+        if (!firstChunkSent) {
+            firstChunkSent = true;
+            writeChunk(content);
+            return true;
+        }
+
+        buffer.append(content);
+        bufferedBytes += utf8Length(content);
+
+        // 攒够一批，立即发送
+        if (bufferedBytes >= maxBatchBytes) {
+            flushBuffer(false);
+            return true;
+        }
+
+        // 否则等窗口结束再发送（同一窗口只注册一次定时任务）
+        if (!flushScheduled) {
+            flushScheduled = true;
+            flushScheduler.schedule(this::flush, Instant.now().plus(window));
+        }
+        return true;
+    }
+
+    /**
+     * 窗口到期，发送缓冲区中的内容
+     */
+    public synchronized void flush() {
+        flushScheduled = false;
+        if (!finished && !closed) {
+            flushBuffer(false);
+        }
+    }
+
+    /**
+     * 发送队列的积压清空（COALESCE 期间合并的内容可以发出了）
+     */
+    private synchronized void onDrained() {
+        if (!finished && !closed) {
+            flushBuffer(false);
+        }
+    }
+
+    /**
+     * 发送剩余内容和结束标志，关闭连接
+     */
+    public synchronized void complete() {
+        if (finished || closed) {
+            return;
+        }
+        flushBuffer(true);
+        record(encoder.encode(replayBuffer.lastId() + 1, "message", requestId, "", true, null));
+        finish();
+        if (outbound != null) {
+            // 结束帧写出后关闭连接
+            outbound.complete();
+            log.info("SSE 连接完成: {}", requestId);
+        }
+    }
+
+    /**
+     * 发送剩余内容和错误消息，异常关闭连接
+     */
+    public synchronized void error(String errorMessage) {
+        if (finished || closed) {
+            return;
+        }
+        flushBuffer(true);
+        record(encoder.encode(replayBuffer.lastId() + 1, "error", requestId, null, true, errorMessage));
+        finish();
+        if (outbound != null) {
+            // 错误帧写出后标记连接异常结束
+            outbound.completeWithError(new RuntimeException(errorMessage));
+        }
+    }
+
+    /**
+     * 前端（重新）连接：重放 lastEventId 之后的帧，之后继续实时推送
+     *
+     * @param newEmitter 新连接
+     * @param lastEventId 前端收到的最后一帧 ID（首次连接为 0）
+     * @return 缺失的帧已被淘汰、无法续传时返回 false（新连接不会被接管）
+     */
+    public synchronized boolean attach(SseEmitter newEmitter, long lastEventId) {
+        if (closed) {
+            return false;
+        }
+
+        // 旧连接可能还没有被容器发现已断开，直接替换（积压的帧不再发送，新连接会重放）
+        if (outbound != null && outbound.getEmitter() != newEmitter) {
+            outbound.abort();
+        }
+        outbound = outboundFactory.create(requestId, newEmitter, () -> detach(newEmitter), this::onDrained);
+        attachedAtNanos = System.nanoTime();
+        lastWriteNanos = attachedAtNanos;
+        if (!everAttached) {
+            everAttached = true;
+            replayBuffer.setEvictable(true);
+        }
+
+        // 缺失的帧拼成一次写出
+        List<byte[]> missed = new ArrayList<>();
+        if (!replayBuffer.replay(lastEventId, missed::add)) {
+            outbound = null;
+            detachedAtNanos = System.nanoTime();
+            return false;
+        }
+        send(missed);
+
+        if (finished && outbound != null) {
+            // 生成早已结束，补发完直接关闭
+            outbound.complete();
+        }
+        return true;
+    }
+
+    /**
+     * 连接被容器关闭（完成、超时、出错），流本身保留，等待重连
+     *
+     * @param oldEmitter 被关闭的连接（已经被新连接替换时忽略）
+     */
+    public synchronized void detach(SseEmitter oldEmitter) {
+        if (outbound != null && outbound.getEmitter() == oldEmitter) {
+            outbound = null;
+            detachedAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 前端断开 / 生成结束都已超过保留时间
+     */
+    public synchronized boolean isExpired(long nowNanos) {
+        if (finished) {
+            return nowNanos - finishedAtNanos > retentionNanos;
+        }
+        return outbound == null && nowNanos - detachedAtNanos > idleLimitNanos();
+    }
+
+    /**
+     * 时间轮定期调用：检查当前连接的心跳、空闲超时和连接时长
+     *
+     * 批量连接的成员不检查（共享连接由批次自己发心跳和限制时长）
+     *
+     * @param heartbeatNanos 连接上超过这么久没有写出任何内容时写一个心跳
+     * @param idleTimeoutNanos 生成未结束、超过这么久没有新内容时关闭连接
+     * @param maxConnectionNanos 单个连接的最长时长，到期关闭连接（前端带 Last-Event-ID 重连）
+     * @return 距离下一个需要检查的时间点的纳秒数（流已回收时返回 -1）
+     */
+    public synchronized long onTimer(long nowNanos, long heartbeatNanos, long idleTimeoutNanos,
+                                     long maxConnectionNanos) {
+        if (closed) {
+            return -1;
+        }
+        if (outbound == null || outbound.getEmitter() instanceof SseBatchEmitter.Member) {
+            // 没有连接：下一次检查是否过期（最晚一个心跳周期后再看，期间可能重新连接）
+            long expiresAt = finished ? finishedAtNanos + retentionNanos : detachedAtNanos + idleLimitNanos();
+            return Math.min(heartbeatNanos, Math.max(0, expiresAt - nowNanos));
+        }
+
+        if (nowNanos - attachedAtNanos >= maxConnectionNanos) {
+            log.info("SSE 连接达到时长上限，关闭等待重连: {}", requestId);
+            disconnect(nowNanos);
+            return heartbeatNanos;
+        }
+        if (!finished && nowNanos - lastContentNanos >= idleTimeoutNanos) {
+            log.warn("SSE 连接长时间没有新内容，关闭等待重连: {}", requestId);
+            disconnect(nowNanos);
+            return heartbeatNanos;
+        }
+        if (nowNanos - lastWriteNanos >= heartbeatNanos) {
+            send(HEARTBEAT);
+        }
+
+        long next = Math.min(lastWriteNanos + heartbeatNanos, attachedAtNanos + maxConnectionNanos);
+        if (!finished) {
+            next = Math.min(next, lastContentNanos + idleTimeoutNanos);
+        }
+        return Math.max(0, next - nowNanos);
+    }
+
+    /**
+     * 回收流，释放重放缓冲区
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        replayBuffer.release();
+        buffer.setLength(0);
+        if (outbound != null && !finished) {
+            outbound.abort();
+        }
+        outbound = null;
+    }
+
+    private long idleLimitNanos() {
+        return everAttached ? retentionNanos : connectTimeoutNanos;
+    }
+
+    private void finish() {
+        finished = true;
+        finishedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * 服务端主动关闭当前连接，流保留，等待重连
+     */
+    private void disconnect(long nowNanos) {
+        SseOutbound old = outbound;
+        outbound = null;
+        detachedAtNanos = nowNanos;
+        old.complete();
+    }
+
+    /**
+     * @param force 结束 / 出错时必须发出；否则前端跟不上时继续合并，等积压清空
+     */
+    private void flushBuffer(boolean force) {
+        if (buffer.length() == 0) {
+            return;
+        }
+        if (!force && outbound != null && outbound.isBackedUp()) {
+            if (bufferedBytes < replayBuffer.getMaxBytes()) {
+                // 继续合并，积压清空后（onDrained）合成一帧发出
+                return;
+            }
+            // 合并的内容已经和整个重放缓冲区一样大，前端明显跟不上：断开连接，帧照常进入重放缓冲区，重连后补发
+            outbound.evict();
+            outbound = null;
+            detachedAtNanos = System.nanoTime();
+        }
+        // 直接从 StringBuilder 编码，不生成中间 String
+        writeChunk(buffer);
+        buffer.setLength(0);
+        bufferedBytes = 0;
+    }
+
+    private void writeChunk(CharSequence content) {
+        record(encoder.encode(replayBuffer.lastId() + 1, "message", requestId, content, false, null));
+    }
+
+    /**
+     * 帧先进入重放缓冲区，有连接时再写出
+     */
+    private void record(byte[] frame) {
+        lastContentNanos = System.nanoTime();
+        replayBuffer.add(frame);
+        if (outbound != null) {
+            send(frame);
+        }
+    }
+
+    /**
+     * 放进发送队列（不阻塞）；连接已失效时按断开处理，帧仍在重放缓冲区中，前端重连后可以补发
+     */
+    private void send(byte[] frame) {
+        lastWriteNanos = System.nanoTime();
+        if (!outbound.offer(frame)) {
+            outbound = null;
+            detachedAtNanos = lastWriteNanos;
+        }
+    }
+
+    private void send(List<byte[]> frames) {
+        lastWriteNanos = System.nanoTime();
+        if (!outbound.offerAll(frames)) {
+            outbound = null;
+            detachedAtNanos = lastWriteNanos;
+        }
+    }
+
+    /**
+     * 计算 UTF-8 编码后的字节数（不分配新数组）
+     */
+    static int utf8Length(CharSequence s) {
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
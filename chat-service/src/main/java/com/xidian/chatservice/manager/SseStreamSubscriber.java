@@ -0,0 +1,77 @@
+package com.xidian.chatservice.manager;
+
+import com.xidian.chatservice.metrics.ChatLatencyMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.SignalType;
+
+/**
+ * 把大模型的流式输出写入 SSE 连接的订阅者
+ *
+ * 背压：每写完一个片段才 request(1) 下一个，
+ * 前端写得慢，上游（大模型流）就跟着慢下来，不会在内存中无限堆积
+ *
+ * 输出写到 ChatResponseSink：单实例为本地 SseEmitterManager，多实例为 ResponseFanoutRelay；
+ * 订阅时打开一次输出通道，之后每个片段直接写通道，不再按 requestId 查找流
+ *
+ * 每个片段到达时记录首字延迟 / 片段间隔，结束（完成、出错、取消）时记录总耗时（见 ChatLatencyMetrics）
+ */
+@Slf4j
+public class SseStreamSubscriber extends BaseSubscriber<String> {
+
+    private final String requestId;
+    private final ChatResponseSink sink;
+    private final ChatLatencyMetrics.Trace trace;
+
+    private ChatResponseSink.Channel channel;
+
+    public SseStreamSubscriber(String requestId, ChatResponseSink sink) {
+        this(requestId, sink, ChatLatencyMetrics.Trace.NONE);
+    }
+
+    public SseStreamSubscriber(String requestId, ChatResponseSink sink, ChatLatencyMetrics.Trace trace) {
+        this.requestId = requestId;
+        this.sink = sink;
+        this.trace = trace;
+    }
+
+    @Override
+    protected void hookOnSubscribe(Subscription subscription) {
+        channel = sink.open(requestId);
+        // 先要一个片段，写完再要下一个
+        request(1);
+    }
+
+    @Override
+    protected void hookOnNext(String chunk) {
+        trace.chunk();
+        boolean sent = channel.send(chunk);
+
+        if (!sent) {
+            // 前端已断开，取消上游订阅，停止生成（省下后续的 token 费用）
+            log.warn("⚠️ SSE 连接已断开，取消大模型调用: {}", requestId);
+            cancel();
+            return;
+        }
+
+        request(1);
+    }
+
+    @Override
+    protected void hookOnComplete() {
+        channel.complete("");
+        log.info("✅ 请求处理完成: {}", requestId);
+    }
+
+    @Override
+    protected void hookOnError(Throwable e) {
+        log.error("❌ 请求处理异常: {}, error: {}", requestId, e.getMessage(), e);
+        channel.error("处理异常: " + e.getMessage());
+    }
+
+    @Override
+    protected void hookFinally(SignalType type) {
+        trace.finished();
+    }
+}
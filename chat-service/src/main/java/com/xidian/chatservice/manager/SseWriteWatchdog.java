@@ -0,0 +1,99 @@
+package com.xidian.chatservice.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 单次写入的超时检测
+ *
+ * 前端读得很慢时，send 阻塞在 socket 上，几个这样的连接就能占满写线程池，健康的连接跟着排队，
+ * 队列积压后又被慢消费者策略误伤。这里按单次写入的耗时判断慢消费者：
+ * - 写任务开始 / 结束时登记，集合里只有正在写的连接
+ * - 由时间轮定期调用 check：单次写入超过 writeTimeoutMs 的连接按慢消费者断开（不再接收新帧，流转入等待重连），
+ *   前端带 Last-Event-ID 重连后从重放缓冲区补发
+ * - 阻塞中的 send 无法从外部打断（由容器的 socket 写超时结束），期间给写线程池临时补一个线程，
+ *   其他连接始终有 writerThreads 个线程可用；卡住的写返回后收回
+ */
+@Slf4j
+public class SseWriteWatchdog {
+
+    private final long timeoutNanos;
+    // 写线程池（不是 ThreadPoolTaskExecutor 时只断开连接，不补线程）
+    private final ThreadPoolTaskExecutor pool;
+    private final int baseThreads;
+    private final int maxThreads;
+
+    // 正在写的连接
+    private final Set<SseOutbound> writing = ConcurrentHashMap.newKeySet();
+
+    // 写入超时、还没返回的连接数（受 this 锁保护）
+    private int stuck;
+
+    /**
+     * @param writeTimeoutMs 单次写入的时间上限（毫秒）
+     * @param writers 写线程池
+     * @param maxThreads 补线程后写线程池最多的线程数
+     */
+    public SseWriteWatchdog(long writeTimeoutMs, Executor writers, int maxThreads) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, writeTimeoutMs));
+        this.pool = writers instanceof ThreadPoolTaskExecutor executor ? executor : null;
+        this.baseThreads = pool != null ? pool.getCorePoolSize() : 0;
+        this.maxThreads = Math.max(baseThreads, maxThreads);
+    }
+
+    void begin(SseOutbound outbound) {
+        writing.add(outbound);
+    }
+
+    /**
+     * @param timedOut 这次写入是否已被判定为超时（补的线程在这里收回）
+     */
+    void end(SseOutbound outbound, boolean timedOut) {
+        writing.remove(outbound);
+        if (timedOut) {
+            adjust(-1);
+        }
+    }
+
+    /**
+     * 检查正在写的连接，断开单次写入超时的连接
+     */
+    public void check(long nowNanos) {
+        for (SseOutbound outbound : writing) {
+            if (outbound.expireWrite(nowNanos, timeoutNanos)) {
+                adjust(1);
+            }
+        }
+    }
+
+    /**
+     * 检查间隔：超时时间的一半，单次写入最晚在 1.5 倍超时时间内被发现
+     */
+    public long getCheckIntervalMs() {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos) / 2);
+    }
+
+    /**
+     * 写入超时、还没返回的连接数
+     */
+    public synchronized int getStuckWrites() {
+        return stuck;
+    }
+
+    private synchronized void adjust(int delta) {
+        stuck += delta;
+        if (pool == null) {
+            return;
+        }
+        int threads = Math.min(maxThreads, baseThreads + Math.max(0, stuck));
+        if (threads != pool.getCorePoolSize()) {
+            pool.setCorePoolSize(threads);
+            log.info("SSE 写线程数调整为 {}（写入超时未返回的连接: {}）", threads, stuck);
+        }
+    }
+}
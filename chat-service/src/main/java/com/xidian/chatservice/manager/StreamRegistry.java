@@ -0,0 +1,409 @@
+package com.xidian.chatservice.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * requestId → 流 的注册表（分片 + 开放寻址，键是 UUID 的两个 long）
+ *
+ * requestId 由 UUID.randomUUID().toString() 生成，按 36 个字符的 String 做哈希和 equals 比较浪费，
+ * 这里把标准格式的 UUID 解析成 (高 64 位, 低 64 位) 两个 long 作为键：
+ * - 按哈希分成若干分片，每个分片一把 StampedLock，写操作只锁一个分片
+ * - 分片内是线性探测的开放寻址表：键存在 long[] 里（每个槽位两个 long），值存在 Object[] 里，没有 Entry 对象
+ * - 读操作先乐观读（不加锁），期间有写入再退回读锁
+ * - 删除用后移（backward shift）填补空位，不留墓碑
+ *
+ * 不是标准小写 UUID 的 requestId（测试、旧客户端）放进普通的 ConcurrentHashMap，行为不变
+ *
+ * 值不能为 null
+ */
+public class StreamRegistry<V> {
+
+    // 每个分片的初始槽位数，装填超过一半就扩容（线性探测在低装填率下探测次数最少）
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 小写十六进制字符 → 数值，其他字符为 -1
+    private static final byte[] HEX = new byte['f' + 1];
+
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final Shard<V>[] shards;
+    private final int shardMask;
+
+    // 非 UUID 的 requestId
+    private final Map<String, V> others = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param shardCount 分片数（向上取整为 2 的幂）
+     */
+    @SuppressWarnings("unchecked")
+    public StreamRegistry(int shardCount) {
+        int count = Integer.highestOneBit(Math.max(1, shardCount) * 2 - 1);
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard<>();
+        }
+        this.shardMask = count - 1;
+    }
+
+    public V get(String requestId) {
+        if (!hasUuidShape(requestId)) {
+            return others.get(requestId);
+        }
+        long msb = mostSignificantBits(requestId);
+        long lsb = leastSignificantBits(requestId);
+        if ((msb == -1 || lsb == -1) && !isCanonicalUuid(requestId)) {
+            return others.get(requestId);
+        }
+        long hash = hash(msb, lsb);
+        return shardFor(hash).get(msb, lsb, hash);
+    }
+
+    public boolean containsKey(String requestId) {
+        return get(requestId) != null;
+    }
+
+    /**
+     * 与 ConcurrentHashMap.compute 相同：在分片锁内根据旧值（可能为 null）计算新值，新值为 null 时删除
+     *
+     * remapping 在锁内执行，不能再访问这个注册表
+     *
+     * @return 新值
+     */
+    public V compute(String requestId, BiFunction<String, ? super V, ? extends V> remapping) {
+        if (!hasUuidShape(requestId)) {
+            return computeOther(requestId, remapping);
+        }
+        long msb = mostSignificantBits(requestId);
+        long lsb = leastSignificantBits(requestId);
+        if ((msb == -1 || lsb == -1) && !isCanonicalUuid(requestId)) {
+            return computeOther(requestId, remapping);
+        }
+        long hash = hash(msb, lsb);
+        return shardFor(hash).compute(requestId, msb, lsb, hash, remapping, size);
+    }
+
+    /**
+     * 当前值是 value 时删除
+     */
+    public boolean remove(String requestId, V value) {
+        boolean removed;
+        if (!hasUuidShape(requestId)) {
+            removed = others.remove(requestId, value);
+        } else {
+            long msb = mostSignificantBits(requestId);
+            long lsb = leastSignificantBits(requestId);
+            if ((msb == -1 || lsb == -1) && !isCanonicalUuid(requestId)) {
+                removed = others.remove(requestId, value);
+            } else {
+                long hash = hash(msb, lsb);
+                removed = shardFor(hash).remove(msb, lsb, hash, value);
+            }
+        }
+        if (removed) {
+            size.decrementAndGet();
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 遍历所有值（每个分片先复制一份再回调，回调里可以访问注册表）
+     */
+    public void forEach(Consumer<? super V> action) {
+        for (Shard<V> shard : shards) {
+            shard.values().forEach(action);
+        }
+        others.values().forEach(action);
+    }
+
+    private V computeOther(String requestId, BiFunction<String, ? super V, ? extends V> remapping) {
+        boolean[] existed = new boolean[1];
+        V value = others.compute(requestId, (id, old) -> {
+            existed[0] = old != null;
+            return remapping.apply(id, old);
+        });
+        if (existed[0] != (value != null)) {
+            size.addAndGet(value != null ? 1 : -1);
+        }
+        return value;
+    }
+
+    private Shard<V> shardFor(long hash) {
+        // 分片用高位，槽位用低位，两者互不相关
+        return shards[(int) (hash >>> 40) & shardMask];
+    }
+
+    private static long hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * 长度和连字符位置是否符合 UUID 格式（之后解析时再检查每一位是否是小写十六进制）
+     */
+    private static boolean hasUuidShape(String s) {
+        return s != null && s.length() == 36
+                && s.charAt(8) == '-' && s.charAt(13) == '-' && s.charAt(18) == '-' && s.charAt(23) == '-';
+    }
+
+    /**
+     * 是否是 UUID.toString() 生成的小写标准格式（大写或其他格式的 UUID 仍按字符串处理，保证键与字符串一一对应）
+     *
+     * 只在解析结果为 -1 时调用：解析遇到非法字符也返回 -1，需要区分全 f 的合法 UUID
+     */
+    private static boolean isCanonicalUuid(String s) {
+        if (s == null || s.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 解析和检查合并成一遍：任何一段有非法字符，结果都是 -1
+    // （每段单独检查：-1 左移后只剩高位，直接拼接会把非法字符当成另一个合法 UUID）
+    private static long mostSignificantBits(String uuid) {
+        long a = hex(uuid, 0, 8);
+        long b = hex(uuid, 9, 13);
+        long c = hex(uuid, 14, 18);
+        // 合法的段不超过 32 位，都是非负数，有一段是 -1 时按位或为负
+        if ((a | b | c) < 0) {
+            return -1;
+        }
+        return (a << 32) | (b << 16) | c;
+    }
+
+    private static long leastSignificantBits(String uuid) {
+        long a = hex(uuid, 19, 23);
+        long b = hex(uuid, 24, 28);
+        long c = hex(uuid, 28, 36);
+        if ((a | b | c) < 0) {
+            return -1;
+        }
+        return (a << 48) | (b << 32) | c;
+    }
+
+    /**
+     * 解析最多 8 位小写十六进制，有非法字符时返回 -1（合法结果不超过 32 位，不会是 -1）
+     */
+    private static long hex(String s, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            int digit = c < HEX.length ? HEX[c] : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * 一个分片：线性探测的开放寻址表
+     *
+     * keys[2 * i] / keys[2 * i + 1] 是槽位 i 的高 / 低 64 位，values[i] 为 null 表示空槽
+     */
+    private static final class Shard<V> {
+
+        private final StampedLock lock = new StampedLock();
+        private long[] keys = new long[INITIAL_CAPACITY * 2];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int count;
+
+        V get(long msb, long lsb, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                V value = find(keys, values, msb, lsb, hash);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(keys, values, msb, lsb, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        V compute(String requestId, long msb, long lsb, long hash,
+                  BiFunction<String, ? super V, ? extends V> remapping, AtomicInteger size) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = indexOf(msb, lsb, hash);
+                @SuppressWarnings("unchecked")
+                V old = slot >= 0 ? (V) values[slot] : null;
+                V value = remapping.apply(requestId, old);
+                if (value == null) {
+                    if (slot >= 0) {
+                        delete(slot);
+                        size.decrementAndGet();
+                    }
+                } else if (slot >= 0) {
+                    values[slot] = value;
+                } else {
+                    insert(msb, lsb, hash, value);
+                    size.incrementAndGet();
+                }
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(long msb, long lsb, long hash, Object expected) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = indexOf(msb, lsb, hash);
+                if (slot < 0 || values[slot] != expected) {
+                    return false;
+                }
+                delete(slot);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<V> values() {
+            long stamp = lock.readLock();
+            try {
+                List<V> copy = new ArrayList<>(count);
+                for (Object value : values) {
+                    if (value != null) {
+                        copy.add((V) value);
+                    }
+                }
+                return copy;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * 乐观读时数组可能正在被替换，keys 和 values 不一定属于同一张表：
+         * 长度不匹配直接放弃，探测次数不超过表长，结果由调用方 validate 决定是否采用
+         */
+        @SuppressWarnings("unchecked")
+        private static <V> V find(long[] keys, Object[] values, long msb, long lsb, long hash) {
+            int capacity = values.length;
+            if (keys.length != capacity * 2) {
+                return null;
+            }
+            int mask = capacity - 1;
+            int slot = (int) hash & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                Object value = values[slot];
+                if (value == null) {
+                    return null;
+                }
+                if (keys[slot * 2] == msb && keys[slot * 2 + 1] == lsb) {
+                    return (V) value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private int indexOf(long msb, long lsb, long hash) {
+            int mask = values.length - 1;
+            for (int slot = (int) hash & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot * 2] == msb && keys[slot * 2 + 1] == lsb) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long msb, long lsb, long hash, Object value) {
+            if ((count + 1) * 2 > values.length) {
+                resize();
+            }
+            int mask = values.length - 1;
+            int slot = (int) hash & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot * 2] = msb;
+            keys[slot * 2 + 1] = lsb;
+            values[slot] = value;
+            count++;
+        }
+
+        /**
+         * 删除槽位，把后面同一探测链上的键前移，保证查找遇到空槽即可停止
+         */
+        private void delete(int slot) {
+            int mask = values.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+                int home = (int) hash(keys[next * 2], keys[next * 2 + 1]) & mask;
+                // home 不在 (hole, next] 区间内（按环形计算）的键可以前移到空位
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole * 2] = keys[next * 2];
+                    keys[hole * 2 + 1] = keys[next * 2 + 1];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            values[hole] = null;
+            count--;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] newKeys = new long[oldKeys.length * 2];
+            Object[] newValues = new Object[oldValues.length * 2];
+            int mask = newValues.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] == null) {
+                    continue;
+                }
+                long msb = oldKeys[i * 2];
+                long lsb = oldKeys[i * 2 + 1];
+                int slot = (int) hash(msb, lsb) & mask;
+                while (newValues[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                newKeys[slot * 2] = msb;
+                newKeys[slot * 2 + 1] = lsb;
+                newValues[slot] = oldValues[i];
+            }
+            // 先换 values 再换 keys：乐观读看到长度不一致时直接失败重试
+            values = newValues;
+            keys = newKeys;
+        }
+    }
+}
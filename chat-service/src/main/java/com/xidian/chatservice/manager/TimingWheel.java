@@ -0,0 +1,174 @@
+package com.xidian.chatservice.manager;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮（所有 SSE 流的超时、心跳共用一个线程）
+ *
+ * 时间轮分成 wheelSize 个槽位，每 tickMs 前进一格。任务按到期时间放进对应槽位，
+ * 超过一圈的任务记录还要转几圈（remainingRounds）：
+ * - 添加任务：O(1)，先放进无锁队列，由时间轮线程在下一格统一放进槽位（槽位只有时间轮线程访问，不需要加锁）
+ * - 每一格：只遍历当前槽位，到期的任务交给 executor 执行，没到期的圈数减一
+ *
+ * 精度为一格（任务最多晚 tickMs 执行），适合秒级的超时和心跳，不适合毫秒级的合并窗口
+ */
+@Slf4j
+public class TimingWheel {
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Executor executor;
+
+    // 新添加的任务，等待时间轮线程放进槽位
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean stopped;
+    // 第 0 格的起点（时间轮线程晚启动时会快速补走中间的空格）
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param tickMs 每一格的时长（毫秒）
+     * @param wheelSize 槽位数（向上取整为 2 的幂）
+     * @param executor 到期任务的执行线程池（任务可能写网络，不在时间轮线程上执行）
+     */
+    public TimingWheel(String name, long tickMs, int wheelSize, Executor executor) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+    }
+
+    /**
+     * 添加一个任务，delayMs 后执行一次（第一次调用时启动时间轮线程）
+     */
+    public void schedule(Runnable task, long delayMs) {
+        start();
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+        pending.add(new Timeout(task, deadline));
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    private void start() {
+        if (started.get() || !started.compareAndSet(false, true)) {
+            return;
+        }
+        Thread worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            // 等到这一格结束
+            long deadline = tickNanos * (tick + 1);
+            long now;
+            while ((now = System.nanoTime() - startNanos) < deadline) {
+                LockSupport.parkNanos(deadline - now);
+                if (stopped) {
+                    return;
+                }
+            }
+
+            transferPending(tick);
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPending(long tick) {
+        for (Timeout timeout; (timeout = pending.poll()) != null; ) {
+            long ticks = timeout.deadlineNanos / tickNanos;
+            timeout.remainingRounds = (ticks - tick) / buckets.length;
+            // 已经过期的任务放进当前格，马上执行
+            buckets[(int) (Math.max(ticks, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                try {
+                    executor.execute(timeout.task);
+                } catch (RejectedExecutionException e) {
+                    log.warn("⚠️ 时间轮任务被拒绝（线程池已关闭？）: {}", name);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private static final class Timeout {
+
+        final Runnable task;
+        // 相对 startNanos 的到期时间
+        final long deadlineNanos;
+        long remainingRounds;
+        Timeout prev;
+        Timeout next;
+
+        Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * 一个槽位：双向链表，只由时间轮线程访问
+     */
+    private static final class Bucket {
+
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
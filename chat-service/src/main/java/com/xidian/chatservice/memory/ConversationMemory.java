@@ -0,0 +1,224 @@
+package com.xidian.chatservice.memory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xidian.chatservice.properties.ChatMemoryProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多轮对话记忆（两级存储）
+ *
+ * - 热层：内存中保存活跃会话最近的消息窗口（Caffeine，按容量和空闲时间淘汰），
+ *   活跃会话的每次请求都直接读内存，不访问数据库
+ * - 冷层：ChatMemoryRepository（JDBC / MySQL），只在会话第一次访问或被移出热层后再访问时读取。
+ *   冷层按需获取（ObjectProvider + 懒加载的仓库），启动时不连接数据库；
+ *   数据库不可用时这个会话本次按无历史处理（不缓存空窗口，免得写回时覆盖库里的记录）
+ *
+ * 写入是 write-behind：一问一答结束后只更新内存窗口并标记为脏，后台线程定时批量写回
+ * （saveAll 整体替换该会话的窗口）。还没写回的会话即使被移出热层也留在脏表里，再访问时直接复用，不会读到旧数据
+ */
+@Slf4j
+@Component
+public class ConversationMemory {
+
+    // 冷层（没有仓库时只用热层，重启后历史丢失）
+    private final ObjectProvider<ChatMemoryRepository> repository;
+    private final ChatMemoryProperties properties;
+
+    // 热层：sessionId → 消息窗口
+    private final Cache<String, SessionWindow> hot;
+
+    // 有未写回消息的会话
+    private final Map<String, SessionWindow> dirty = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    public ConversationMemory(ObjectProvider<ChatMemoryRepository> repository, ChatMemoryProperties properties) {
+        this.repository = repository;
+        this.properties = properties;
+        this.hot = Caffeine.newBuilder()
+                .maximumSize(properties.getHotSessions())
+                .expireAfterAccess(Duration.ofMillis(properties.getHotIdleMs()))
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush,
+                properties.getFlushIntervalMs(), properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前把剩下的都写回（一整批都写失败时放弃）
+        while (!dirty.isEmpty() && flush() > 0) {
+            log.debug("💾 停机写回中，剩余 {} 个会话", dirty.size());
+        }
+        if (!dirty.isEmpty()) {
+            log.warn("⚠️ 停机时仍有 {} 个会话的对话记录未写回", dirty.size());
+        }
+    }
+
+    /**
+     * 拼进提示词的历史消息（已按 token 预算截断，从旧到新）
+     */
+    public List<Message> promptHistory(String sessionId) {
+        SessionWindow window = trackedWindow(sessionId);
+        if (window == null) {
+            return List.of();
+        }
+        return window.budgeted(properties.getHistoryTokenBudget());
+    }
+
+    /**
+     * 历史上下文的摘要：相同问题只有在上下文也相同时才能复用回答；没有历史时返回 null
+     */
+    public String contextHash(String sessionId) {
+        SessionWindow window = trackedWindow(sessionId);
+        if (window == null) {
+            return null;
+        }
+        return window.digest(properties.getHistoryTokenBudget());
+    }
+
+    /**
+     * 记录一轮问答（只写内存，稍后批量写回数据库）
+     */
+    public void append(String sessionId, String question, String answer) {
+        SessionWindow window = trackedWindow(sessionId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            window.append(new UserMessage(question), new AssistantMessage(answer));
+            dirty.put(sessionId, window);
+        }
+    }
+
+    public long getHotSessionCount() {
+        return hot.estimatedSize();
+    }
+
+    public int getDirtySessionCount() {
+        return dirty.size();
+    }
+
+    /**
+     * @return 会话的消息窗口；记忆关闭、没有 sessionId 或冷层读取失败时返回 null
+     */
+    private SessionWindow trackedWindow(String sessionId) {
+        if (!properties.isEnabled() || !StringUtils.hasText(sessionId)) {
+            return null;
+        }
+        try {
+            return hot.get(sessionId, this::load);
+        } catch (RuntimeException e) {
+            // 加载失败不缓存，下次访问重新读取
+            log.warn("⚠️ 读取对话记录失败，本次按无历史处理: {}, error: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    private SessionWindow load(String sessionId) {
+        // 被移出热层但还没写回：数据库里是旧数据，直接复用
+        SessionWindow pending = dirty.get(sessionId);
+        if (pending != null) {
+            return pending;
+        }
+        ChatMemoryRepository store = repository.getIfAvailable();
+        List<Message> messages = store == null ? List.of() : store.findByConversationId(sessionId);
+        return new SessionWindow(messages, properties.getMaxMessages());
+    }
+
+    /**
+     * 写回一批脏会话
+     *
+     * @return 成功写回的会话数
+     */
+    int flush() {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+        ChatMemoryRepository store;
+        try {
+            store = repository.getIfAvailable();
+        } catch (RuntimeException e) {
+            // 数据库还连不上，留在脏表里下一轮重试
+            log.warn("⚠️ 对话记录仓库不可用: {}", e.getMessage());
+            return 0;
+        }
+        if (store == null) {
+            // 没有冷层，热层就是全部
+            dirty.clear();
+            return 0;
+        }
+
+        List<Map.Entry<String, SessionWindow>> batch = new ArrayList<>();
+        for (Map.Entry<String, SessionWindow> entry : dirty.entrySet()) {
+            if (batch.size() >= properties.getFlushBatchSize()) {
+                break;
+            }
+            batch.add(entry);
+        }
+
+        int flushed = 0;
+        for (Map.Entry<String, SessionWindow> entry : batch) {
+            String sessionId = entry.getKey();
+            SessionWindow window = entry.getValue();
+            long version = window.getVersion();
+            try {
+                store.saveAll(sessionId, window.snapshot());
+                flushed++;
+            } catch (Exception e) {
+                // 留在脏表里，下一轮重试
+                log.warn("⚠️ 对话记录写回失败: {}, error: {}", sessionId, e.getMessage());
+                continue;
+            }
+            // 写回期间又有新消息：保持脏标记，下一轮再写
+            synchronized (window) {
+                if (window.getVersion() == version) {
+                    dirty.remove(sessionId, window);
+                }
+            }
+        }
+        if (flushed > 0) {
+            log.debug("💾 写回对话记录: {} 个会话", flushed);
+        }
+        return flushed;
+    }
+}
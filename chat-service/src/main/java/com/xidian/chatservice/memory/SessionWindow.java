@@ -0,0 +1,113 @@
+package com.xidian.chatservice.memory;
+
+import com.xidian.chatservice.common.TokenEstimator;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 一个会话最近的消息窗口（按时间从旧到新）
+ *
+ * 窗口最多 maxMessages 条，超出时丢弃最早的消息；每次追加 version + 1，写回数据库时据此判断是否又有新消息
+ */
+class SessionWindow {
+
+    private final int maxMessages;
+    private final ArrayDeque<Message> messages;
+    private long version;
+
+    // 按 token 预算截断后的历史和它的摘要（随 version 失效）
+    private List<Message> budgeted;
+    private String digest;
+    private int budgetedFor = -1;
+
+    SessionWindow(List<Message> loaded, int maxMessages) {
+        this.maxMessages = maxMessages;
+        this.messages = new ArrayDeque<>(maxMessages + 2);
+        int skip = Math.max(0, loaded.size() - maxMessages);
+        loaded.stream().skip(skip).forEach(messages::addLast);
+    }
+
+    synchronized void append(Message question, Message answer) {
+        messages.addLast(question);
+        messages.addLast(answer);
+        while (messages.size() > maxMessages) {
+            messages.pollFirst();
+        }
+        version++;
+        budgeted = null;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized List<Message> snapshot() {
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * 从最新的消息往前取，总 token 数（估算）不超过 budget；
+     * 第一条总是用户消息，避免以一条没有问题的回答开头
+     */
+    synchronized List<Message> budgeted(int budget) {
+        if (budgeted == null || budgetedFor != budget) {
+            List<Message> kept = new ArrayList<>();
+            int tokens = 0;
+            var it = messages.descendingIterator();
+            while (it.hasNext()) {
+                Message message = it.next();
+                tokens += TokenEstimator.estimate(message.getText());
+                if (tokens > budget) {
+                    break;
+                }
+                kept.add(message);
+            }
+            Collections.reverse(kept);
+            while (!kept.isEmpty() && kept.get(0).getMessageType() != MessageType.USER) {
+                kept.remove(0);
+            }
+            budgeted = Collections.unmodifiableList(kept);
+            budgetedFor = budget;
+            digest = null;
+        }
+        return budgeted;
+    }
+
+    /**
+     * 截断后历史的摘要，历史为空时返回 null
+     */
+    synchronized String digest(int budget) {
+        List<Message> history = budgeted(budget);
+        if (history.isEmpty()) {
+            return null;
+        }
+        if (digest == null) {
+            MessageDigest sha256 = sha256();
+            for (Message message : history) {
+                sha256.update(message.getMessageType().name().getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) 0);
+                sha256.update(String.valueOf(message.getText()).getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) 0);
+            }
+            digest = HexFormat.of().formatHex(sha256.digest());
+        }
+        return digest;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.xidian.chatservice.metrics;
+
+import com.xidian.chatservice.dispatch.PriorityLane;
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatMetricsProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求链路延迟指标
+ *
+ * 一个请求依次经过：
+ *   submit → Kafka 确认（chat.latency.enqueue）
+ *   → 监听器取出（chat.latency.queue.wait）
+ *   → 调度通道排队 + 限流 + 并发上限，到拿到并发许可为止（chat.latency.limiter.wait）
+ *   → 打开流后等前端连接（chat.latency.rendezvous）
+ *   → 第一个片段（chat.latency.ttft）→ 相邻片段的间隔（chat.latency.inter.token）
+ *   → 生成结束（chat.latency.total）
+ *
+ * 每段一个 Timer，按 priority 标签区分（同时带上 lane 标签），发布百分位和直方图桶，
+ * 通过 actuator 查看：GET /actuator/metrics/chat.latency.ttft?tag=priority:2
+ *
+ * ttft、inter.token、total 另外带 source 标签：model（调用大模型）/ cache（回答缓存回放）/ shared（合并到正在生成的相同问题），
+ * 缓存回放按固定节奏输出，不能和大模型的延迟混在一起。来源由服务层经 Reactor Context 中的 Trace（TRACE_KEY）标记；
+ * 不经过大模型的请求没有拿许可这一步，不记录 limiter.wait
+ *
+ * Timer 在启动时按优先级预先创建，记录时只是数组下标，不查找注册表（inter.token 每个片段记录一次）
+ *
+ * queue.wait、ttft、total 以 ChatRequest.timestamp（提交时的墙上时间）为起点，多实例部署时包含时钟偏差；
+ * 之后的各段都用本实例的 nanoTime 计算
+ */
+@Slf4j
+@Component
+public class ChatLatencyMetrics {
+
+    /**
+     * Reactor Context 中当前请求 Trace 的 key（服务层用它标记输出来源）
+     */
+    public static final String TRACE_KEY = "chat.latency.trace";
+
+    /**
+     * 输出的来源（source 标签）
+     */
+    public enum Source {
+        // 调用大模型生成
+        MODEL,
+        // 回答缓存回放
+        CACHE,
+        // 合并到正在生成的相同问题，共享大模型流
+        SHARED;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    private final boolean enabled;
+
+    // 按优先级（0 ~ 5）预先创建的各段 Timer
+    private final Stages[] stages = new Stages[PriorityLane.MAX_PRIORITY + 1];
+
+    // 流已打开、前端还没连接的等待时间（流不知道请求的优先级，不带标签）
+    private final Timer rendezvous;
+
+    public ChatLatencyMetrics(MeterRegistry registry,
+                              ChatMetricsProperties properties,
+                              SseEmitterManager sseEmitterManager) {
+        this.enabled = properties.isEnabled();
+        if (!enabled) {
+            this.rendezvous = null;
+            log.info("请求链路延迟指标已关闭");
+            return;
+        }
+
+        for (int priority = PriorityLane.MIN_PRIORITY; priority <= PriorityLane.MAX_PRIORITY; priority++) {
+            stages[priority] = new Stages(registry, properties, priority);
+        }
+        this.rendezvous = timer("chat.latency.rendezvous", "打开流到前端连接的等待时间", properties)
+                .register(registry);
+        sseEmitterManager.onRendezvous(this::recordRendezvous);
+    }
+
+    /**
+     * 从现在起计时，Kafka 确认写入时记录 enqueue（写入失败不记录）
+     */
+    public void timeEnqueue(int priority, CompletableFuture<?> sent) {
+        if (!enabled) {
+            return;
+        }
+        Timer enqueue = stages[PriorityLane.normalize(priority)].enqueue;
+        long start = System.nanoTime();
+        sent.whenComplete((result, e) -> {
+            if (e == null) {
+                enqueue.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * 监听器取出请求时调用：记录 queue.wait，返回跟踪后续各段的 Trace
+     */
+    public Trace start(ChatRequest request) {
+        if (!enabled) {
+            return Trace.NONE;
+        }
+        return new Trace(stages[PriorityLane.normalize(request.getPriority())], request.getTimestamp());
+    }
+
+    /**
+     * 标记当前请求的输出来源（Context 里没有 Trace 时什么也不做，例如不经过监听器的调用）
+     */
+    public static void markSource(ContextView context, Source source) {
+        context.<Trace>getOrEmpty(TRACE_KEY).ifPresent(trace -> trace.source(source));
+    }
+
+    private void recordRendezvous(long nanos) {
+        rendezvous.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer.Builder timer(String name, String description, ChatMetricsProperties properties) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(properties.getPercentiles())
+                .publishPercentileHistogram(properties.isPercentileHistogram())
+                .minimumExpectedValue(Duration.ofMillis(properties.getMinExpectedMs()))
+                .maximumExpectedValue(Duration.ofMillis(properties.getMaxExpectedMs()))
+                .distributionStatisticExpiry(Duration.ofMillis(properties.getPercentileWindowMs()));
+    }
+
+    /**
+     * 一个优先级的各段 Timer
+     */
+    private static final class Stages {
+
+        private final Timer enqueue;
+        private final Timer queueWait;
+        private final Timer limiterWait;
+        // 以下按 Source.ordinal() 下标
+        private final Timer[] ttft = new Timer[Source.values().length];
+        private final Timer[] interToken = new Timer[Source.values().length];
+        private final Timer[] total = new Timer[Source.values().length];
+
+        Stages(MeterRegistry registry, ChatMetricsProperties properties, int priority) {
+            String tag = String.valueOf(priority);
+            String lane = PriorityLane.of(priority).name().toLowerCase();
+            this.enqueue = timer("chat.latency.enqueue", "提交到 Kafka 确认写入", properties)
+                    .tags("priority", tag, "lane", lane).register(registry);
+            this.queueWait = timer("chat.latency.queue.wait", "提交到监听器取出（Kafka 排队）", properties)
+                    .tags("priority", tag, "lane", lane).register(registry);
+            this.limiterWait = timer("chat.latency.limiter.wait", "监听器取出到拿到并发许可（通道排队、限流、并发上限）", properties)
+                    .tags("priority", tag, "lane", lane).register(registry);
+            for (Source source : Source.values()) {
+                int i = source.ordinal();
+                this.ttft[i] = timer("chat.latency.ttft", "提交到第一个片段（首字延迟）", properties)
+                        .tags("priority", tag, "lane", lane, "source", source.tag).register(registry);
+                this.interToken[i] = timer("chat.latency.inter.token", "相邻片段的间隔", properties)
+                        .tags("priority", tag, "lane", lane, "source", source.tag).register(registry);
+                this.total[i] = timer("chat.latency.total", "提交到生成结束", properties)
+                        .tags("priority", tag, "lane", lane, "source", source.tag).register(registry);
+            }
+        }
+    }
+
+    /**
+     * 单个请求的各段时间戳
+     *
+     * dispatched 在拿到许可的线程调用，source 在订阅时由服务层标记（都早于第一个片段），
+     * 之后的片段和结束都在同一个订阅者里串行调用（publishOn 保证先后顺序）
+     */
+    public static final class Trace {
+
+        /**
+         * 不记录任何指标（指标关闭，或者没有经过监听器的流）
+         */
+        public static final Trace NONE = new Trace(null, null);
+
+        private final Stages stages;
+        // 提交时刻在 nanoTime 轴上的位置（没有提交时间戳时取监听器取出的时刻）
+        private final long submittedNanos;
+        private final long dequeuedNanos;
+        private long lastChunkNanos;
+        private boolean finished;
+        // 输出来源，默认为调用大模型
+        private volatile Source source = Source.MODEL;
+
+        private Trace(Stages stages, Long timestamp) {
+            this.stages = stages;
+            this.dequeuedNanos = System.nanoTime();
+            long queueWaitNanos = 0;
+            if (stages != null && timestamp != null) {
+                queueWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - timestamp));
+                stages.queueWait.record(queueWaitNanos, TimeUnit.NANOSECONDS);
+            }
+            this.submittedNanos = dequeuedNanos - queueWaitNanos;
+        }
+
+        /**
+         * 拿到并发许可、开始调用大模型
+         */
+        public void dispatched() {
+            if (stages != null) {
+                stages.limiterWait.record(System.nanoTime() - dequeuedNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * 标记输出来源（命中缓存、合并到其他生成时由服务层调用）
+         */
+        public void source(Source source) {
+            // NONE 是共享的单例，不记录
+            if (stages != null) {
+                this.source = source;
+            }
+        }
+
+        /**
+         * 收到一个片段：第一个记录 ttft，之后记录和上一个片段的间隔
+         */
+        public void chunk() {
+            if (stages == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            int i = source.ordinal();
+            if (lastChunkNanos == 0) {
+                stages.ttft[i].record(now - submittedNanos, TimeUnit.NANOSECONDS);
+            } else {
+                stages.interToken[i].record(now - lastChunkNanos, TimeUnit.NANOSECONDS);
+            }
+            lastChunkNanos = now;
+        }
+
+        /**
+         * 生成结束（完成、出错或被取消），只记录一次
+         */
+        public void finished() {
+            if (stages == null || finished) {
+                return;
+            }
+            finished = true;
+            stages.total[source.ordinal()].record(System.nanoTime() - submittedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.xidian.chatservice.metrics;
+
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.manager.SseOutbound;
+import com.xidian.chatservice.service.impl.CachingLLMService;
+import com.xidian.chatservice.service.impl.SingleFlightLLMService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * 回答缓存和 SSE 连接的运行统计（原 /api/chat/cache/stats、/api/stream/stats）
+ *
+ * 计数器和当前值直接读各组件已有的统计，注册成 Micrometer 指标，通过 actuator 查看：
+ * GET /actuator/metrics/chat.cache.requests?tag=result:hit
+ *
+ * - chat.cache.requests（result=hit/miss）、chat.cache.answers、chat.cache.saved.tokens（source=cache/shared）
+ * - chat.singleflight.joins、chat.singleflight.inflight
+ * - chat.stream.connections（state=total/waiting）、chat.stream.replay.bytes、chat.stream.queued.frames、
+ *   chat.stream.slow.consumers、chat.stream.dropped.frames、chat.stream.slow.consumer.evictions、chat.stream.stuck.writes
+ */
+@Component
+public class ChatStatsMetrics implements MeterBinder {
+
+    private final CachingLLMService cachingLLMService;
+    private final SingleFlightLLMService singleFlightLLMService;
+    private final SseEmitterManager sseEmitterManager;
+
+    public ChatStatsMetrics(CachingLLMService cachingLLMService,
+                            SingleFlightLLMService singleFlightLLMService,
+                            SseEmitterManager sseEmitterManager) {
+        this.cachingLLMService = cachingLLMService;
+        this.singleFlightLLMService = singleFlightLLMService;
+        this.sseEmitterManager = sseEmitterManager;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // ===== 回答缓存、相同问题合并 =====
+        FunctionCounter.builder("chat.cache.requests", cachingLLMService, CachingLLMService::getHitCount)
+                .description("回答缓存查询次数").tag("result", "hit").register(registry);
+        FunctionCounter.builder("chat.cache.requests", cachingLLMService, CachingLLMService::getMissCount)
+                .description("回答缓存查询次数").tag("result", "miss").register(registry);
+        Gauge.builder("chat.cache.answers", cachingLLMService, CachingLLMService::getCachedAnswers)
+                .description("缓存的回答数（估算）").register(registry);
+        FunctionCounter.builder("chat.cache.saved.tokens", cachingLLMService, CachingLLMService::getSavedTokens)
+                .description("节省的大模型 token 数（问题 + 回答，估算）").tag("source", "cache").register(registry);
+        FunctionCounter.builder("chat.cache.saved.tokens", singleFlightLLMService, SingleFlightLLMService::getSavedTokens)
+                .description("节省的大模型 token 数（问题 + 回答，估算）").tag("source", "shared").register(registry);
+        FunctionCounter.builder("chat.singleflight.joins", singleFlightLLMService, SingleFlightLLMService::getJoinedCount)
+                .description("合并到正在生成的相同问题的请求数").register(registry);
+        Gauge.builder("chat.singleflight.inflight", singleFlightLLMService, SingleFlightLLMService::getInFlightCount)
+                .description("正在生成、可以合并的问题数").register(registry);
+
+        // ===== SSE 连接和发送队列 =====
+        SseOutbound.Stats outbound = sseEmitterManager.getOutboundStats();
+        Gauge.builder("chat.stream.connections", sseEmitterManager, SseEmitterManager::getConnectionCount)
+                .description("SSE 流数").tag("state", "total").register(registry);
+        Gauge.builder("chat.stream.connections", sseEmitterManager, SseEmitterManager::getWaitingCount)
+                .description("SSE 流数").tag("state", "waiting").register(registry);
+        Gauge.builder("chat.stream.replay.bytes", sseEmitterManager, SseEmitterManager::getReplayBytes)
+                .description("所有重放缓冲区占用的字节数").baseUnit("bytes").register(registry);
+        Gauge.builder("chat.stream.queued.frames", outbound, SseOutbound.Stats::getQueuedFrames)
+                .description("所有连接发送队列中积压的帧数").register(registry);
+        FunctionCounter.builder("chat.stream.slow.consumers", outbound, SseOutbound.Stats::getSlowConsumers)
+                .description("前端跟不上（发送队列满或单次写入超时）的次数").register(registry);
+        FunctionCounter.builder("chat.stream.dropped.frames", outbound, SseOutbound.Stats::getDroppedFrames)
+                .description("DROP_TO_LATEST 丢弃的帧数").register(registry);
+        FunctionCounter.builder("chat.stream.slow.consumer.evictions", outbound,
+                        SseOutbound.Stats::getSlowConsumerEvictions)
+                .description("因为跟不上被断开的连接数").register(registry);
+        Gauge.builder("chat.stream.stuck.writes", sseEmitterManager, SseEmitterManager::getStuckWrites)
+                .description("写入超时、仍占用写线程的连接数").register(registry);
+    }
+}
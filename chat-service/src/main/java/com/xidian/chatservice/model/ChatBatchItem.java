@@ -0,0 +1,13 @@
+package com.xidian.chatservice.model;
+
+import lombok.Data;
+
+/**
+ * 批量提交中的一个问题（JSON 数组的元素，或 NDJSON 的一行）
+ */
+@Data
+public class ChatBatchItem {
+
+    private String question;       // 用户问题
+    private String sessionId;      // 会话ID（可选，用于多轮对话）
+}
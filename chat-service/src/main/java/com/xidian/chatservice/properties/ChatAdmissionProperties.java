@@ -0,0 +1,35 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 准入控制（过载保护）配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.admission")
+@Data
+public class ChatAdmissionProperties {
+
+    private boolean enabled = true;
+
+    // 预计排队时间超过该值就直接拒绝（要明显小于 SSE 的 5 分钟超时）
+    private long maxWaitMs = 60_000;
+
+    // VIP 通道允许的最长排队时间
+    private long vipMaxWaitMs = 120_000;
+
+    // 积压少于该数量时不拒绝（冷启动时吞吐量估计不准）
+    private long minBacklog = 20;
+
+    // 刷新 Kafka 消费积压（lag）的间隔
+    private long lagRefreshMs = 2000;
+
+    // 吞吐量平滑系数（0~1，越大越跟随最近一次采样）
+    private double rateSmoothing = 0.3;
+
+    // 返回给客户端的重试间隔范围（秒）
+    private int minRetryAfterSeconds = 1;
+    private int maxRetryAfterSeconds = 60;
+}
@@ -0,0 +1,32 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 回答复用配置（回答缓存 + 合并相同问题）
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.cache")
+@Data
+public class ChatCacheProperties {
+
+    private boolean enabled = true;
+
+    // 缓存总容量（按回答字符数计），超出后按 W-TinyLFU 淘汰
+    private long maxChars = 20_000_000;
+
+    // 回答写入后的有效期（毫秒）
+    private long ttlMs = 600_000;
+
+    // 带 sessionId 的请求是否按会话隔离缓存（false：所有用户共享同一问题的回答）
+    private boolean sessionScoped = false;
+
+    // 相同问题正在生成时共享同一个大模型流（不依赖 enabled，关闭缓存时也生效）
+    private boolean singleFlight = true;
+
+    // 命中时按片段回放：每个片段的字符数和片段间隔（毫秒，0 表示不限速）
+    private int replayChunkChars = 16;
+    private long replayPaceMs = 20;
+}
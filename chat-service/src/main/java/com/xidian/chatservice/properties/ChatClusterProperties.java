@@ -0,0 +1,33 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * 多实例部署配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.cluster")
+@Data
+public class ChatClusterProperties {
+
+    public enum Delivery {
+        // 单实例：消费 Kafka 请求的实例直接写本地 SSE 连接
+        LOCAL,
+        // 多实例：输出经响应 Topic 广播，每个实例只写自己持有的 SSE 连接
+        FANOUT
+    }
+
+    private Delivery delivery = Delivery.LOCAL;
+
+    // 响应广播 Topic（key 为 requestId，同一请求的片段保持顺序）
+    private String responseTopic = "chat-response";
+
+    private int responsePartitions = 3;
+
+    // 实例 ID，每个实例用独立的消费者组订阅响应 Topic（默认每次启动随机生成）
+    private String instanceId = UUID.randomUUID().toString();
+}
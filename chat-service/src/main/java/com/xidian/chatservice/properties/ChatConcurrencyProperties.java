@@ -0,0 +1,36 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自适应并发限流配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.concurrency")
+@Data
+public class ChatConcurrencyProperties {
+
+    // 初始并发上限
+    private int initialLimit = 20;
+
+    // 并发上限的取值范围
+    private int minLimit = 2;
+    private int maxLimit = 200;
+
+    // 平滑系数（0~1，越大调整越快）
+    private double smoothing = 0.2;
+
+    // 延迟容忍度：TTFT 不超过最小值的多少倍时视为上游没有排队
+    private double rttTolerance = 1.5;
+
+    // 调用失败时的退避系数
+    private double backoffRatio = 0.9;
+
+    // 整个流的耗时超过该值（毫秒）视为上游过载
+    private long maxStreamTimeMs = 90_000;
+
+    // 等待许可的调用数上限（调度器出队的请求带着预留额度，不受这个上限约束）
+    private int maxWaiters = 100;
+}
@@ -0,0 +1,41 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 优先级调度配置
+ *
+ * 两条通道的限流速率之和不要超过大模型平台的总限制（通义千问 20 QPS）；
+ * 速率是集群级的（所有实例共享），不需要按实例数再拆分
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.dispatch")
+@Data
+public class ChatDispatchProperties {
+
+    // VIP 通道权重（加权轮询时每轮能分到的份额）
+    private int vipWeight = 4;
+
+    // 普通通道权重
+    private int normalWeight = 1;
+
+    // VIP 通道限流：每秒许可数
+    private double vipPermitsPerSecond = 12.0;
+
+    // 普通通道限流：每秒许可数
+    private double normalPermitsPerSecond = 8.0;
+
+    // 每条通道最多缓存的请求数（满了之后 Kafka 消费线程会等待）
+    private int laneCapacity = 200;
+
+    // VIP 用户（服务端维护的等级名单，名单内的用户走 VIP 通道）
+    private Set<String> vipUsers = new HashSet<>();
+
+    // 网关令牌：请求头 X-Gateway-Token 与之相同时才信任网关传入的 X-Chat-Priority（为空时不信任任何请求头）
+    private String gatewayToken = "";
+}
@@ -0,0 +1,75 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import lombok.Getter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 请求 Topic 的 Kafka 客户端配置（消息格式、生产者预设、在途发送上限）
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.kafka")
+@Data
+public class ChatKafkaProperties {
+
+    /**
+     * ChatRequest 的消息格式
+     */
+    public enum RequestFormat {
+        // Jackson JSON（原格式）
+        JSON,
+        // ChatRequestCodec 二进制格式（带版本号，体积约为 JSON 的一半）
+        BINARY
+    }
+
+    /**
+     * 生产者预设：批量等待时间、批大小、压缩算法、幂等、单连接在途请求数
+     */
+    @Getter
+    public enum ProducerProfile {
+        // 不等待凑批，立即发送（提交接口响应最快）
+        LATENCY(0, 16 * 1024, "none", true, 5),
+        // 等待几毫秒凑批，lz4 压缩（CPU 开销很小）
+        BALANCED(5, 64 * 1024, "lz4", true, 5),
+        // 大批量 + zstd（压缩率最高），适合批量导入
+        THROUGHPUT(20, 256 * 1024, "zstd", true, 5);
+
+        private final int lingerMs;
+        private final int batchSize;
+        private final String compressionType;
+        private final boolean idempotence;
+        private final int maxInFlightRequestsPerConnection;
+
+        ProducerProfile(int lingerMs, int batchSize, String compressionType,
+                        boolean idempotence, int maxInFlightRequestsPerConnection) {
+            this.lingerMs = lingerMs;
+            this.batchSize = batchSize;
+            this.compressionType = compressionType;
+            this.idempotence = idempotence;
+            this.maxInFlightRequestsPerConnection = maxInFlightRequestsPerConnection;
+        }
+    }
+
+    // 生产者写入的格式；消费端两种格式都能读，滚动升级时先用 json 部署一轮再切换
+    private RequestFormat requestFormat = RequestFormat.JSON;
+
+    // 请求 Topic 的生产者预设
+    private ProducerProfile producerProfile = ProducerProfile.BALANCED;
+
+    // 单独覆盖预设中的某一项（不配置时使用预设的值）
+    private Integer lingerMs;
+    private Integer batchSize;
+    private String compressionType;
+    private Boolean idempotence;
+    private Integer maxInFlightRequestsPerConnection;
+
+    // 在途发送（还没收到 broker 确认）的最大请求数，超出时提交接口直接返回 503
+    private int maxOutstandingSends = 10000;
+
+    // 批量提交接口一次最多接收的问题数（不能超过 maxOutstandingSends）
+    private int maxBatchRequests = 5000;
+
+    // 生产者缓冲区已满或拿不到 Topic 元数据时，send 最多阻塞的时间（max.block.ms，Kafka 默认 60 秒）
+    private long sendMaxBlockMs = 1000;
+}
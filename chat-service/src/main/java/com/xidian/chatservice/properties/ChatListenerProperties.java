@@ -0,0 +1,38 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Kafka 监听器执行模式配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.listener")
+@Data
+public class ChatListenerProperties {
+
+    public enum Mode {
+        // 消费线程放入调度通道，拿到并发许可时 ack（通道满时暂停这条通道的消费）
+        PLATFORM,
+        // 每条消息一个虚拟线程，同一分区按顺序执行，生成结束后才提交位点
+        VIRTUAL
+    }
+
+    public enum Ordering {
+        // 分区内严格按位点顺序处理（并发度 = 分区数）
+        PARTITION,
+        // 同一会话内保序（没有 sessionId 时退化为 USER）
+        SESSION,
+        // 同一用户内保序（没有 userId 时不保序）
+        USER
+    }
+
+    private Mode mode = Mode.PLATFORM;
+
+    // VIRTUAL 模式下的保序粒度：比分区更细时，同一分区的消息可以并行处理
+    private Ordering ordering = Ordering.SESSION;
+
+    // VIRTUAL 模式下同时在处理的消息数上限，达到后暂停监听容器（不阻塞消费线程），回落到一半以下时恢复
+    private int maxInFlightRecords = 5000;
+}
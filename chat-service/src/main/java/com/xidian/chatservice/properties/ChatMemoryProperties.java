@@ -0,0 +1,32 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 多轮对话记忆配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.memory")
+@Data
+public class ChatMemoryProperties {
+
+    private boolean enabled = true;
+
+    // 内存中最多保留多少个会话的消息窗口（热层），超出后淘汰最久未访问的
+    private long hotSessions = 10_000;
+
+    // 会话多久没有访问就移出热层（毫秒），之后再访问从数据库加载
+    private long hotIdleMs = 30 * 60_000;
+
+    // 每个会话保留的最近消息数（一问一答算两条），数据库中也只保留这个窗口
+    private int maxMessages = 40;
+
+    // 拼进提示词的历史消息最多占用的 token 数（估算），超出时丢弃最早的消息
+    private int historyTokenBudget = 2000;
+
+    // 写回数据库的间隔（毫秒）和每次最多写回的会话数
+    private long flushIntervalMs = 1000;
+    private int flushBatchSize = 200;
+}
@@ -0,0 +1,29 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 请求链路延迟指标配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.metrics")
+@Data
+public class ChatMetricsProperties {
+
+    private boolean enabled = true;
+
+    // 在本实例内计算的百分位（滑动时间窗口内的 HdrHistogram）
+    private double[] percentiles = {0.5, 0.9, 0.99, 0.999};
+
+    // 是否同时发布直方图桶（监控系统可以跨实例聚合百分位）
+    private boolean percentileHistogram = true;
+
+    // 直方图的取值范围，超出范围的值落在首尾的桶里
+    private long minExpectedMs = 1;
+    private long maxExpectedMs = 300_000;
+
+    // 百分位的滑动窗口长度
+    private long percentileWindowMs = 60_000;
+}
@@ -0,0 +1,36 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 集群限流配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.rate-limit")
+@Data
+public class ChatRateLimitProperties {
+
+    /**
+     * 令牌桶存储后端
+     */
+    public enum Backend {
+        MEMORY,   // 内存（单实例）
+        REDIS     // Redis 风格（多实例共享）
+    }
+
+    private Backend backend = Backend.MEMORY;
+
+    // 令牌桶 key 前缀
+    private String keyPrefix = "chat:llm:";
+
+    // 每次向存储预取的令牌数
+    private long leaseBatchSize = 4;
+
+    // 租约有效期（毫秒），过期未用完的令牌作废
+    private long leaseTtlMs = 500;
+
+    // 模拟的 Redis 网络往返耗时（微秒），仅用于本地替身
+    private long simulatedRoundTripMicros = 0;
+}
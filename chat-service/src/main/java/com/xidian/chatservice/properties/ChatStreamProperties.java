@@ -0,0 +1,84 @@
+package com.xidian.chatservice.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * SSE 流配置
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.stream")
+@Data
+public class ChatStreamProperties {
+
+    public enum SlowConsumerPolicy {
+        // 暂停生成内容帧，片段继续合并，积压清空后合成一帧发出（合并的内容超过重放缓冲区上限时断开）
+        COALESCE,
+        // 丢弃积压的帧，只发最新的（前端可按 id 缺口带 Last-Event-ID 重连补齐）
+        DROP_TO_LATEST,
+        // 断开连接，前端带 Last-Event-ID 重连，从重放缓冲区补发
+        DISCONNECT
+    }
+
+    // 合并窗口（毫秒）：窗口内的片段合并成一个 SSE 事件
+    private long coalesceWindowMs = 30;
+
+    // 缓冲区达到该字节数时立即发送，不等窗口结束
+    private int coalesceMaxBytes = 512;
+
+    // 单个请求的重放缓冲区上限（字节），超过后淘汰最旧的帧
+    private int replayMaxBytes = 64 * 1024;
+
+    // 所有重放缓冲区的总上限（字节），超过后优先回收已结束的流
+    private long replayMaxTotalBytes = 64L * 1024 * 1024;
+
+    // 前端断开 / 生成结束后，流保留多久等待重连（毫秒）
+    private long replayRetentionMs = 60_000;
+
+    // 大模型提前开始生成后，最多等待前端第一次连接多久（毫秒）
+    private long connectTimeoutMs = 10_000;
+
+    // 连接上超过这么久没有写出任何内容时发送心跳注释（毫秒），防止代理 / 负载均衡断开空闲连接
+    private long heartbeatIntervalMs = 15_000;
+
+    // 生成未结束、超过这么久没有新内容时关闭连接（毫秒），前端可带 Last-Event-ID 重连
+    private long idleTimeoutMs = 120_000;
+
+    // 单个连接的最长时长（毫秒），代替容器的 SseEmitter 超时
+    private long maxConnectionMs = 5 * 60 * 1000L;
+
+    // 超时时间轮：每格时长（毫秒）和槽位数
+    private long timerTickMs = 100;
+    private int timerWheelSize = 512;
+
+    // 流注册表的分片数（每个分片一把锁）
+    private int registryShards = 64;
+
+    // 每个连接发送队列的上限（帧数），达到上限说明前端跟不上
+    private int outboundMaxFrames = 64;
+
+    // 前端跟不上时的处理策略
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.COALESCE;
+
+    // 写 SSE 连接的线程数（所有连接共用，大模型流和 Kafka 消费线程只入队、不写 socket）
+    private int writerThreads = 8;
+
+    // 单次写入（一次 send）的时间上限（毫秒），超过说明前端读得太慢，按慢消费者断开，前端带 Last-Event-ID 重连
+    private long writeTimeoutMs = 5_000;
+
+    // 写线程池最多的线程数：写入超时的线程仍卡在 socket 上，期间临时补线程，保证其他连接有 writerThreads 个线程可用
+    private int writerMaxThreads = 64;
+
+    // 时间轮到期任务（心跳、空闲超时、写入超时检查）的线程数，与写线程池分开
+    private int timerThreads = 2;
+
+    // 是否在独立端口上启动响应式（Netty）SSE 接口
+    private boolean reactiveEnabled = false;
+
+    // 响应式 SSE 接口的端口
+    private int reactivePort = 8081;
+
+    // 响应式连接的发送队列（帧数），前端读得太慢、队列满时按断线处理，重连后从重放缓冲区补发
+    private int reactiveQueueFrames = 1024;
+}
@@ -0,0 +1,326 @@
+package com.xidian.chatservice.serde;
+
+import com.xidian.chatservice.model.ChatRequest;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * ChatRequest 的二进制编解码（不依赖反射，字段顺序固定）
+ *
+ * 格式（版本 1）：
+ *
+ *   [版本号 1 字节][字段标记 1 字节][各字段...]
+ *
+ * - 字段标记的第 0~5 位表示 requestId / userId / question / sessionId / timestamp / priority 是否存在（null 不写）；
+ *   第 6 位表示 requestId 是标准 UUID，按 16 字节写入（否则和其他字符串一样）
+ * - 字符串：varint 字节数 + UTF-8 字节
+ * - timestamp、priority：zigzag varint
+ *
+ * 以后增加字段时升级版本号，解码端按版本号分别处理；第一个字节不会是 '{'，和 JSON 格式可以区分
+ */
+public final class ChatRequestCodec {
+
+    public static final byte VERSION_1 = 1;
+
+    private static final int REQUEST_ID = 1;
+    private static final int USER_ID = 1 << 1;
+    private static final int QUESTION = 1 << 2;
+    private static final int SESSION_ID = 1 << 3;
+    private static final int TIMESTAMP = 1 << 4;
+    private static final int PRIORITY = 1 << 5;
+    private static final int REQUEST_ID_UUID = 1 << 6;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private ChatRequestCodec() {
+    }
+
+    public static byte[] encode(ChatRequest request) {
+        String requestId = request.getRequestId();
+        boolean uuid = isCanonicalUuid(requestId);
+
+        int flags = 0;
+        int size = 2;
+        if (requestId != null) {
+            flags |= REQUEST_ID;
+            if (uuid) {
+                flags |= REQUEST_ID_UUID;
+                size += 16;
+            } else {
+                size += stringSize(requestId);
+            }
+        }
+        if (request.getUserId() != null) {
+            flags |= USER_ID;
+            size += stringSize(request.getUserId());
+        }
+        if (request.getQuestion() != null) {
+            flags |= QUESTION;
+            size += stringSize(request.getQuestion());
+        }
+        if (request.getSessionId() != null) {
+            flags |= SESSION_ID;
+            size += stringSize(request.getSessionId());
+        }
+        if (request.getTimestamp() != null) {
+            flags |= TIMESTAMP;
+            size += varLongSize(zigzag(request.getTimestamp()));
+        }
+        if (request.getPriority() != null) {
+            flags |= PRIORITY;
+            size += varLongSize(zigzag(request.getPriority()));
+        }
+
+        Writer out = new Writer(new byte[size]);
+        out.buf[out.pos++] = VERSION_1;
+        out.buf[out.pos++] = (byte) flags;
+        if (uuid) {
+            out.writeUuid(requestId);
+        } else if (requestId != null) {
+            out.writeString(requestId);
+        }
+        if (request.getUserId() != null) {
+            out.writeString(request.getUserId());
+        }
+        if (request.getQuestion() != null) {
+            out.writeString(request.getQuestion());
+        }
+        if (request.getSessionId() != null) {
+            out.writeString(request.getSessionId());
+        }
+        if (request.getTimestamp() != null) {
+            out.writeVarLong(zigzag(request.getTimestamp()));
+        }
+        if (request.getPriority() != null) {
+            out.writeVarLong(zigzag(request.getPriority()));
+        }
+        return out.buf;
+    }
+
+    public static ChatRequest decode(byte[] data) {
+        if (data.length < 2) {
+            throw new SerializationException("ChatRequest 消息过短: " + data.length + " 字节");
+        }
+        if (data[0] != VERSION_1) {
+            throw new SerializationException("不支持的 ChatRequest 格式版本: " + data[0]);
+        }
+
+        try {
+            Reader in = new Reader(data, 2);
+            int flags = data[1];
+            ChatRequest request = new ChatRequest();
+            if ((flags & REQUEST_ID) != 0) {
+                request.setRequestId((flags & REQUEST_ID_UUID) != 0 ? in.readUuid() : in.readString());
+            }
+            if ((flags & USER_ID) != 0) {
+                request.setUserId(in.readString());
+            }
+            if ((flags & QUESTION) != 0) {
+                request.setQuestion(in.readString());
+            }
+            if ((flags & SESSION_ID) != 0) {
+                request.setSessionId(in.readString());
+            }
+            if ((flags & TIMESTAMP) != 0) {
+                request.setTimestamp(unzigzag(in.readVarLong()));
+            }
+            if ((flags & PRIORITY) != 0) {
+                request.setPriority((int) unzigzag(in.readVarLong()));
+            }
+            return request;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("ChatRequest 消息被截断", e);
+        }
+    }
+
+    // ========== 长度计算 ==========
+
+    private static int stringSize(String s) {
+        int bytes = utf8Length(s);
+        return varLongSize(bytes) + bytes;
+    }
+
+    /**
+     * UTF-8 编码后的字节数（不成对的代理字符按 '?' 计 1 字节，与 String.getBytes 一致）
+     */
+    private static int utf8Length(String s) {
+        int length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    // 代理对：2 个 char → 4 字节
+                    length += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                }
+            } else if (c >= 0x80) {
+                length += 1;
+            }
+        }
+        return length;
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 是否是 UUID.toString() 生成的小写标准格式（解码后能还原成完全相同的字符串）
+     */
+    private static boolean isCanonicalUuid(String s) {
+        if (s == null || s.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ========== 读写 ==========
+
+    private static final class Writer {
+
+        private final byte[] buf;
+        private int pos;
+
+        Writer(byte[] buf) {
+            this.buf = buf;
+        }
+
+        void writeUuid(String uuid) {
+            UUID value = UUID.fromString(uuid);
+            writeLong(value.getMostSignificantBits());
+            writeLong(value.getLeastSignificantBits());
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeString(String s) {
+            writeVarLong(utf8Length(s));
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    buf[pos++] = '?';
+                } else {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("ChatRequest 中的 varint 过长");
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length < 0 || length > buf.length - pos) {
+                throw new SerializationException("ChatRequest 中的字符串长度无效: " + length);
+            }
+            String s = new String(buf, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return s;
+        }
+
+        String readUuid() {
+            long most = readLong();
+            long least = readLong();
+            // 和 UUID.toString() 的结果一致，但不经过 UUID 对象
+            byte[] chars = new byte[36];
+            formatHex(most >>> 32, chars, 0, 8);
+            chars[8] = '-';
+            formatHex(most >>> 16, chars, 9, 4);
+            chars[13] = '-';
+            formatHex(most, chars, 14, 4);
+            chars[18] = '-';
+            formatHex(least >>> 48, chars, 19, 4);
+            chars[23] = '-';
+            formatHex(least, chars, 24, 12);
+            return new String(chars, StandardCharsets.US_ASCII);
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        private static void formatHex(long value, byte[] out, int offset, int digits) {
+            for (int i = offset + digits - 1; i >= offset; i--) {
+                out[i] = HEX[(int) (value & 0xF)];
+                value >>>= 4;
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.xidian.chatservice.serde;
+
+import com.xidian.chatservice.model.ChatRequest;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+/**
+ * ChatRequest 的 Kafka 反序列化器
+ *
+ * 同时兼容两种格式（按第一个字节区分）：
+ * - '{'：JSON（切换前已经在 Topic 中的消息），固定反序列化成 ChatRequest，不读类型头，不需要信任任何包
+ * - 其他：ChatRequestCodec 二进制格式，版本号不认识时抛出 SerializationException（由 ErrorHandlingDeserializer 处理）
+ */
+public class ChatRequestDeserializer implements Deserializer<ChatRequest> {
+
+    private final JsonDeserializer<ChatRequest> json = new JsonDeserializer<>(ChatRequest.class, false);
+
+    @Override
+    public ChatRequest deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length > 0 && data[0] == '{') {
+            return json.deserialize(topic, data);
+        }
+        return ChatRequestCodec.decode(data);
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+}
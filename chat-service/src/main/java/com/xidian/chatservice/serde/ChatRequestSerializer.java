@@ -0,0 +1,15 @@
+package com.xidian.chatservice.serde;
+
+import com.xidian.chatservice.model.ChatRequest;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * ChatRequest 的 Kafka 序列化器（二进制格式，见 ChatRequestCodec）
+ */
+public class ChatRequestSerializer implements Serializer<ChatRequest> {
+
+    @Override
+    public byte[] serialize(String topic, ChatRequest request) {
+        return request == null ? null : ChatRequestCodec.encode(request);
+    }
+}
@@ -1,6 +1,7 @@
 package com.xidian.chatservice.service;
 
 import com.xidian.chatservice.model.ChatRequest;
+import reactor.core.publisher.Flux;
 
 import java.util.function.Consumer;
 
@@ -17,4 +18,15 @@ public interface LLMService {
      * @throws Exception 调用异常
      */
     void streamChat(ChatRequest request, Consumer<String> onChunk) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * 流式调用大模型 API（响应式版本，不阻塞调用线程）
+     *
+     * 返回的 Flux 是"冷"的：只有被订阅时才真正发起调用，
+     * 下游按需 request(n)，上游就按需生成，天然支持背压
+     *
+     * @param request 请求对象
+     * @return 大模型返回的内容片段流
+     */
+    Flux<String> streamChatReactive(ChatRequest request);
+}
@@ -0,0 +1,162 @@
+package com.xidian.chatservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xidian.chatservice.common.TokenEstimator;
+import com.xidian.chatservice.memory.ConversationMemory;
+import com.xidian.chatservice.metrics.ChatLatencyMetrics;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatCacheProperties;
+import com.xidian.chatservice.service.LLMService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 带回答缓存的大模型服务（装饰 SingleFlightLLMService）
+ *
+ * 按规范化后的问题（多轮对话再加上历史上下文的摘要）缓存完整回答：
+ * - 命中：不调用大模型，把缓存的回答切成片段按固定节奏回放，前端看到的仍然是流式输出
+ * - 未命中：交给下层，流正常结束后写入缓存；出错或被取消不缓存。
+ *   相同问题同时未命中时，由 SingleFlightLLMService 合并成一次大模型调用
+ *
+ * 命中时在 Reactor Context 的 Trace 上标记来源为 cache（回放的延迟不计入大模型的 ttft / inter.token）
+ *
+ * 容量按回答字符数计，由 Caffeine 按 W-TinyLFU 淘汰（偶发的长尾问题不会挤掉热门问题），写入后 ttlMs 过期
+ */
+@Slf4j
+@Service
+public class CachingLLMService implements LLMService {
+
+    private final LLMService delegate;
+    private final ChatCacheProperties properties;
+    private final ConversationMemory conversationMemory;
+
+    // key → 完整回答
+    private final Cache<String, String> answers;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedTokens = new LongAdder();
+
+    public CachingLLMService(@Qualifier("singleFlightLLMService") LLMService delegate,
+                             ChatCacheProperties properties,
+                             ConversationMemory conversationMemory) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.conversationMemory = conversationMemory;
+        this.answers = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxChars())
+                .weigher((String key, String answer) -> key.length() + answer.length())
+                .expireAfterWrite(Duration.ofMillis(properties.getTtlMs()))
+                .build();
+    }
+
+    @Override
+    public void streamChat(ChatRequest request, Consumer<String> onChunk) throws Exception {
+        streamChatReactive(request)
+                .doOnNext(onChunk)
+                .blockLast();
+    }
+
+    @Override
+    public Flux<String> streamChatReactive(ChatRequest request) {
+        if (!properties.isEnabled()) {
+            return delegate.streamChatReactive(request);
+        }
+        return Flux.deferContextual(context -> lookup(request, context));
+    }
+
+    private Flux<String> lookup(ChatRequest request, ContextView context) {
+        String key = QuestionKey.of(request, properties, conversationMemory);
+        if (key == null) {
+            return delegate.streamChatReactive(request);
+        }
+
+        String cached = answers.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            log.info("💾 命中回答缓存: {}", request.getRequestId());
+            ChatLatencyMetrics.markSource(context, ChatLatencyMetrics.Source.CACHE);
+            return replay(request, cached);
+        }
+
+        misses.increment();
+        StringBuilder answer = new StringBuilder();
+        return delegate.streamChatReactive(request)
+                .doOnNext(answer::append)
+                .doOnComplete(() -> {
+                    // 空回答不缓存
+                    if (answer.length() > 0) {
+                        answers.put(key, answer.toString());
+                    }
+                });
+    }
+
+    /**
+     * 把缓存的回答切成片段回放，第一个片段立即发出，之后每 replayPaceMs 发一个
+     */
+    private Flux<String> replay(ChatRequest request, String answer) {
+        savedTokens.add(TokenEstimator.estimate(request.getQuestion()) + TokenEstimator.estimate(answer));
+
+        List<String> chunks = split(answer, Math.max(1, properties.getReplayChunkChars()));
+        if (properties.getReplayPaceMs() <= 0 || chunks.size() == 1) {
+            return Flux.fromIterable(chunks);
+        }
+        return Flux.concat(
+                Mono.just(chunks.get(0)),
+                Flux.fromIterable(chunks.subList(1, chunks.size()))
+                        .delayElements(Duration.ofMillis(properties.getReplayPaceMs())));
+    }
+
+    private static List<String> split(String answer, int chunkChars) {
+        List<String> chunks = new ArrayList<>(answer.length() / chunkChars + 1);
+        int start = 0;
+        while (start < answer.length()) {
+            int end = Math.min(answer.length(), start + chunkChars);
+            // 不把代理对（emoji 等）拆到两个片段里
+            if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(answer.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    // ========== 统计 ==========
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * 命中节省的大模型 token 数（问题 + 回答，估算值）
+     */
+    public long getSavedTokens() {
+        return savedTokens.sum();
+    }
+
+    public long getCachedAnswers() {
+        return answers.estimatedSize();
+    }
+}
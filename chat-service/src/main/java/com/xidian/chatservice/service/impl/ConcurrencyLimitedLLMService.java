@@ -0,0 +1,62 @@
+package com.xidian.chatservice.service.impl;
+
+import com.xidian.chatservice.limiter.AdaptiveConcurrencyLimiter;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.service.LLMService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Consumer;
+
+/**
+ * 带自适应并发限流的大模型服务（装饰 LLMServiceImpl）
+ *
+ * 每次调用先从 AdaptiveConcurrencyLimiter 获取许可，
+ * 流结束时把首个片段延迟和总耗时反馈给限流器，由它自动调整并发上限
+ *
+ * 外层依次是 CachingLLMService、SingleFlightLLMService：命中缓存或合并到正在生成的流的请求不占用并发许可
+ *
+ * 经过调度器的请求在 Reactor Context 里带着出队时预留的额度（RESERVATION_KEY），用它获取许可时不会被拒绝
+ */
+@Slf4j
+@Service
+public class ConcurrencyLimitedLLMService implements LLMService {
+
+    /**
+     * Reactor Context 中调度器预留额度（AdaptiveConcurrencyLimiter.Reservation）的 key
+     */
+    public static final String RESERVATION_KEY = "chat.concurrency.reservation";
+
+    private final LLMServiceImpl delegate;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    public ConcurrencyLimitedLLMService(LLMServiceImpl delegate,
+                                       AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.delegate = delegate;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public void streamChat(ChatRequest request, Consumer<String> onChunk) throws Exception {
+        streamChatReactive(request)
+                .doOnNext(onChunk)
+                .blockLast();
+    }
+
+    @Override
+    public Flux<String> streamChatReactive(ChatRequest request) {
+        return Mono.deferContextual(context -> concurrencyLimiter.acquire(
+                        context.<AdaptiveConcurrencyLimiter.Reservation>getOrDefault(RESERVATION_KEY, null)))
+                .flatMapMany(permit -> delegate.streamChatReactive(request)
+                        .doOnNext(chunk -> permit.onFirstChunk())
+                        .doFinally(signal -> {
+                            switch (signal) {
+                                case ON_COMPLETE -> permit.onSuccess();
+                                case ON_ERROR -> permit.onDropped();
+                                default -> permit.onIgnore();   // 取消（前端断开）
+                            }
+                        }));
+    }
+}
@@ -0,0 +1,58 @@
+package com.xidian.chatservice.service.impl;
+
+import com.xidian.chatservice.memory.ConversationMemory;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.service.LLMService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.function.Consumer;
+
+/**
+ * 记录多轮对话的大模型服务（最外层，装饰 CachingLLMService）
+ *
+ * 不管回答来自缓存、正在生成的相同问题还是大模型本身，流正常结束后都把这一轮问答记入会话；
+ * 出错或前端中途断开的回答不记录
+ */
+@Slf4j
+@Primary
+@Service
+public class ConversationLLMService implements LLMService {
+
+    private final LLMService delegate;
+    private final ConversationMemory conversationMemory;
+
+    public ConversationLLMService(@Qualifier("cachingLLMService") LLMService delegate,
+                                  ConversationMemory conversationMemory) {
+        this.delegate = delegate;
+        this.conversationMemory = conversationMemory;
+    }
+
+    @Override
+    public void streamChat(ChatRequest request, Consumer<String> onChunk) throws Exception {
+        streamChatReactive(request)
+                .doOnNext(onChunk)
+                .blockLast();
+    }
+
+    @Override
+    public Flux<String> streamChatReactive(ChatRequest request) {
+        if (!StringUtils.hasText(request.getSessionId())) {
+            return delegate.streamChatReactive(request);
+        }
+        return Flux.defer(() -> {
+            StringBuilder answer = new StringBuilder();
+            return delegate.streamChatReactive(request)
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> {
+                        if (answer.length() > 0) {
+                            conversationMemory.append(request.getSessionId(), request.getQuestion(), answer.toString());
+                        }
+                    });
+        });
+    }
+}
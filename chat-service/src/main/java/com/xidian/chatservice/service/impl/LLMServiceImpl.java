@@ -1,17 +1,23 @@
 package com.xidian.chatservice.service.impl;
 
+import com.xidian.chatservice.memory.ConversationMemory;
 import com.xidian.chatservice.model.ChatRequest;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
 
 import com.xidian.chatservice.service.LLMService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
  * 大模型服务实现（使用 Spring AI + Dashscope）
+ *
+ * 带 sessionId 的请求会把该会话最近的历史消息（按 token 预算截断）放在问题前面；
+ * 这一轮问答由最外层的 ConversationLLMService 在流结束后记录
  */
 @Slf4j
 @Service
@@ -19,33 +25,21 @@ public class LLMServiceImpl implements LLMService {
 
     private final ChatClient chatClient;
 
+    // 多轮对话记忆（活跃会话直接读内存）
+    private final ConversationMemory conversationMemory;
+
     // 通过构造函数注入 ChatClient.Builder，然后构建 ChatClient
-    public LLMServiceImpl(ChatClient.Builder chatClientBuilder) {
+    public LLMServiceImpl(ChatClient.Builder chatClientBuilder, ConversationMemory conversationMemory) {
         this.chatClient = chatClientBuilder.build();
+        this.conversationMemory = conversationMemory;
     }
 
     @Override
     public void streamChat(ChatRequest request, Consumer<String> onChunk) throws Exception {
-        log.info("📞 调用大模型 API (Spring AI): {}", request.getRequestId());
-
         try {
-            // 使用 Spring AI 的流式调用
-            Flux<String> contentFlux = chatClient.prompt()
-                    .user(request.getQuestion())
-                    .stream()
-                    .content();
-
             // 阻塞式消费流式响应，每个 chunk 调用回调函数
-            contentFlux
-                    .doOnNext(chunk -> {
-                        if (chunk != null && !chunk.isEmpty()) {
-                            log.debug("📤 收到 chunk: {}", chunk);
-                            onChunk.accept(chunk);
-                        }
-                    })
-                    .doOnComplete(() -> log.info("✅ 大模型响应完成: {}", request.getRequestId()))
-                    .doOnError(e -> log.error("❌ 大模型调用失败: {}, error: {}",
-                            request.getRequestId(), e.getMessage()))
+            streamChatReactive(request)
+                    .doOnNext(onChunk)
                     .blockLast();  // 阻塞等待完成
 
         } catch (Exception e) {
@@ -53,4 +47,25 @@ public class LLMServiceImpl implements LLMService {
             throw e;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public Flux<String> streamChatReactive(ChatRequest request) {
+        // defer：订阅时才真正构建请求，保证每次订阅都是一次独立的调用
+        return Flux.defer(() -> {
+                    List<Message> history = conversationMemory.promptHistory(request.getSessionId());
+                    log.info("📞 调用大模型 API (Spring AI): {}, 历史消息: {}", request.getRequestId(), history.size());
+
+                    // 使用 Spring AI 的流式调用
+                    return chatClient.prompt()
+                            .messages(history)
+                            .user(request.getQuestion())
+                            .stream()
+                            .content();
+                })
+                .filter(chunk -> chunk != null && !chunk.isEmpty())
+                .doOnNext(chunk -> log.debug("📤 收到 chunk: {}", chunk))
+                .doOnComplete(() -> log.info("✅ 大模型响应完成: {}", request.getRequestId()))
+                .doOnError(e -> log.error("❌ 大模型调用失败: {}, error: {}",
+                        request.getRequestId(), e.getMessage()));
+    }
+}
@@ -0,0 +1,56 @@
+package com.xidian.chatservice.service.impl;
+
+import com.xidian.chatservice.memory.ConversationMemory;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatCacheProperties;
+import org.springframework.util.StringUtils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * "相同问题"的判定：回答缓存和 single-flight 共用同一个 key
+ *
+ * 多轮对话中的问题要连同历史上下文一起比较（"那它呢？"在不同对话里是不同的问题）
+ */
+final class QuestionKey {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s?!.。~～…]+$");
+
+    private QuestionKey() {
+    }
+
+    /**
+     * 规范化后的问题 + 会话历史的摘要（有历史时），按会话隔离时再加上 sessionId；
+     * 问题为空时返回 null（不参与复用）
+     */
+    static String of(ChatRequest request, ChatCacheProperties properties, ConversationMemory conversationMemory) {
+        String normalized = normalize(request.getQuestion());
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(normalized);
+        String context = conversationMemory.contextHash(request.getSessionId());
+        if (context != null) {
+            key.append('\u0000').append(context);
+        }
+        if (properties.isSessionScoped() && StringUtils.hasText(request.getSessionId())) {
+            key.append('\u0000').append(request.getSessionId());
+        }
+        return key.toString();
+    }
+
+    /**
+     * 规范化问题：全角转半角、统一小写、合并空白、去掉结尾的标点
+     */
+    static String normalize(String question) {
+        if (question == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(question, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        text = WHITESPACE.matcher(text).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(text).replaceAll("").strip();
+    }
+}
@@ -0,0 +1,120 @@
+package com.xidian.chatservice.service.impl;
+
+import com.xidian.chatservice.common.TokenEstimator;
+import com.xidian.chatservice.memory.ConversationMemory;
+import com.xidian.chatservice.metrics.ChatLatencyMetrics;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatCacheProperties;
+import com.xidian.chatservice.service.LLMService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 合并正在生成的相同问题（装饰 ConcurrencyLimitedLLMService）
+ *
+ * 流量高峰时很多用户会在同一时间问同一个问题。第一个请求发起大模型调用，
+ * 生成结束前到达的相同问题不再调用，而是订阅同一个流（多播）：
+ * - 后加入的请求先收到已经生成的前缀，再和其他请求一起接收后续片段
+ * - 某个前端断开只取消它自己的订阅；所有订阅都取消后才取消大模型调用
+ * - 流结束（完成、出错或全部取消）后移除，之后的相同问题交给回答缓存或重新调用
+ *
+ * 只占用一个并发许可、一次大模型调用；后加入的请求在 Reactor Context 的 Trace 上标记来源为 shared
+ */
+@Slf4j
+@Service
+public class SingleFlightLLMService implements LLMService {
+
+    private final LLMService delegate;
+    private final ChatCacheProperties properties;
+    private final ConversationMemory conversationMemory;
+
+    // key → 正在生成的流
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder savedTokens = new LongAdder();
+
+    public SingleFlightLLMService(@Qualifier("concurrencyLimitedLLMService") LLMService delegate,
+                                  ChatCacheProperties properties,
+                                  ConversationMemory conversationMemory) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.conversationMemory = conversationMemory;
+    }
+
+    @Override
+    public void streamChat(ChatRequest request, Consumer<String> onChunk) throws Exception {
+        streamChatReactive(request)
+                .doOnNext(onChunk)
+                .blockLast();
+    }
+
+    @Override
+    public Flux<String> streamChatReactive(ChatRequest request) {
+        if (!properties.isSingleFlight()) {
+            return delegate.streamChatReactive(request);
+        }
+        return Flux.deferContextual(context -> {
+            String key = QuestionKey.of(request, properties, conversationMemory);
+            if (key == null) {
+                return delegate.streamChatReactive(request);
+            }
+
+            Flight flight = flights.computeIfAbsent(key, k -> new Flight(k, request));
+            if (flight.leader == request) {
+                return flight.shared;
+            }
+
+            joined.increment();
+            ChatLatencyMetrics.markSource(context, ChatLatencyMetrics.Source.SHARED);
+            savedTokens.add(TokenEstimator.estimate(request.getQuestion()));
+            log.info("🔗 相同问题正在生成，共享大模型流: {} -> {}",
+                    request.getRequestId(), flight.leader.getRequestId());
+            return flight.shared.doOnNext(chunk -> savedTokens.add(TokenEstimator.estimate(chunk)));
+        });
+    }
+
+    /**
+     * 加入正在生成的流的请求数
+     */
+    public long getJoinedCount() {
+        return joined.sum();
+    }
+
+    /**
+     * 合并调用节省的大模型 token 数（问题 + 回答，估算值）
+     */
+    public long getSavedTokens() {
+        return savedTokens.sum();
+    }
+
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    /**
+     * 一次正在进行的大模型调用
+     */
+    private class Flight {
+
+        private final ChatRequest leader;
+        private final Flux<String> shared;
+
+        Flight(String key, ChatRequest leader) {
+            this.leader = leader;
+            // replay：缓存已生成的片段，后加入的订阅者先收到前缀
+            // refCount：第一个订阅者到来时发起调用，最后一个订阅者取消时取消调用
+            this.shared = delegate.streamChatReactive(leader)
+                    .doFinally(signal -> flights.remove(key, this))
+                    .replay()
+                    .refCount();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+-- 对话记忆表（JdbcChatMemoryRepository，ChatMemoryConfig 在第一次读写时执行本文件）
+CREATE TABLE IF NOT EXISTS SPRING_AI_CHAT_MEMORY (
+    `conversation_id` VARCHAR(36) NOT NULL,
+    `content` TEXT NOT NULL,
+    `type` ENUM('USER', 'ASSISTANT', 'SYSTEM', 'TOOL') NOT NULL,
+    `timestamp` TIMESTAMP NOT NULL,
+    INDEX `SPRING_AI_CHAT_MEMORY_CONVERSATION_ID_TIMESTAMP_IDX` (`conversation_id`, `timestamp`)
+);
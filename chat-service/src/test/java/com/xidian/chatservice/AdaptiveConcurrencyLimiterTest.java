@@ -0,0 +1,67 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.limiter.AdaptiveConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 自适应并发限流器测试：调度器出队时的预留额度计入 hasCapacity，带预留的调用不会被拒绝
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void reservationsCountTowardsCapacity() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 10);
+
+        AdaptiveConcurrencyLimiter.Reservation first = limiter.reserve();
+        assertTrue(limiter.hasCapacity());
+        limiter.reserve();
+        assertFalse(limiter.hasCapacity(), "出队还没 acquire 的请求也要算进在途");
+
+        // 没有用掉的额度归还一次（重复 cancel 不会多还）
+        first.cancel();
+        first.cancel();
+        assertEquals(1, limiter.getReserved());
+        assertTrue(limiter.hasCapacity());
+    }
+
+    @Test
+    public void reservedAcquireWaitsInsteadOfBeingRejected() {
+        // 等待队列上限为 0：不带预留的调用拿不到许可就被拒绝
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 0);
+        AdaptiveConcurrencyLimiter.Permit holder = limiter.acquire().block();
+        assertNotNull(holder);
+        assertThrows(RejectedExecutionException.class, () -> limiter.acquire().block());
+
+        AdaptiveConcurrencyLimiter.Reservation reservation = limiter.reserve();
+        AtomicBoolean granted = new AtomicBoolean();
+        reservation.onGranted(() -> granted.set(true));
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> permit = new AtomicReference<>();
+        limiter.acquire(reservation).subscribe(permit::set);
+
+        // 排队等待，预留额度转为等待者
+        assertNull(permit.get());
+        assertFalse(granted.get());
+        assertEquals(0, limiter.getReserved());
+
+        // 前一个调用结束后拿到许可，并回调 onGranted（监听器在这里 ack）
+        holder.onIgnore();
+        assertNotNull(permit.get());
+        assertTrue(granted.get());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(int limit, int maxWaiters) {
+        return new AdaptiveConcurrencyLimiter(limit, limit, limit, 0.2, 1.5, 0.9, 90_000, maxWaiters);
+    }
+}
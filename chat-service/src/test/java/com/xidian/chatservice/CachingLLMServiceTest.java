@@ -0,0 +1,157 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.memory.ConversationMemory;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatCacheProperties;
+import com.xidian.chatservice.properties.ChatMemoryProperties;
+import com.xidian.chatservice.service.LLMService;
+import com.xidian.chatservice.service.impl.CachingLLMService;
+import com.xidian.chatservice.service.impl.SingleFlightLLMService;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 回答复用测试：缓存命中回放、问题规范化、相同问题并发只调用一次大模型（后到的请求收到完整回答）
+ */
+public class CachingLLMServiceTest {
+
+    @Test
+    public void concurrentIdenticalQuestionsCallUpstreamOnce() {
+        FakeLLMService upstream = new FakeLLMService(Duration.ofMillis(50));
+        ChatCacheProperties properties = properties();
+        SingleFlightLLMService singleFlight = new SingleFlightLLMService(upstream, properties, memory());
+        CachingLLMService service = new CachingLLMService(singleFlight, properties, memory());
+
+        // 每隔 30ms 到达一个相同问题：后到的请求在生成中途加入，需要先补发前缀
+        List<String> answers = Flux.range(0, 5)
+                .delayElements(Duration.ofMillis(30))
+                .flatMap(i -> service.streamChatReactive(request("r-" + i, "什么是 Kafka？"))
+                        .collect(StringBuilder::new, StringBuilder::append)
+                        .map(StringBuilder::toString))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals(1, upstream.calls.get());
+        assertEquals(5, answers.size());
+        answers.forEach(answer -> assertEquals(FakeLLMService.ANSWER, answer));
+        assertEquals(4, singleFlight.getJoinedCount());
+    }
+
+    @Test
+    public void cancelledJoinerDoesNotCancelSharedStream() {
+        FakeLLMService upstream = new FakeLLMService(Duration.ofMillis(50));
+        SingleFlightLLMService singleFlight = new SingleFlightLLMService(upstream, properties(), memory());
+
+        Flux<String> leader = singleFlight.streamChatReactive(request("r-1", "问题"));
+        Flux<String> joiner = singleFlight.streamChatReactive(request("r-2", "问题"));
+
+        String leaderAnswer = Flux.merge(
+                        leader.collect(StringBuilder::new, StringBuilder::append).map(StringBuilder::toString),
+                        // 前端断开：只收一个片段就取消
+                        joiner.take(1).then(Mono.<String>empty()))
+                .blockLast(Duration.ofSeconds(10));
+
+        assertEquals(FakeLLMService.ANSWER, leaderAnswer);
+        assertEquals(1, upstream.calls.get());
+    }
+
+    @Test
+    public void normalizedQuestionHitsCache() {
+        FakeLLMService upstream = new FakeLLMService(Duration.ZERO);
+        CachingLLMService service = new CachingLLMService(upstream, properties(), memory());
+
+        String first = String.join("", service.streamChatReactive(request("r-1", "什么是 Kafka？"))
+                .collectList().block(Duration.ofSeconds(5)));
+        List<String> replayed = service.streamChatReactive(request("r-2", "  什么是   KAFKA?"))
+                .collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(1, upstream.calls.get());
+        assertEquals(first, String.join("", replayed));
+        // 按 replayChunkChars 切成多个片段回放
+        assertTrue(replayed.size() > 1);
+        assertTrue(service.getSavedTokens() > 0);
+    }
+
+    @Test
+    public void failedGenerationIsNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        LLMService failing = new LLMService() {
+            @Override
+            public void streamChat(ChatRequest request, Consumer<String> onChunk) {
+            }
+
+            @Override
+            public Flux<String> streamChatReactive(ChatRequest request) {
+                calls.incrementAndGet();
+                return Flux.concat(Flux.just("半截"), Flux.error(new IllegalStateException("上游失败")));
+            }
+        };
+        CachingLLMService service = new CachingLLMService(failing, properties(), memory());
+
+        for (int i = 0; i < 2; i++) {
+            service.streamChatReactive(request("r-" + i, "问题"))
+                    .onErrorResume(e -> Flux.empty())
+                    .blockLast(Duration.ofSeconds(5));
+        }
+        assertEquals(2, calls.get());
+        assertEquals(0, service.getHitCount());
+    }
+
+    private static ChatCacheProperties properties() {
+        ChatCacheProperties properties = new ChatCacheProperties();
+        properties.setReplayChunkChars(4);
+        properties.setReplayPaceMs(1);
+        return properties;
+    }
+
+    private static ConversationMemory memory() {
+        return new ConversationMemory(ConversationMemoryTest.provider(new InMemoryChatMemoryRepository()), new ChatMemoryProperties());
+    }
+
+    private static ChatRequest request(String requestId, String question) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId("u-1");
+        request.setQuestion(question);
+        return request;
+    }
+
+    /**
+     * 假的大模型：记录调用次数，每个片段之间间隔 delay
+     */
+    private static class FakeLLMService implements LLMService {
+
+        static final String ANSWER = "Kafka 是一个分布式的消息队列。";
+
+        final AtomicInteger calls = new AtomicInteger();
+        final Duration delay;
+
+        FakeLLMService(Duration delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void streamChat(ChatRequest request, Consumer<String> onChunk) {
+            streamChatReactive(request).doOnNext(onChunk).blockLast();
+        }
+
+        @Override
+        public Flux<String> streamChatReactive(ChatRequest request) {
+            return Flux.defer(() -> {
+                calls.incrementAndGet();
+                Flux<String> chunks = Flux.just("Kafka ", "是一个", "分布式的", "消息队列。");
+                return delay.isZero() ? chunks : chunks.delayElements(delay);
+            });
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.manager.SseStreamSubscriber;
+import com.xidian.chatservice.metrics.ChatLatencyMetrics;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatMetricsProperties;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 请求链路延迟指标测试：各段按优先级记录，首字延迟和总耗时从提交时间算起；
+ * 缓存回放、共享生成的片段按 source 标签分开记录，不混进大模型的延迟
+ */
+public class ChatLatencyMetricsTest {
+
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SseEmitterManager manager;
+    private ChatLatencyMetrics metrics;
+
+    @AfterEach
+    public void tearDown() {
+        manager.stop();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void recordsEachStageTaggedByPriority() throws Exception {
+        setUp();
+        ChatRequest request = new ChatRequest();
+        request.setRequestId("req-1");
+        request.setPriority(3);
+        // 200ms 前提交
+        request.setTimestamp(System.currentTimeMillis() - 200);
+
+        ChatLatencyMetrics.Trace trace = metrics.start(request);
+        TimeUnit.MILLISECONDS.sleep(20);
+        trace.dispatched();
+        assertTrue(manager.openStream("req-1"));
+        Flux.just("你", "好", "！").subscribe(new SseStreamSubscriber("req-1", manager, trace));
+
+        Timer queueWait = timer("chat.latency.queue.wait", "3");
+        assertEquals(1, queueWait.count());
+        assertTrue(queueWait.totalTime(TimeUnit.MILLISECONDS) >= 200);
+
+        Timer limiterWait = timer("chat.latency.limiter.wait", "3");
+        assertEquals(1, limiterWait.count());
+        assertTrue(limiterWait.totalTime(TimeUnit.MILLISECONDS) >= 20);
+
+        Timer ttft = timer("chat.latency.ttft", "3", "model");
+        assertEquals(1, ttft.count());
+        assertTrue(ttft.totalTime(TimeUnit.MILLISECONDS) >= 220, "首字延迟应从提交时间算起");
+
+        assertEquals(2, timer("chat.latency.inter.token", "3", "model").count());
+        assertEquals(1, timer("chat.latency.total", "3", "model").count());
+        assertTrue(timer("chat.latency.total", "3", "model").totalTime(TimeUnit.MILLISECONDS)
+                >= ttft.totalTime(TimeUnit.MILLISECONDS));
+
+        // 其他优先级不受影响
+        assertEquals(0, timer("chat.latency.ttft", "1", "model").count());
+        assertEquals("vip", timer("chat.latency.ttft", "3", "model").getId().getTag("lane"));
+    }
+
+    @Test
+    public void recordsCacheReplaysUnderTheirOwnSource() {
+        setUp();
+        ChatRequest request = new ChatRequest();
+        request.setRequestId("req-cached");
+        request.setPriority(1);
+        request.setTimestamp(System.currentTimeMillis());
+
+        // 服务层命中缓存时在 Context 里的 Trace 上标记来源（与 CachingLLMService 相同），不拿并发许可
+        ChatLatencyMetrics.Trace trace = metrics.start(request);
+        assertTrue(manager.openStream("req-cached"));
+        Flux.deferContextual(context -> {
+                    ChatLatencyMetrics.markSource(context, ChatLatencyMetrics.Source.CACHE);
+                    return Flux.just("缓存", "的", "回答");
+                })
+                .contextWrite(Context.of(ChatLatencyMetrics.TRACE_KEY, trace))
+                .subscribe(new SseStreamSubscriber("req-cached", manager, trace));
+
+        assertEquals(1, timer("chat.latency.ttft", "1", "cache").count());
+        assertEquals(2, timer("chat.latency.inter.token", "1", "cache").count());
+        assertEquals(1, timer("chat.latency.total", "1", "cache").count());
+        assertEquals(0, timer("chat.latency.ttft", "1", "model").count());
+        assertEquals(0, timer("chat.latency.inter.token", "1", "model").count());
+        assertEquals(0, registry.get("chat.latency.limiter.wait").tag("priority", "1").timer().count());
+    }
+
+    @Test
+    public void recordsEnqueueOnlyWhenKafkaConfirms() {
+        setUp();
+        CompletableFuture<Object> confirmed = new CompletableFuture<>();
+        CompletableFuture<Object> failed = new CompletableFuture<>();
+        metrics.timeEnqueue(1, confirmed);
+        metrics.timeEnqueue(1, failed);
+
+        confirmed.complete("ok");
+        failed.completeExceptionally(new IllegalStateException("broker 不可用"));
+
+        assertEquals(1, timer("chat.latency.enqueue", "1").count());
+    }
+
+    @Test
+    public void recordsRendezvousWhenClientConnectsLate() throws Exception {
+        setUp();
+        Timer rendezvous = registry.get("chat.latency.rendezvous").timer();
+
+        // 生成先开始，前端 50ms 后才连接
+        assertTrue(manager.openStream("req-late"));
+        TimeUnit.MILLISECONDS.sleep(50);
+        manager.createEmitter("req-late");
+        assertEquals(1, rendezvous.count());
+        assertTrue(rendezvous.max(TimeUnit.MILLISECONDS) >= 50);
+
+        // 前端先连接，等待时间为 0
+        manager.createEmitter("req-early");
+        assertTrue(manager.openStream("req-early"));
+        assertEquals(2, rendezvous.count());
+
+        // 重连不再记录
+        manager.createEmitter("req-late", 1);
+        assertEquals(2, rendezvous.count());
+    }
+
+    private void setUp() {
+        scheduler.initialize();
+        manager = new SseEmitterManager(scheduler, Runnable::run, Runnable::run, new ChatStreamProperties());
+        metrics = new ChatLatencyMetrics(registry, new ChatMetricsProperties(), manager);
+    }
+
+    private Timer timer(String name, String priority) {
+        return registry.get(name).tag("priority", priority).timer();
+    }
+
+    private Timer timer(String name, String priority, String source) {
+        return registry.get(name).tag("priority", priority).tag("source", source).timer();
+    }
+}
@@ -0,0 +1,95 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.serde.ChatRequestDeserializer;
+import com.xidian.chatservice.serde.ChatRequestSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * ChatRequestCodec 基准测试
+ *
+ * 对比 chat-request Topic 上两种格式的编码 / 解码耗时（ns/op）、内存分配（bytes/op）和消息大小（bytes/message）：
+ * - 原路径：spring-kafka 的 JsonSerializer / JsonDeserializer（Jackson 反射）
+ * - 新路径：ChatRequestSerializer / ChatRequestDeserializer（二进制，带版本号）
+ *
+ * 结果依赖机器负载，默认不运行：mvn test -Pbenchmark。编解码的正确性测试在 ChatRequestCodecTest
+ */
+@Slf4j
+@Tag("benchmark")
+public class ChatRequestCodecBenchmarkTest {
+
+    private static final String TOPIC = "chat-request";
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+
+    @Test
+    public void benchmarkAgainstJackson() {
+        ChatRequest request = ChatRequestCodecTest.sample();
+
+        JsonSerializer<ChatRequest> jsonSerializer = new JsonSerializer<ChatRequest>().noTypeInfo();
+        JsonDeserializer<ChatRequest> jsonDeserializer = new JsonDeserializer<>(ChatRequest.class, false);
+        ChatRequestSerializer binarySerializer = new ChatRequestSerializer();
+        ChatRequestDeserializer binaryDeserializer = new ChatRequestDeserializer();
+
+        byte[] json = jsonSerializer.serialize(TOPIC, request);
+        byte[] binary = binarySerializer.serialize(TOPIC, request);
+
+        // 预热，让 JIT 编译两条路径
+        for (int i = 0; i < WARMUP; i++) {
+            jsonDeserializer.deserialize(TOPIC, jsonSerializer.serialize(TOPIC, request));
+            binaryDeserializer.deserialize(TOPIC, binarySerializer.serialize(TOPIC, request));
+        }
+
+        long sink = 0;
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += jsonSerializer.serialize(TOPIC, request).length;
+        }
+        long jsonEncodeNs = (System.nanoTime() - start) / ITERATIONS;
+        long jsonEncodeAlloc = (allocatedBytes() - bytesBefore) / ITERATIONS;
+
+        bytesBefore = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += jsonDeserializer.deserialize(TOPIC, json).getPriority();
+        }
+        long jsonDecodeNs = (System.nanoTime() - start) / ITERATIONS;
+        long jsonDecodeAlloc = (allocatedBytes() - bytesBefore) / ITERATIONS;
+
+        bytesBefore = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += binarySerializer.serialize(TOPIC, request).length;
+        }
+        long binaryEncodeNs = (System.nanoTime() - start) / ITERATIONS;
+        long binaryEncodeAlloc = (allocatedBytes() - bytesBefore) / ITERATIONS;
+
+        bytesBefore = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += binaryDeserializer.deserialize(TOPIC, binary).getPriority();
+        }
+        long binaryDecodeNs = (System.nanoTime() - start) / ITERATIONS;
+        long binaryDecodeAlloc = (allocatedBytes() - bytesBefore) / ITERATIONS;
+
+        log.info("📊 消息大小: JSON {} bytes, 二进制 {} bytes", json.length, binary.length);
+        log.info("📊 JSON   编码 {} ns/op ({} bytes/op), 解码 {} ns/op ({} bytes/op)",
+                jsonEncodeNs, jsonEncodeAlloc, jsonDecodeNs, jsonDecodeAlloc);
+        log.info("📊 二进制 编码 {} ns/op ({} bytes/op), 解码 {} ns/op ({} bytes/op)",
+                binaryEncodeNs, binaryEncodeAlloc, binaryDecodeNs, binaryDecodeAlloc);
+        log.info("(checksum {})", sink);
+    }
+
+    private long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,75 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.serde.ChatRequestCodec;
+import com.xidian.chatservice.serde.ChatRequestDeserializer;
+import com.xidian.chatservice.serde.ChatRequestSerializer;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * ChatRequestCodec 测试：二进制往返保留所有字段，切换格式前写入的 JSON 仍能读取，
+ * 未知版本和截断的消息按 SerializationException 拒绝
+ */
+public class ChatRequestCodecTest {
+
+    private static final String TOPIC = "chat-request";
+
+    @Test
+    public void roundTripPreservesAllFields() {
+        ChatRequestSerializer serializer = new ChatRequestSerializer();
+        ChatRequestDeserializer deserializer = new ChatRequestDeserializer();
+
+        ChatRequest full = sample();
+        ChatRequest sparse = new ChatRequest();
+        sparse.setRequestId("not-a-uuid");
+        sparse.setQuestion("tab\tquote\"emoji😀 不成对\uD800");
+        sparse.setPriority(-3);
+
+        for (ChatRequest request : new ChatRequest[]{full, sparse, new ChatRequest()}) {
+            ChatRequest decoded = deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, request));
+            // 不成对的代理字符和 String.getBytes 一样变成 '?'
+            if (request.getQuestion() != null) {
+                request.setQuestion(request.getQuestion().replace('\uD800', '?'));
+            }
+            assertEquals(request, decoded);
+        }
+    }
+
+    @Test
+    public void readsJsonWrittenBeforeSwitch() {
+        ChatRequest request = sample();
+        byte[] json = new JsonSerializer<ChatRequest>().noTypeInfo().serialize(TOPIC, request);
+        assertEquals(request, new ChatRequestDeserializer().deserialize(TOPIC, json));
+    }
+
+    @Test
+    public void rejectsUnknownVersionAndTruncatedMessages() {
+        byte[] encoded = ChatRequestCodec.encode(sample());
+
+        byte[] futureVersion = encoded.clone();
+        futureVersion[0] = 2;
+        assertThrows(SerializationException.class, () -> ChatRequestCodec.decode(futureVersion));
+
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+        assertThrows(SerializationException.class, () -> ChatRequestCodec.decode(truncated));
+    }
+
+    static ChatRequest sample() {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(UUID.randomUUID().toString());
+        request.setUserId("user-10086");
+        request.setQuestion("Kafka 的消费者组是怎么分配分区的？");
+        request.setSessionId("session-2f1c");
+        request.setTimestamp(System.currentTimeMillis());
+        request.setPriority(2);
+        return request;
+    }
+}
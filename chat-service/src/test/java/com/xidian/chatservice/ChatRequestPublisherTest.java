@@ -0,0 +1,71 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.dispatch.ChatRequestPublisher;
+import com.xidian.chatservice.dispatch.PriorityLane;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatKafkaProperties;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 请求入队测试：broker 确认后才完成、在途发送满时拒绝、失败时释放名额
+ */
+public class ChatRequestPublisherTest {
+
+    @Test
+    public void completesOnAckAndRejectsWhenOutstandingIsFull() {
+        // autoComplete = false：由测试决定 broker 什么时候确认
+        MockProducer<String, ChatRequest> producer = new MockProducer<>(
+                false, new StringSerializer(), new JsonSerializer<ChatRequest>().noTypeInfo());
+        ChatKafkaProperties properties = new ChatKafkaProperties();
+        properties.setMaxOutstandingSends(2);
+        ChatRequestPublisher publisher = new ChatRequestPublisher(
+                new KafkaTemplate<>(new MockProducerFactory<>(() -> producer)), properties);
+
+        CompletableFuture<SendResult<String, ChatRequest>> first = publisher.publish(PriorityLane.NORMAL, request());
+        CompletableFuture<SendResult<String, ChatRequest>> second = publisher.publish(PriorityLane.VIP, request());
+        assertNotNull(first);
+        assertNotNull(second);
+        assertFalse(first.isDone());
+        assertEquals(2, publisher.getOutstandingCount());
+
+        // 在途已满
+        assertNull(publisher.publish(PriorityLane.NORMAL, request()));
+
+        // 确认一条后腾出名额
+        assertTrue(producer.completeNext());
+        assertTrue(first.isDone());
+        assertFalse(first.isCompletedExceptionally());
+        assertEquals(1, publisher.getOutstandingCount());
+        assertNotNull(publisher.publish(PriorityLane.NORMAL, request()));
+
+        // 写入失败同样释放名额，future 以异常结束
+        assertTrue(producer.errorNext(new RuntimeException("broker 不可用")));
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(1, publisher.getOutstandingCount());
+    }
+
+    private static ChatRequest request() {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(UUID.randomUUID().toString());
+        request.setUserId("user-10086");
+        request.setQuestion("Kafka 的消费者组是怎么分配分区的？");
+        request.setTimestamp(System.currentTimeMillis());
+        request.setPriority(1);
+        return request;
+    }
+}
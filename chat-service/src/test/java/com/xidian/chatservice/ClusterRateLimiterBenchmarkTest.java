@@ -0,0 +1,126 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.limiter.ClusterRateLimiter;
+import com.xidian.chatservice.limiter.InMemoryTokenBucketStore;
+import com.xidian.chatservice.limiter.RedisStyleTokenBucketStore;
+import com.xidian.chatservice.limiter.TokenBucketStore;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 集群限流器基准测试
+ *
+ * 对比多线程争用下获取许可的延迟：
+ * - 每个请求都访问一次共享存储（leaseBatchSize = 1）
+ * - 批量预取租约（leaseBatchSize = 16）
+ *
+ * Redis 风格存储模拟 200 微秒的网络往返，更接近真实部署；
+ * 访问共享存储在锁外进行，争用的线程不应排队等别人的网络往返
+ *
+ * 结果依赖机器负载，耗时只输出日志，不做断言；默认不运行（mvn test -Pbenchmark）。
+ * 租约过期、集群共享额度的正确性测试在 ClusterRateLimiterTest
+ */
+@Slf4j
+@Tag("benchmark")
+public class ClusterRateLimiterBenchmarkTest {
+
+    private static final int THREADS = 16;
+    private static final int ACQUIRES_PER_THREAD = 2_000;
+
+    // 速率设得足够高，只测获取许可本身的开销，而不是限流等待
+    private static final double PERMITS_PER_SECOND = 1_000_000;
+
+    // 模拟的 Redis 网络往返（微秒）
+    private static final long ROUND_TRIP_MICROS = 200;
+
+    @Test
+    public void benchmarkInMemoryStore() throws InterruptedException {
+        report("memory, batch=1 ", run(new InMemoryTokenBucketStore(), 1));
+        report("memory, batch=16", run(new InMemoryTokenBucketStore(), 16));
+    }
+
+    @Test
+    public void benchmarkRedisStyleStore() throws InterruptedException {
+        Result single = run(new RedisStyleTokenBucketStore(ROUND_TRIP_MICROS), 1);
+        Result batched = run(new RedisStyleTokenBucketStore(ROUND_TRIP_MICROS), 16);
+        report("redis,  batch=1 ", single);
+        report("redis,  batch=16", batched);
+
+        // 争用的线程不在锁里等别人的远程调用：p50 应远小于一次往返；批量预取的吞吐量应明显高于逐个获取
+        log.info("📊 p50 / 往返 = {}, 批量 / 逐个吞吐量 = {}",
+                String.format("%.2f", percentile(batched.latencies, 0.50) / (ROUND_TRIP_MICROS * 1_000.0)),
+                String.format("%.2f", (double) batched.permitsPerSecond() / Math.max(1, single.permitsPerSecond())));
+    }
+
+    /**
+     * @return 每次获取许可的耗时（纳秒，已排序）、获取成功的次数和总耗时
+     */
+    private Result run(TokenBucketStore store, long leaseBatchSize) throws InterruptedException {
+        ClusterRateLimiter limiter = new ClusterRateLimiter(
+                store, "chat:llm:bench", PERMITS_PER_SECOND, leaseBatchSize, 1_000);
+
+        long[] latencies = new long[THREADS * ACQUIRES_PER_THREAD];
+        AtomicLong granted = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * ACQUIRES_PER_THREAD;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < ACQUIRES_PER_THREAD; i++) {
+                        long begin = System.nanoTime();
+                        if (limiter.tryAcquire()) {
+                            granted.incrementAndGet();
+                        }
+                        latencies[offset + i] = System.nanoTime() - begin;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        assertTrue(granted.get() > 0);
+        Arrays.sort(latencies);
+        return new Result(latencies, granted.get(), elapsed);
+    }
+
+    private void report(String name, Result result) {
+        long[] sorted = result.latencies;
+        log.info("📊 [{}] p50={}µs p99={}µs max={}µs, granted={}, {}/s",
+                name,
+                percentile(sorted, 0.50) / 1_000,
+                percentile(sorted, 0.99) / 1_000,
+                sorted[sorted.length - 1] / 1_000,
+                result.granted,
+                result.permitsPerSecond());
+    }
+
+    private long percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)));
+        return sorted[index];
+    }
+
+    private record Result(long[] latencies, long granted, long elapsedNanos) {
+
+        long permitsPerSecond() {
+            return granted * 1_000_000_000L / Math.max(1, elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.limiter.ClusterRateLimiter;
+import com.xidian.chatservice.limiter.InMemoryTokenBucketStore;
+import com.xidian.chatservice.limiter.RedisStyleTokenBucketStore;
+import com.xidian.chatservice.limiter.TokenBucketStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 集群限流器测试：过期租约中未用的令牌归还给共享存储，多个实例共享同一个额度
+ */
+public class ClusterRateLimiterTest {
+
+    @Test
+    public void expiredLeaseIsReturnedToStore() throws InterruptedException {
+        // 容量 10、每秒 10 个；一次租 10 个，1ms 后过期
+        TokenBucketStore store = new InMemoryTokenBucketStore();
+        ClusterRateLimiter pod = new ClusterRateLimiter(store, "chat:llm:lease", 10, 10, 1);
+
+        // 桶被租空，本地剩 9 个
+        assertTrue(pod.tryAcquire());
+        Thread.sleep(5);
+
+        // 租约过期：5ms 只补充了 0.05 个，能拿到许可说明过期的 9 个已归还，没有作废
+        assertTrue(pod.tryAcquire(), "过期租约中未用的令牌应归还给共享存储");
+    }
+
+    @Test
+    public void clusterRateIsSharedAcrossInstances() {
+        // 两个"实例"共用同一个存储，总共只能拿到桶容量（10）个许可
+        TokenBucketStore store = new RedisStyleTokenBucketStore();
+        ClusterRateLimiter podA = new ClusterRateLimiter(store, "chat:llm:test", 10, 4, 60_000);
+        ClusterRateLimiter podB = new ClusterRateLimiter(store, "chat:llm:test", 10, 4, 60_000);
+
+        int granted = 0;
+        for (int i = 0; i < 20; i++) {
+            if (podA.tryAcquire()) {
+                granted++;
+            }
+            if (podB.tryAcquire()) {
+                granted++;
+            }
+        }
+
+        // 允许测试期间按 10/s 补充的少量令牌
+        assertTrue(granted >= 10 && granted <= 12, "granted = " + granted);
+    }
+}
@@ -0,0 +1,160 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.memory.ConversationMemory;
+import com.xidian.chatservice.properties.ChatMemoryProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对话记忆测试：活跃会话只读内存、批量写回、按 token 预算截断历史、数据库不可用时照常工作
+ */
+public class ConversationMemoryTest {
+
+    @Test
+    public void activeSessionIsServedFromMemoryAndWrittenBehind() {
+        CountingRepository repository = new CountingRepository();
+        ChatMemoryProperties properties = new ChatMemoryProperties();
+        properties.setFlushIntervalMs(60_000);
+        ConversationMemory memory = new ConversationMemory(provider(repository), properties);
+        memory.start();
+
+        for (int turn = 0; turn < 5; turn++) {
+            memory.promptHistory("s-1");
+            memory.append("s-1", "问题" + turn, "回答" + turn);
+        }
+
+        // 只在第一次访问时读库，写回还没发生
+        assertEquals(1, repository.reads.get());
+        assertEquals(0, repository.writes.get());
+        assertEquals(10, memory.promptHistory("s-1").size());
+        assertEquals(1, memory.getDirtySessionCount());
+
+        // 停机时写回
+        memory.stop();
+        assertEquals(0, memory.getDirtySessionCount());
+        assertEquals(1, repository.writes.get());
+        assertEquals(10, repository.delegate.findByConversationId("s-1").size());
+    }
+
+    @Test
+    public void historyIsTruncatedToTokenBudget() {
+        ChatMemoryProperties properties = new ChatMemoryProperties();
+        properties.setHistoryTokenBudget(30);
+        ConversationMemory memory = new ConversationMemory(provider(new InMemoryChatMemoryRepository()), properties);
+
+        for (int turn = 0; turn < 10; turn++) {
+            memory.append("s-1", "第" + turn + "个问题", "第" + turn + "个问题的回答");
+        }
+
+        List<Message> history = memory.promptHistory("s-1");
+        assertTrue(history.size() < 20);
+        assertEquals(MessageType.USER, history.get(0).getMessageType());
+        assertEquals("第9个问题的回答", history.get(history.size() - 1).getText());
+    }
+
+    @Test
+    public void contextHashFollowsHistory() {
+        ConversationMemory memory = new ConversationMemory(provider(new InMemoryChatMemoryRepository()), new ChatMemoryProperties());
+
+        assertNull(memory.contextHash("s-1"));
+        assertNull(memory.contextHash(null));
+
+        memory.append("s-1", "什么是 Kafka", "消息队列");
+        String first = memory.contextHash("s-1");
+        assertNotNull(first);
+
+        memory.append("s-1", "它有什么优点", "吞吐量高");
+        assertNotEquals(first, memory.contextHash("s-1"));
+    }
+
+    @Test
+    public void unavailableDatabaseDoesNotBreakRequests() {
+        CountingRepository repository = new CountingRepository();
+        repository.down = true;
+        ConversationMemory memory = new ConversationMemory(provider(repository), new ChatMemoryProperties());
+
+        // 读不到历史：按无历史处理，也不缓存空窗口（否则写回时会覆盖库里的记录）
+        assertEquals(0, memory.promptHistory("s-1").size());
+        memory.append("s-1", "问题", "回答");
+        assertEquals(0, memory.getDirtySessionCount());
+
+        // 数据库恢复后重新读取
+        repository.down = false;
+        repository.delegate.saveAll("s-1", List.of(new UserMessage("旧问题")));
+        assertEquals(1, memory.promptHistory("s-1").size());
+    }
+
+    @Test
+    public void worksWithoutColdTier() {
+        ConversationMemory memory = new ConversationMemory(
+                new StaticListableBeanFactory().getBeanProvider(ChatMemoryRepository.class), new ChatMemoryProperties());
+        memory.start();
+        memory.append("s-1", "问题", "回答");
+        assertEquals(2, memory.promptHistory("s-1").size());
+
+        // 没有冷层时脏表直接清空，不会越积越多
+        memory.stop();
+        assertEquals(0, memory.getDirtySessionCount());
+    }
+
+    /**
+     * 把仓库包装成 ConversationMemory 需要的 ObjectProvider
+     */
+    static ObjectProvider<ChatMemoryRepository> provider(ChatMemoryRepository repository) {
+        return new StaticListableBeanFactory(Map.of("chatMemoryRepository", repository))
+                .getBeanProvider(ChatMemoryRepository.class);
+    }
+
+    /**
+     * 记录读写次数的内存仓库（代替 JDBC）
+     */
+    private static class CountingRepository implements ChatMemoryRepository {
+
+        final ChatMemoryRepository delegate = new InMemoryChatMemoryRepository();
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        // 模拟数据库不可用
+        volatile boolean down;
+
+        @Override
+        public List<String> findConversationIds() {
+            return delegate.findConversationIds();
+        }
+
+        @Override
+        public List<Message> findByConversationId(String conversationId) {
+            reads.incrementAndGet();
+            if (down) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            return delegate.findByConversationId(conversationId);
+        }
+
+        @Override
+        public void saveAll(String conversationId, List<Message> messages) {
+            writes.incrementAndGet();
+            delegate.saveAll(conversationId, messages);
+        }
+
+        @Override
+        public void deleteByConversationId(String conversationId) {
+            delegate.deleteByConversationId(conversationId);
+        }
+    }
+}
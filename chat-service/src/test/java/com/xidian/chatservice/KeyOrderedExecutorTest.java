@@ -0,0 +1,127 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.listener.KeyOrderedExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * KeyOrderedExecutor 测试：同一 key 串行保序，不同 key（即使来自同一分区）并行，达到在途上限时通知暂停而不阻塞
+ */
+public class KeyOrderedExecutorTest {
+
+    @Test
+    public void preservesOrderWithinKey() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(threads, 100);
+
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            int offset = i;
+            executor.submit("session:s-1", () -> {
+                // 越早的消息睡得越久，如果不保序，顺序一定会乱
+                sleep(50 - offset);
+                seen.add(offset);
+                finished.countDown();
+            });
+        }
+
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, seen.get(i));
+        }
+        threads.shutdown();
+    }
+
+    @Test
+    public void runsDifferentKeysInParallel() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(threads, 100);
+
+        // 每个会话的消息都要等所有会话同时开始才能结束
+        int sessions = 8;
+        CountDownLatch started = new CountDownLatch(sessions);
+        CountDownLatch finished = new CountDownLatch(sessions);
+        for (int i = 0; i < sessions; i++) {
+            executor.submit("session:s-" + i, () -> {
+                started.countDown();
+                try {
+                    started.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.countDown();
+            });
+        }
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(0, started.getCount());
+        threads.shutdown();
+    }
+
+    @Test
+    public void pausesInsteadOfBlockingWhenSaturated() throws Exception {
+        ExecutorService threads = Executors.newCachedThreadPool();
+        KeyOrderedExecutor executor = new KeyOrderedExecutor(threads, 4);
+        AtomicInteger saturated = new AtomicInteger();
+        AtomicInteger drained = new AtomicInteger();
+        executor.onPressure(new KeyOrderedExecutor.Pressure() {
+            @Override
+            public void saturated() {
+                saturated.incrementAndGet();
+            }
+
+            @Override
+            public void drained() {
+                drained.incrementAndGet();
+            }
+        });
+
+        // 超过上限的提交也立即返回（消费线程不阻塞），只通知一次暂停
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            executor.submit("session:s-" + i, () -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.countDown();
+            });
+        }
+        assertEquals(6, executor.getInFlightCount());
+        assertEquals(1, saturated.get());
+        assertEquals(0, drained.get());
+
+        // 全部完成后恢复一次
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getInFlightCount());
+        assertEquals(1, drained.get());
+        threads.shutdown();
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
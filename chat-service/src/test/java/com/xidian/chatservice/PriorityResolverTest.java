@@ -0,0 +1,56 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.dispatch.PriorityLane;
+import com.xidian.chatservice.dispatch.PriorityResolver;
+import com.xidian.chatservice.properties.ChatDispatchProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 优先级判定测试：客户端不能自己进 VIP 通道，VIP 由服务端名单或网关决定
+ */
+public class PriorityResolverTest {
+
+    @Test
+    public void clientCannotRequestVipLane() {
+        PriorityResolver resolver = resolver();
+
+        assertEquals(1, resolver.resolve("alice", null, null, null));
+        assertEquals(0, resolver.resolve("alice", 0, null, null));
+        assertEquals(1, resolver.resolve("alice", 5, null, null), "客户端传 >=2 按普通处理");
+        assertEquals(PriorityLane.NORMAL, PriorityLane.of(resolver.resolve("alice", 2, null, null)));
+    }
+
+    @Test
+    public void vipComesFromServerSideTierOrTrustedGateway() {
+        PriorityResolver resolver = resolver();
+
+        assertEquals(PriorityLane.VIP_PRIORITY, resolver.resolve("vip-user", null, null, null));
+
+        // 令牌正确时采用网关指定的优先级（包括降级）
+        assertEquals(4, resolver.resolve("alice", 0, "secret", 4));
+        assertEquals(0, resolver.resolve("vip-user", 1, "secret", 0));
+
+        // 令牌错误或缺失时忽略网关请求头
+        assertEquals(1, resolver.resolve("alice", 1, "guess", 5));
+        assertEquals(1, resolver.resolve("alice", 1, null, 5));
+    }
+
+    @Test
+    public void gatewayHeaderIsIgnoredWithoutConfiguredToken() {
+        ChatDispatchProperties properties = new ChatDispatchProperties();
+        PriorityResolver resolver = new PriorityResolver(properties);
+
+        assertEquals(1, resolver.resolve("alice", 1, "", 5));
+    }
+
+    private static PriorityResolver resolver() {
+        ChatDispatchProperties properties = new ChatDispatchProperties();
+        properties.setVipUsers(Set.of("vip-user"));
+        properties.setGatewayToken("secret");
+        return new PriorityResolver(properties);
+    }
+}
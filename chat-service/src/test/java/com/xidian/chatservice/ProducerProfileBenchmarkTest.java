@@ -0,0 +1,121 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.config.KafkaConfig;
+import com.xidian.chatservice.model.ChatRequest;
+import com.xidian.chatservice.properties.ChatKafkaProperties;
+import com.xidian.chatservice.serde.ChatRequestSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 生产者预设基准测试（嵌入式 Kafka）
+ *
+ * 每个预设异步发送同样数量的 ChatRequest，统计吞吐量（records/s）和发送延迟
+ * （send 调用到收到 broker 确认，p50 / p99）
+ *
+ * 每个预设约 2.2 万条消息，默认不运行：mvn test -Pbenchmark
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 3, topics = ProducerProfileBenchmarkTest.TOPIC)
+@Tag("benchmark")
+public class ProducerProfileBenchmarkTest {
+
+    static final String TOPIC = "chat-request-bench";
+
+    private static final int WARMUP = 2_000;
+    private static final int RECORDS = 20_000;
+
+    @Test
+    public void benchmarkProducerProfiles(EmbeddedKafkaBroker broker) throws Exception {
+        for (ChatKafkaProperties.ProducerProfile profile : ChatKafkaProperties.ProducerProfile.values()) {
+            ChatKafkaProperties properties = new ChatKafkaProperties();
+            properties.setProducerProfile(profile);
+
+            Map<String, Object> configs = new HashMap<>();
+            configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+            configs.put(ProducerConfig.ACKS_CONFIG, "all");
+            configs.put(ProducerConfig.RETRIES_CONFIG, 3);
+            configs.putAll(KafkaConfig.producerProfileConfigs(properties));
+
+            DefaultKafkaProducerFactory<String, ChatRequest> factory = new DefaultKafkaProducerFactory<>(
+                    configs, new StringSerializer(), new ChatRequestSerializer());
+            try (Producer<String, ChatRequest> producer = factory.createProducer()) {
+                send(producer, WARMUP);
+                Result result = send(producer, RECORDS);
+
+                log.info("📊 {}: {} records/s, p50 {} ms, p99 {} ms",
+                        profile, result.recordsPerSecond(), result.percentileMs(0.50), result.percentileMs(0.99));
+                assertEquals(0, result.failures);
+            } finally {
+                factory.destroy();
+            }
+        }
+    }
+
+    private Result send(Producer<String, ChatRequest> producer, int count) throws InterruptedException {
+        long[] latencies = new long[count];
+        CountDownLatch acked = new CountDownLatch(count);
+        AtomicInteger failures = new AtomicInteger();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            ChatRequest request = request();
+            int index = i;
+            long sentAt = System.nanoTime();
+            producer.send(new ProducerRecord<>(TOPIC, request.getRequestId(), request), (metadata, e) -> {
+                latencies[index] = System.nanoTime() - sentAt;
+                if (e != null) {
+                    failures.incrementAndGet();
+                }
+                acked.countDown();
+            });
+        }
+        assertTrue(acked.await(60, TimeUnit.SECONDS), "发送超时");
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(count, elapsed, latencies, failures.get());
+    }
+
+    private static ChatRequest request() {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(UUID.randomUUID().toString());
+        request.setUserId("user-10086");
+        request.setQuestion("Kafka 的消费者组是怎么分配分区的？请举例说明 Range 和 RoundRobin 的区别");
+        request.setSessionId("session-2f1c");
+        request.setTimestamp(System.currentTimeMillis());
+        request.setPriority(1);
+        return request;
+    }
+
+    private record Result(int count, long elapsedNanos, long[] sortedLatencies, int failures) {
+
+        long recordsPerSecond() {
+            return count * 1_000_000_000L / elapsedNanos;
+        }
+
+        double percentileMs(double percentile) {
+            int index = Math.min(sortedLatencies.length - 1, (int) Math.ceil(percentile * sortedLatencies.length) - 1);
+            return sortedLatencies[index] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.cluster.ResponseFanoutRelay;
+import com.xidian.chatservice.config.ClusterConfig;
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.manager.SseStreamSubscriber;
+import com.xidian.chatservice.model.ChatResponse;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多实例响应广播测试（嵌入式 Kafka）
+ *
+ * 两个"实例"各自有 SseEmitterManager + ResponseFanoutRelay，连同一个 Kafka：
+ * 实例 A 消费请求、调用大模型，前端连在实例 B 上；只有持有前端连接的实例建流
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 3, topics = ResponseFanoutRelayEmbeddedKafkaTest.TOPIC)
+public class ResponseFanoutRelayEmbeddedKafkaTest {
+
+    static final String TOPIC = "chat-response";
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        nodes.forEach(Node::stop);
+    }
+
+    @Test
+    public void chunksReachClientConnectedToAnotherInstance(EmbeddedKafkaBroker broker) throws Exception {
+        Node nodeA = startNode("node-a", broker);
+        Node nodeB = startNode("node-b", broker);
+
+        // 前端先连到 B
+        String requestId = "req-connected-first";
+        CapturingEmitter client = nodeB.connect(requestId);
+
+        // A 开始生成
+        assertTrue(nodeA.manager.openStream(requestId));
+        Flux.just("你好", "，", "世界").subscribe(new SseStreamSubscriber(requestId, nodeA.relay));
+
+        assertTrue(client.completed.await(30, TimeUnit.SECONDS), "前端应收到结束事件");
+        String body = client.body();
+        log.info("实例 B 收到:\n{}", body);
+
+        assertTrue(body.contains("\"isEnd\":true"));
+        assertEquals("你好，世界", contentOf(body));
+    }
+
+    @Test
+    public void lateClientOnAnotherInstanceReceivesReplay(EmbeddedKafkaBroker broker) throws Exception {
+        Node nodeA = startNode("node-a", broker);
+        Node nodeB = startNode("node-b", broker);
+
+        // A 先生成完，前端之后才连到 B
+        String requestId = "req-connected-late";
+        assertTrue(nodeA.manager.openStream(requestId));
+        Flux.just("提前", "生成").subscribe(new SseStreamSubscriber(requestId, nodeA.relay));
+
+        // B 上没有前端连接，不缓存广播过来的片段
+        Thread.sleep(1000);
+        assertFalse(nodeB.manager.exists(requestId), "没有前端连接的实例不应缓存");
+
+        CapturingEmitter client = nodeB.connect(requestId);
+        assertTrue(client.completed.await(10, TimeUnit.SECONDS), "A 补发后应立即结束");
+        assertEquals("提前生成", contentOf(client.body()));
+    }
+
+    @Test
+    public void clientConnectingMidStreamReceivesWholeAnswer(EmbeddedKafkaBroker broker) throws Exception {
+        Node nodeA = startNode("node-a", broker);
+        Node nodeB = startNode("node-b", broker);
+        Node nodeC = startNode("node-c", broker);
+        String requestId = "req-mid-stream";
+
+        // A 先发第一个片段，前端之后才连到 B：前缀由 A 补发，后续片段接在补发后面
+        assertTrue(nodeA.manager.openStream(requestId));
+        nodeA.relay.sendMessage(requestId, ChatResponse.chunk(requestId, "前半"));
+        Thread.sleep(500);
+
+        CapturingEmitter client = nodeB.connect(requestId);
+        Thread.sleep(500);
+        nodeA.relay.sendMessage(requestId, ChatResponse.chunk(requestId, "后半"));
+        nodeA.relay.complete(requestId, "");
+
+        assertTrue(client.completed.await(30, TimeUnit.SECONDS), "前端应收到结束事件");
+        assertEquals("前半后半", contentOf(client.body()));
+
+        // C 上没有前端连接，整个过程都不建流
+        assertFalse(nodeC.manager.exists(requestId), "没有前端连接的实例不应缓存");
+    }
+
+    /**
+     * 从帧中拼出 content（测试内容不含需要转义的字符）
+     */
+    private static String contentOf(String body) {
+        StringBuilder content = new StringBuilder();
+        int from = 0;
+        while ((from = body.indexOf("\"content\":\"", from)) >= 0) {
+            from += "\"content\":\"".length();
+            int end = body.indexOf('"', from);
+            content.append(body, from, end);
+            from = end;
+        }
+        return content.toString();
+    }
+
+    private Node startNode(String instanceId, EmbeddedKafkaBroker broker) throws Exception {
+        Node node = new Node(instanceId, broker.getBrokersAsString());
+        nodes.add(node);
+        node.relay.start();
+        ContainerTestUtils.waitForAssignment(node.relay.getContainer(), broker.getPartitionsPerTopic());
+        return node;
+    }
+
+    /**
+     * 一个 chat-service 实例中与响应广播相关的部分
+     */
+    private static class Node {
+
+        final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        final SseEmitterManager manager;
+        final ResponseFanoutRelay relay;
+        final KafkaTemplate<String, ChatResponse> kafkaTemplate;
+
+        Node(String instanceId, String bootstrapServers) {
+            scheduler.setThreadNamePrefix(instanceId + "-flush-");
+            scheduler.initialize();
+
+            ChatStreamProperties properties = new ChatStreamProperties();
+            properties.setCoalesceWindowMs(5);
+
+            manager = new SseEmitterManager(scheduler, Runnable::run, Runnable::run, properties) {
+                @Override
+                protected SseEmitter newEmitter() {
+                    return new CapturingEmitter();
+                }
+            };
+            kafkaTemplate = new KafkaTemplate<>(ClusterConfig.responseProducerFactory(bootstrapServers));
+            relay = new ResponseFanoutRelay(instanceId, TOPIC, kafkaTemplate,
+                    ClusterConfig.responseConsumerFactory(bootstrapServers), manager, properties);
+        }
+
+        CapturingEmitter connect(String requestId) {
+            return (CapturingEmitter) manager.createEmitter(requestId);
+        }
+
+        void stop() {
+            relay.stop();
+            kafkaTemplate.destroy();
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * 记录写出内容的 SseEmitter（代替真实的 HTTP 连接）
+     */
+    private static class CapturingEmitter extends SseEmitter {
+
+        final StringBuilder frames = new StringBuilder();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public synchronized void send(Set<ResponseBodyEmitter.DataWithMediaType> items) {
+            for (ResponseBodyEmitter.DataWithMediaType item : items) {
+                Object data = item.getData();
+                frames.append(data instanceof byte[] bytes
+                        ? new String(bytes, StandardCharsets.UTF_8)
+                        : String.valueOf(data));
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public synchronized void completeWithError(Throwable ex) {
+            completed.countDown();
+        }
+
+        synchronized String body() {
+            return frames.toString();
+        }
+    }
+}
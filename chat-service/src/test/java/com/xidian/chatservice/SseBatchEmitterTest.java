@@ -0,0 +1,113 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.manager.SseStreamSubscriber;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 批量 SSE 连接测试：一个连接收到批次内所有请求的输出，全部结束后才关闭
+ */
+public class SseBatchEmitterTest {
+
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void multiplexesAllRequestsOnOneConnection() throws Exception {
+        SseEmitterManager manager = manager();
+        List<String> requestIds = List.of("req-a", "req-b", "req-c");
+        manager.registerBatch("batch-1", requestIds);
+
+        CapturingEmitter client = (CapturingEmitter) manager.createBatchEmitter("batch-1");
+
+        // req-a 在连接前就已经生成完，连接后补发；其余两个并发生成
+        assertTrue(manager.openStream("req-b"));
+        assertTrue(manager.openStream("req-c"));
+        Flux.just("B1", "B2").subscribe(new SseStreamSubscriber("req-b", manager));
+        Flux.just("C1").subscribe(new SseStreamSubscriber("req-c", manager));
+        assertFalse(client.completed.await(200, TimeUnit.MILLISECONDS), "还有请求没有结束，连接不应关闭");
+
+        assertTrue(manager.openStream("req-a"));
+        Flux.just("A1").subscribe(new SseStreamSubscriber("req-a", manager));
+
+        assertTrue(client.completed.await(10, TimeUnit.SECONDS), "全部结束后连接应关闭");
+        String body = client.body();
+        for (String requestId : requestIds) {
+            assertEquals(1, count(body, "\"requestId\":\"" + requestId + "\",\"content\":\"\",\"isEnd\":true"),
+                    requestId + " 应有且只有一个结束事件");
+        }
+        assertTrue(body.contains("\"requestId\":\"req-b\",\"content\":\"B1"));
+        assertTrue(body.contains("\"requestId\":\"req-a\",\"content\":\"A1\""));
+    }
+
+    @Test
+    public void unknownBatchIsRejected() {
+        assertNull(manager().createBatchEmitter("no-such-batch"));
+    }
+
+    private SseEmitterManager manager() {
+        scheduler.initialize();
+        ChatStreamProperties properties = new ChatStreamProperties();
+        properties.setCoalesceWindowMs(5);
+        return new SseEmitterManager(scheduler, Runnable::run, Runnable::run, properties) {
+            @Override
+            protected SseEmitter newEmitter() {
+                return new CapturingEmitter();
+            }
+        };
+    }
+
+    private static int count(String body, String fragment) {
+        int count = 0;
+        for (int from = body.indexOf(fragment); from >= 0; from = body.indexOf(fragment, from + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 记录写出内容的 SseEmitter（代替真实的 HTTP 连接）
+     */
+    private static class CapturingEmitter extends SseEmitter {
+
+        final StringBuilder frames = new StringBuilder();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public synchronized void send(Set<ResponseBodyEmitter.DataWithMediaType> items) {
+            for (ResponseBodyEmitter.DataWithMediaType item : items) {
+                frames.append(new String((byte[]) item.getData(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        synchronized String body() {
+            return frames.toString();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.controller.ReactiveStreamHandler;
+import com.xidian.chatservice.controller.StreamController;
+import com.xidian.chatservice.manager.SseEmitterManager;
+import com.xidian.chatservice.properties.ChatStreamProperties;
+import io.netty.buffer.PooledByteBufAllocator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import reactor.core.Disposable;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SSE 连接内存基准：同样数量的空闲 SSE 连接，分别连到
+ * - Servlet 版（Tomcat + SseEmitter，异步上下文一直保持到连接结束）
+ * - 响应式版（Reactor Netty + ReactiveSseEmitter）
+ *
+ * 统计每个连接平均占用的堆内存和直接内存（客户端两边相同，差值来自服务端）、服务端线程数。
+ * 连接数用 -Dsse.connections=N 调整（Tomcat 默认最多 8192 个连接）
+ *
+ * 是测量工具，不是单元测试，默认不运行：mvn test -Pbenchmark
+ */
+@Slf4j
+@Tag("benchmark")
+public class SseConnectionMemoryBenchmarkTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("sse.connections", 2_000);
+
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    private final List<Disposable> clients = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        clients.forEach(Disposable::dispose);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void compareMemoryPerIdleConnection() throws Exception {
+        scheduler.initialize();
+        ConnectionProvider provider = ConnectionProvider.newConnection();
+        HttpClient client = HttpClient.create(provider);
+
+        // Servlet 版
+        SseEmitterManager servletManager = new SseEmitterManager(scheduler, Runnable::run, Runnable::run, new ChatStreamProperties());
+        WebServer tomcat = startTomcat(servletManager);
+        try {
+            Usage usage = measure(client, "http://localhost:" + tomcat.getPort(), "servlet", servletManager);
+            log.info("📊 Servlet (Tomcat):  {} 个连接, 堆 {} bytes/连接, 直接内存 {} bytes/连接, 线程 +{}",
+                    CONNECTIONS, usage.heapPerConnection(), usage.directPerConnection(), usage.threads());
+        } finally {
+            clients.forEach(Disposable::dispose);
+            clients.clear();
+            tomcat.stop();
+        }
+
+        // 响应式版
+        SseEmitterManager reactiveManager = new SseEmitterManager(scheduler, Runnable::run, Runnable::run, new ChatStreamProperties());
+        DisposableServer netty = HttpServer.create().port(0)
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(
+                        new ReactiveStreamHandler(reactiveManager).routes())))
+                .bindNow();
+        try {
+            Usage usage = measure(client, "http://localhost:" + netty.port(), "reactive", reactiveManager);
+            log.info("📊 响应式 (Netty):    {} 个连接, 堆 {} bytes/连接, 直接内存 {} bytes/连接, 线程 +{}",
+                    CONNECTIONS, usage.heapPerConnection(), usage.directPerConnection(), usage.threads());
+        } finally {
+            clients.forEach(Disposable::dispose);
+            clients.clear();
+            netty.disposeNow();
+            provider.disposeLater().block();
+        }
+    }
+
+    /**
+     * 建立 CONNECTIONS 个连接（每个连接一个还没有开始生成的请求），等全部挂到流上后统计内存
+     */
+    private Usage measure(HttpClient client, String baseUrl, String prefix, SseEmitterManager manager)
+            throws InterruptedException {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            clients.add(client.get()
+                    .uri(baseUrl + "/api/stream/" + prefix + "-" + i)
+                    .responseContent()
+                    .subscribe());
+        }
+
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (manager.getConnectionCount() < CONNECTIONS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(CONNECTIONS, manager.getConnectionCount(), "连接没有全部建立");
+
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        return new Usage(heap / CONNECTIONS, direct / CONNECTIONS, threads);
+    }
+
+    private WebServer startTomcat(SseEmitterManager manager) {
+        GenericWebApplicationContext context = new GenericWebApplicationContext();
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        context.registerBean(MvcConfig.class);
+        context.registerBean(SseEmitterManager.class, () -> manager);
+        context.registerBean(StreamController.class);
+        DispatcherServlet dispatcher = new DispatcherServlet(context);
+
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        factory.addConnectorCustomizers(connector -> connector.setProperty("maxConnections",
+                String.valueOf(Math.max(8192, CONNECTIONS + 100))));
+        WebServer server = factory.getWebServer(servletContext -> {
+            var registration = servletContext.addServlet("dispatcher", dispatcher);
+            registration.setAsyncSupported(true);
+            registration.setLoadOnStartup(1);
+            registration.addMapping("/");
+        });
+        server.start();
+        return server;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * JDK 的直接缓冲区 + Netty 池化分配器占用的直接内存（Netty 默认不经过 JDK 的计数）
+     */
+    private static long usedDirect() {
+        long used = PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory();
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+    @EnableWebMvc
+    static class MvcConfig {
+    }
+
+    private record Usage(long heapPerConnection, long directPerConnection, int threads) {
+    }
+}
@@ -0,0 +1,73 @@
+package com.xidian.chatservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xidian.chatservice.manager.SseFrameEncoder;
+import com.xidian.chatservice.model.ChatResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * SseFrameEncoder 基准测试
+ *
+ * 对比两条路径编码一个 ChatResponse 片段的耗时（ns/op）和内存分配（bytes/op）：
+ * - 原路径：objectMapper.writeValueAsString + SseEmitter.event() + 编码成 UTF-8 字节
+ * - 新路径：SseFrameEncoder 直接编码成字节
+ *
+ * System.nanoTime 循环（项目没有引入 JMH），结果依赖机器负载，默认不运行：mvn test -Pbenchmark。
+ * 输出正确性的测试在 SseFrameEncoderTest
+ */
+@Slf4j
+@Tag("benchmark")
+public class SseFrameEncoderBenchmarkTest {
+
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void benchmarkEncodePaths() throws Exception {
+        ChatResponse response = ChatResponse.chunk(SseFrameEncoderTest.REQUEST_ID, SseFrameEncoderTest.CONTENT);
+        SseFrameEncoder encoder = new SseFrameEncoder();
+
+        // 预热，让 JIT 编译两条路径
+        for (int i = 0; i < WARMUP; i++) {
+            jacksonFrame(7, "message", response);
+            encoder.encode(7, "message", response);
+        }
+
+        long sink = 0;
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += jacksonFrame(7, "message", response).length;
+        }
+        long jacksonNs = (System.nanoTime() - start) / ITERATIONS;
+        long jacksonBytes = (allocatedBytes() - bytesBefore) / ITERATIONS;
+
+        bytesBefore = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encoder.encode(7, "message", response).length;
+        }
+        long encoderNs = (System.nanoTime() - start) / ITERATIONS;
+        long encoderBytes = (allocatedBytes() - bytesBefore) / ITERATIONS;
+
+        log.info("📊 Jackson + SseEventBuilder: {} ns/op, {} bytes/op", jacksonNs, jacksonBytes);
+        log.info("📊 SseFrameEncoder:           {} ns/op, {} bytes/op", encoderNs, encoderBytes);
+        log.info("(checksum {})", sink);
+    }
+
+    private byte[] jacksonFrame(long id, String eventName, ChatResponse response) throws Exception {
+        return SseFrameEncoderTest.jacksonFrame(objectMapper, id, eventName, response);
+    }
+
+    private long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,61 @@
+package com.xidian.chatservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xidian.chatservice.manager.SseFrameEncoder;
+import com.xidian.chatservice.model.ChatResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SseFrameEncoder 测试：输出和原路径（Jackson + SseEmitter.event()）逐字节相同
+ */
+public class SseFrameEncoderTest {
+
+    static final String REQUEST_ID = "3f2b8c1e-6a4d-4f1b-9c3e-2d7a5b8e9f01";
+    static final String CONTENT = "Spring AI 的流式调用会返回 Flux<String>，每个片段都是\"几个字\"。\n";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void encoderOutputMatchesJacksonPath() throws Exception {
+        SseFrameEncoder encoder = new SseFrameEncoder();
+
+        ChatResponse[] samples = {
+                ChatResponse.chunk(REQUEST_ID, CONTENT),
+                ChatResponse.chunk(REQUEST_ID, "tab\tquote\"backslash\\ctrl\u0001 emoji😀"),
+                ChatResponse.end(REQUEST_ID),
+                ChatResponse.error(REQUEST_ID, "处理异常: timeout")
+        };
+
+        for (ChatResponse response : samples) {
+            String eventName = response.getError() == null ? "message" : "error";
+            String expected = new String(jacksonFrame(objectMapper, 7, eventName, response), StandardCharsets.UTF_8);
+            String actual = new String(encoder.encode(7, eventName, response), StandardCharsets.UTF_8);
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * 原路径：生成 JSON 字符串 -> SseEventBuilder 拼帧 -> 容器按 UTF-8 写出
+     */
+    static byte[] jacksonFrame(ObjectMapper objectMapper, long id, String eventName,
+                               ChatResponse response) throws Exception {
+        Set<ResponseBodyEmitter.DataWithMediaType> parts = SseEmitter.event()
+                .id(String.valueOf(id))
+                .name(eventName)
+                .data(objectMapper.writeValueAsString(response))
+                .build();
+
+        StringBuilder frame = new StringBuilder();
+        for (ResponseBodyEmitter.DataWithMediaType part : parts) {
+            frame.append(part.getData());
+        }
+        return frame.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,211 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.manager.SseOutbound;
+import com.xidian.chatservice.manager.SseReplayBuffer;
+import com.xidian.chatservice.manager.SseStream;
+import com.xidian.chatservice.manager.SseWriteWatchdog;
+import com.xidian.chatservice.properties.ChatStreamProperties.SlowConsumerPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 发送队列测试：前端读得慢时，生产方不阻塞，按策略合并 / 丢弃 / 断开；单次写入超时的连接被断开，不拖住其他连接
+ */
+public class SseOutboundTest {
+
+    private final ExecutorService writers = Executors.newFixedThreadPool(2);
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    private final SseOutbound.Stats stats = new SseOutbound.Stats();
+    // 策略测试不检查写入超时
+    private final SseWriteWatchdog watchdog = new SseWriteWatchdog(60_000, writers, 0);
+
+    @AfterEach
+    public void tearDown() {
+        writers.shutdownNow();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void disconnectPolicyEvictsWithoutBlockingProducer() throws Exception {
+        SlowEmitter client = new SlowEmitter();
+        AtomicInteger broken = new AtomicInteger();
+        SseOutbound outbound = new SseOutbound("req-1", client, writers, 8, SlowConsumerPolicy.DISCONNECT,
+                stats, watchdog, broken::incrementAndGet, () -> { });
+
+        long start = System.nanoTime();
+        int accepted = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (outbound.offer(frame(i))) {
+                accepted++;
+            }
+        }
+        // 写线程卡在第一次 send 上，生产方仍然立即返回
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "入队不应等待 socket 写");
+        assertTrue(accepted <= 9, "超过上限后应拒绝入队: " + accepted);
+        assertEquals(1, stats.getSlowConsumerEvictions());
+
+        client.release.countDown();
+        assertTrue(client.completed.await(5, TimeUnit.SECONDS), "被断开的连接应关闭");
+        assertEquals(0, stats.getQueuedFrames());
+        assertEquals(0, broken.get());
+    }
+
+    @Test
+    public void dropToLatestKeepsNewestFrame() throws Exception {
+        SlowEmitter client = new SlowEmitter();
+        SseOutbound outbound = new SseOutbound("req-2", client, writers, 4, SlowConsumerPolicy.DROP_TO_LATEST,
+                stats, watchdog, () -> { }, () -> { });
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(outbound.offer(frame(i)));
+        }
+        outbound.complete();
+        client.release.countDown();
+
+        assertTrue(client.completed.await(5, TimeUnit.SECONDS));
+        String body = client.body();
+        assertTrue(body.endsWith(new String(frame(19), StandardCharsets.UTF_8)), "最新一帧应写出");
+        assertTrue(stats.getDroppedFrames() > 0);
+        assertEquals(0, stats.getQueuedFrames());
+    }
+
+    @Test
+    public void coalescePolicyMergesChunksWithoutLosingContent() throws Exception {
+        scheduler.initialize();
+        SlowEmitter client = new SlowEmitter();
+        SseOutbound.Factory factory = (requestId, emitter, onBroken, onDrained) -> new SseOutbound(
+                requestId, emitter, writers, 2, SlowConsumerPolicy.COALESCE, stats, watchdog, onBroken, onDrained);
+        // 每个片段都够一批，不等合并窗口
+        SseStream stream = new SseStream("req-3", scheduler, 30, 1,
+                new SseReplayBuffer(64 * 1024, new AtomicLong()), 60_000, 10_000, factory);
+        assertTrue(stream.attach(client, 0));
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            String chunk = "c" + i + ",";
+            expected.append(chunk);
+            assertTrue(stream.append(chunk));
+        }
+        assertTrue(stats.getSlowConsumers() > 0, "写线程卡住时应进入合并");
+        client.release.countDown();
+        stream.complete();
+
+        assertTrue(client.completed.await(5, TimeUnit.SECONDS));
+        StringBuilder received = new StringBuilder();
+        Matcher matcher = Pattern.compile("\"content\":\"([^\"]*)\"").matcher(client.body());
+        while (matcher.find()) {
+            received.append(matcher.group(1));
+        }
+        assertEquals(expected.toString(), received.toString());
+        assertTrue(client.writes.get() < 200, "积压的片段应合并写出: " + client.writes.get());
+        assertEquals(0, stats.getQueuedFrames());
+    }
+
+    @Test
+    public void slowWriteIsEvictedAndDoesNotStarveOtherConnections() throws Exception {
+        // 只有一个写线程：慢连接卡住它之后，其他连接的写入排在后面
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(1);
+        pool.setMaxPoolSize(4);
+        pool.initialize();
+        try {
+            SseWriteWatchdog timed = new SseWriteWatchdog(100, pool, 4);
+            SlowEmitter slowClient = new SlowEmitter();
+            SlowEmitter healthyClient = new SlowEmitter();
+            healthyClient.release.countDown();
+            AtomicInteger broken = new AtomicInteger();
+            SseOutbound slow = new SseOutbound("req-slow", slowClient, pool, 8, SlowConsumerPolicy.COALESCE,
+                    stats, timed, broken::incrementAndGet, () -> { });
+            SseOutbound healthy = new SseOutbound("req-healthy", healthyClient, pool, 8,
+                    SlowConsumerPolicy.COALESCE, stats, timed, () -> { }, () -> { });
+
+            assertTrue(slow.offer(frame(0)));
+            assertTrue(healthy.offer(frame(0)));
+
+            // 单次写入超时：慢连接按慢消费者断开，补一个写线程
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (stats.getSlowConsumerEvictions() == 0 && System.nanoTime() < deadline) {
+                timed.check(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+                Thread.sleep(10);
+            }
+            assertEquals(1, stats.getSlowConsumerEvictions());
+            assertEquals(1, broken.get());
+            assertEquals(1, timed.getStuckWrites());
+            assertFalse(slow.offer(frame(1)), "断开后不再接收新帧");
+
+            // 慢连接仍卡着，健康连接的写入照常完成
+            while (healthyClient.writes.get() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, healthyClient.writes.get());
+            assertEquals(0, slowClient.writes.get());
+
+            // 卡住的写返回后关闭连接（前端重连续传），补的线程收回
+            slowClient.release.countDown();
+            assertTrue(slowClient.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(0, timed.getStuckWrites());
+            assertEquals(1, pool.getCorePoolSize());
+            assertEquals(1, broken.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static byte[] frame(int id) {
+        return ("id:" + id + "\ndata:" + id + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 第一次 send 卡住，直到 release（模拟读得很慢的前端）
+     */
+    private static class SlowEmitter extends SseEmitter {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final AtomicInteger writes = new AtomicInteger();
+        private final StringBuilder frames = new StringBuilder();
+
+        @Override
+        public void send(Set<ResponseBodyEmitter.DataWithMediaType> items) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                for (ResponseBodyEmitter.DataWithMediaType item : items) {
+                    frames.append(new String((byte[]) item.getData(), StandardCharsets.UTF_8));
+                }
+            }
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        synchronized String body() {
+            return frames.toString();
+        }
+    }
+}
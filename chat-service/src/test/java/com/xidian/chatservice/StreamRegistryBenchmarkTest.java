@@ -0,0 +1,174 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.manager.StreamRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * StreamRegistry 基准测试
+ *
+ * 在 100k 个存活条目下，对比 SseEmitterManager 原来的 ConcurrentHashMap<String, ?> 和 StreamRegistry
+ * 的 get / put / remove 耗时（ns/op）和内存分配（bytes/op）
+ *
+ * 查找用的 requestId 每轮都是新的 String 实例（和从 Kafka 消息、请求路径里解析出来的一样），
+ * 不能复用已缓存的 hashCode，也不能靠引用相等跳过 equals
+ *
+ * 结果依赖机器负载，默认不运行：mvn test -Pbenchmark。StreamRegistry 的正确性测试在 StreamRegistryTest
+ */
+@Slf4j
+@Tag("benchmark")
+public class StreamRegistryBenchmarkTest {
+
+    private static final int LIVE_ENTRIES = 100_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void benchmarkAgainstConcurrentHashMap() {
+        String[] live = new String[LIVE_ENTRIES];
+        String[] churn = new String[LIVE_ENTRIES];
+        for (int i = 0; i < LIVE_ENTRIES; i++) {
+            live[i] = UUID.randomUUID().toString();
+            churn[i] = UUID.randomUUID().toString();
+        }
+        Object value = new Object();
+
+        ConcurrentHashMap<String, Object> map = new ConcurrentHashMap<>();
+        StreamRegistry<Object> registry = new StreamRegistry<>(64);
+        for (String key : live) {
+            map.put(key, value);
+            registry.compute(key, (id, old) -> value);
+        }
+
+        // 预热，让 JIT 编译两条路径
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runMap(map, copies(live), copies(churn), copies(churn), value);
+            runRegistry(registry, copies(live), copies(churn), copies(churn), value);
+        }
+
+        long[] mapResult = new long[6];
+        long[] registryResult = new long[6];
+        for (int round = 0; round < ROUNDS; round++) {
+            add(mapResult, runMap(map, copies(live), copies(churn), copies(churn), value));
+            add(registryResult, runRegistry(registry, copies(live), copies(churn), copies(churn), value));
+        }
+        assertEquals(LIVE_ENTRIES, map.size());
+        assertEquals(LIVE_ENTRIES, registry.size());
+
+        long ops = (long) ROUNDS * LIVE_ENTRIES;
+        log.info("📊 ConcurrentHashMap<String>: get {} ns/op ({} B/op), put {} ns/op ({} B/op), remove {} ns/op ({} B/op)",
+                mapResult[0] / ops, mapResult[1] / ops, mapResult[2] / ops, mapResult[3] / ops,
+                mapResult[4] / ops, mapResult[5] / ops);
+        log.info("📊 StreamRegistry:            get {} ns/op ({} B/op), put {} ns/op ({} B/op), remove {} ns/op ({} B/op)",
+                registryResult[0] / ops, registryResult[1] / ops, registryResult[2] / ops, registryResult[3] / ops,
+                registryResult[4] / ops, registryResult[5] / ops);
+        log.info("📊 存活条目: {}，分片: 64", LIVE_ENTRIES);
+    }
+
+    /**
+     * 一轮：查找全部存活条目，再放入并删除同样数量的临时条目（存活条目数保持不变）
+     *
+     * 每个参数数组都是独立的新 String 实例
+     *
+     * @return get / put / remove 的总耗时（ns）和总分配（bytes）
+     */
+    private static long[] runMap(ConcurrentHashMap<String, Object> map, String[] live,
+                                 String[] churn, String[] churnRemove, Object value) {
+        long[] result = new long[6];
+        long sink = 0;
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (String key : live) {
+            sink += map.get(key) == value ? 1 : 0;
+        }
+        result[0] = System.nanoTime() - start;
+        result[1] = allocatedBytes() - bytes;
+
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        for (String key : churn) {
+            map.put(key, value);
+        }
+        result[2] = System.nanoTime() - start;
+        result[3] = allocatedBytes() - bytes;
+
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        for (String key : churnRemove) {
+            sink += map.remove(key, value) ? 1 : 0;
+        }
+        result[4] = System.nanoTime() - start;
+        result[5] = allocatedBytes() - bytes;
+
+        assertEquals(2L * live.length, sink);
+        return result;
+    }
+
+    private static long[] runRegistry(StreamRegistry<Object> registry, String[] live,
+                                      String[] churn, String[] churnRemove, Object value) {
+        long[] result = new long[6];
+        long sink = 0;
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (String key : live) {
+            sink += registry.get(key) == value ? 1 : 0;
+        }
+        result[0] = System.nanoTime() - start;
+        result[1] = allocatedBytes() - bytes;
+
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        for (String key : churn) {
+            registry.compute(key, (id, old) -> value);
+        }
+        result[2] = System.nanoTime() - start;
+        result[3] = allocatedBytes() - bytes;
+
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        for (String key : churnRemove) {
+            sink += registry.remove(key, value) ? 1 : 0;
+        }
+        result[4] = System.nanoTime() - start;
+        result[5] = allocatedBytes() - bytes;
+
+        assertEquals(2L * live.length, sink);
+        return result;
+    }
+
+    /**
+     * 内容相同的新 String 实例（没有缓存 hashCode），顺序打乱
+     */
+    private static String[] copies(String[] keys) {
+        List<String> copies = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            copies.add(new String(key.toCharArray()));
+        }
+        Collections.shuffle(copies, new Random(7));
+        return copies.toArray(new String[0]);
+    }
+
+    private static void add(long[] total, long[] round) {
+        for (int i = 0; i < total.length; i++) {
+            total[i] += round[i];
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
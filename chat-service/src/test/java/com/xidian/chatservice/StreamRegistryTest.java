@@ -0,0 +1,112 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.manager.StreamRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StreamRegistry 测试：随机操作下和 HashMap 行为一致，UUID 键区分大小写和格式，
+ * 任意一段有非法字符的 requestId 不按 UUID 解析
+ */
+public class StreamRegistryTest {
+
+    @Test
+    public void behavesLikeMapUnderRandomOperations() {
+        // 一个分片，频繁扩容和后移删除
+        StreamRegistry<Object> registry = new StreamRegistry<>(1);
+        Map<String, Object> expected = new HashMap<>();
+        Random random = new Random(42);
+        String[] keys = new String[2_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i % 10 == 0 ? "req-" + i : UUID.randomUUID().toString();
+        }
+
+        for (int i = 0; i < 200_000; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    Object value = new Object();
+                    assertSame(value, registry.compute(key, (id, old) -> value));
+                    expected.put(key, value);
+                }
+                case 1 -> {
+                    Object current = expected.get(key);
+                    assertEquals(current != null, registry.remove(key, current));
+                    expected.remove(key);
+                }
+                default -> assertSame(expected.get(key), registry.get(key));
+            }
+            assertEquals(expected.size(), registry.size());
+        }
+        for (String key : keys) {
+            assertSame(expected.get(key), registry.get(key));
+        }
+    }
+
+    @Test
+    public void uuidKeysAreCaseAndFormatExact() {
+        StreamRegistry<String> registry = new StreamRegistry<>(4);
+        String uuid = UUID.randomUUID().toString();
+        registry.compute(uuid, (id, old) -> "lower");
+        registry.compute(uuid.toUpperCase(), (id, old) -> "upper");
+
+        assertEquals("lower", registry.get(uuid));
+        assertEquals("upper", registry.get(uuid.toUpperCase()));
+        assertEquals(2, registry.size());
+
+        // 值不是当前值时不删除
+        assertFalse(registry.remove(uuid, "upper"));
+        assertTrue(registry.remove(uuid, "lower"));
+        assertNull(registry.get(uuid));
+
+        // compute 返回 null 表示删除
+        assertNull(registry.compute(uuid.toUpperCase(), (id, old) -> null));
+        assertEquals(0, registry.size());
+
+        // 全 f 的 UUID 解析结果是 -1，不能和非法字符混淆
+        String allOnes = "ffffffff-ffff-ffff-ffff-ffffffffffff";
+        String invalid = "ffffffff-ffff-ffff-ffff-fffffffffffg";
+        registry.compute(allOnes, (id, old) -> "ones");
+        registry.compute(invalid, (id, old) -> "invalid");
+        assertEquals("ones", registry.get(new String(allOnes.toCharArray())));
+        assertEquals("invalid", registry.get(invalid));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void invalidCharacterInAnySegmentIsNotParsedAsUuid() {
+        // 非法字符不在每一半的最后一段时，也不能和其他 UUID 共用一个键（后几段只有数字，大写也不能混进来）
+        StreamRegistry<String> registry = new StreamRegistry<>(4);
+        registry.compute("zzzzzzzz-1234-5678-9abc-def012345678", (id, old) -> "z");
+        registry.compute("12345678-1234-5678-9abc-def012345678", (id, old) -> "digits");
+        registry.compute("12345678-90ab-cdef-1234-567890123456", (id, old) -> "lower");
+        registry.compute("12345678-90AB-CDEF-1234-567890123456", (id, old) -> "upper");
+        registry.compute("12345678-1234-5678-zz34-567890123456", (id, old) -> "low-z");
+
+        assertEquals("z", registry.get("zzzzzzzz-1234-5678-9abc-def012345678"));
+        assertNull(registry.get("yyyyyyyy-1234-5678-9abc-def012345678"));
+        assertNull(registry.get("ffffffff-1234-5678-9abc-def012345678"));
+        assertEquals("digits", registry.get("12345678-1234-5678-9abc-def012345678"));
+        assertEquals("lower", registry.get("12345678-90ab-cdef-1234-567890123456"));
+        assertEquals("upper", registry.get("12345678-90AB-CDEF-1234-567890123456"));
+        assertNull(registry.get("12345678-90AB-cdef-1234-567890123456"));
+        assertEquals("low-z", registry.get("12345678-1234-5678-zz34-567890123456"));
+        assertNull(registry.get("12345678-1234-5678-ff34-567890123456"));
+        assertNull(registry.get("12345678-1234-5678-yy34-567890123456"));
+        assertEquals(5, registry.size());
+
+        assertTrue(registry.remove("zzzzzzzz-1234-5678-9abc-def012345678", "z"));
+        assertEquals("digits", registry.get("12345678-1234-5678-9abc-def012345678"));
+        assertEquals(4, registry.size());
+    }
+}
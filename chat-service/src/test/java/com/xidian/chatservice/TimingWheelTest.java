@@ -0,0 +1,66 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.manager.TimingWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 时间轮测试：任务不早于到期时间执行，最多晚几格；超过一圈的任务按圈数等待
+ */
+public class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+
+    // 8 格 × 10ms = 一圈 80ms
+    private final TimingWheel wheel = new TimingWheel("test-timer", TICK_MS, 8, Runnable::run);
+
+    @AfterEach
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    public void firesAfterDeadlineIncludingMultipleRounds() throws Exception {
+        long[] delays = {0, 5, 50, 79, 80, 81, 200, 500};
+        Map<Long, Long> firedAfterMs = new ConcurrentHashMap<>();
+        CountDownLatch fired = new CountDownLatch(delays.length);
+
+        long start = System.nanoTime();
+        for (long delay : delays) {
+            wheel.schedule(() -> {
+                firedAfterMs.put(delay, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                fired.countDown();
+            }, delay);
+        }
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS), "所有任务都应执行");
+        for (long delay : delays) {
+            long actual = firedAfterMs.get(delay);
+            assertTrue(actual >= delay, delay + "ms 的任务提前执行: " + actual + "ms");
+            // 调度环境有抖动，留足余量
+            assertTrue(actual <= delay + 10 * TICK_MS, delay + "ms 的任务执行太晚: " + actual + "ms");
+        }
+    }
+
+    @Test
+    public void taskCanRescheduleItself() throws Exception {
+        CountDownLatch ticks = new CountDownLatch(5);
+        Runnable[] task = new Runnable[1];
+        task[0] = () -> {
+            ticks.countDown();
+            if (ticks.getCount() > 0) {
+                wheel.schedule(task[0], 20);
+            }
+        };
+        wheel.schedule(task[0], 20);
+
+        assertTrue(ticks.await(5, TimeUnit.SECONDS), "重复登记的任务应连续执行");
+    }
+}
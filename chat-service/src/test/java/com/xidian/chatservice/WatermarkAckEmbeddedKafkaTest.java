@@ -0,0 +1,99 @@
+package com.xidian.chatservice;
+
+import com.xidian.chatservice.config.KafkaConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 水位线提交测试（嵌入式 Kafka）
+ *
+ * 监听容器按 KafkaConfig.configureWatermarkAcks 配置（MANUAL + asyncAcks，两种监听模式共用）：
+ * 同一分区的消息在其他线程里乱序 ack 时，只提交连续完成的位点，前面还没完成的消息挡住后面的提交
+ */
+@EmbeddedKafka(partitions = 1, topics = WatermarkAckEmbeddedKafkaTest.TOPIC)
+public class WatermarkAckEmbeddedKafkaTest {
+
+    static final String TOPIC = "chat-watermark";
+    private static final String GROUP = "chat-watermark-test";
+
+    @Test
+    public void commitsOnlyContiguousAckedOffsets(EmbeddedKafkaBroker broker) throws Exception {
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps(GROUP, "false", broker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        DefaultKafkaConsumerFactory<String, String> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                consumerProps, new StringDeserializer(), new StringDeserializer());
+
+        ContainerProperties containerProperties = new ContainerProperties(TOPIC);
+        KafkaConfig.configureWatermarkAcks(containerProperties);
+        containerProperties.setPollTimeout(100);
+
+        // 消费线程只记下 Acknowledgment，ack 由测试在其他线程里按任意顺序发出（模拟乱序完成的生成）
+        Map<Long, Acknowledgment> acks = new ConcurrentHashMap<>();
+        CountDownLatch received = new CountDownLatch(3);
+        containerProperties.setMessageListener((AcknowledgingMessageListener<String, String>) (record, ack) -> {
+            acks.put(record.offset(), ack);
+            received.countDown();
+        });
+
+        KafkaMessageListenerContainer<String, String> container =
+                new KafkaMessageListenerContainer<>(consumerFactory, containerProperties);
+        container.start();
+        KafkaTemplate<String, String> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()));
+        try {
+            ContainerTestUtils.waitForAssignment(container, 1);
+            for (int i = 0; i < 3; i++) {
+                template.send(TOPIC, 0, "session-" + i, "request-" + i);
+            }
+            template.flush();
+            assertTrue(received.await(30, TimeUnit.SECONDS), "应收到 3 条消息");
+
+            // 后两条先完成：位点 0 还在处理中，一个位点都不能提交
+            CompletableFuture.runAsync(() -> acks.get(2L).acknowledge()).join();
+            CompletableFuture.runAsync(() -> acks.get(1L).acknowledge()).join();
+            Thread.sleep(1000);
+            OffsetAndMetadata committed = committed(broker);
+            assertTrue(committed == null || committed.offset() == 0,
+                    "前面的消息没完成时不应提交后面的位点: " + committed);
+
+            // 位点 0 完成后，水位线一次推进到 3
+            CompletableFuture.runAsync(() -> acks.get(0L).acknowledge()).join();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (((committed = committed(broker)) == null || committed.offset() < 3)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(3, committed == null ? -1 : committed.offset());
+        } finally {
+            container.stop();
+            template.destroy();
+        }
+    }
+
+    private static OffsetAndMetadata committed(EmbeddedKafkaBroker broker) throws Exception {
+        return KafkaTestUtils.getCurrentOffset(broker.getBrokersAsString(), GROUP, TOPIC, 0);
+    }
+}
@@ -0,0 +1,53 @@
+package com.xidian.kafkaproducer.config;
+
+import com.xidian.kafkaproducer.properties.KafkaProducerProperties;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kafka 生产者预设
+ * 作用：按场景一次性设置 linger、批大小、压缩、幂等和在途请求数（与 chat-service 的 chat.kafka.producer-profile 相同）
+ *
+ * 预设的值会覆盖 spring.kafka.producer.* 中的同名配置，单项配置（kafka.producer.linger-ms 等）优先于预设
+ */
+@Configuration
+public class KafkaProducerProfileConfig {
+
+    /**
+     * 把预设应用到 Spring Boot 自动创建的 ProducerFactory（KafkaTemplate 用的就是它）
+     */
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer producerProfileCustomizer(KafkaProducerProperties properties) {
+        Map<String, Object> configs = producerProfileConfigs(properties);
+        return producerFactory -> producerFactory.updateConfigs(configs);
+    }
+
+    /**
+     * 生产者预设对应的配置（kafka.producer.profile，单项配置优先于预设）
+     */
+    public static Map<String, Object> producerProfileConfigs(KafkaProducerProperties properties) {
+        KafkaProducerProperties.ProducerProfile profile = properties.getProfile();
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.LINGER_MS_CONFIG,
+                valueOr(properties.getLingerMs(), profile.getLingerMs()));
+        configs.put(ProducerConfig.BATCH_SIZE_CONFIG,
+                valueOr(properties.getBatchSize(), profile.getBatchSize()));
+        configs.put(ProducerConfig.COMPRESSION_TYPE_CONFIG,
+                valueOr(properties.getCompressionType(), profile.getCompressionType()));
+        configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG,
+                valueOr(properties.getIdempotence(), profile.isIdempotence()));
+        // 开启幂等时最多 5，否则重试会打乱顺序
+        configs.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION,
+                valueOr(properties.getMaxInFlightRequestsPerConnection(), profile.getMaxInFlightRequestsPerConnection()));
+        return configs;
+    }
+
+    private static <T> T valueOr(T value, T defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,53 @@
+package com.xidian.kafkaproducer.properties;
+
+import lombok.Data;
+import lombok.Getter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 生产者预设配置（与 chat-service 的 chat.kafka.producer-profile 结构相同）
+ */
+@Component
+@ConfigurationProperties(prefix = "kafka.producer")
+@Data
+public class KafkaProducerProperties {
+
+    /**
+     * 生产者预设：批量等待时间、批大小、压缩算法、幂等、单连接在途请求数
+     */
+    @Getter
+    public enum ProducerProfile {
+        // 不等待凑批，立即发送
+        LATENCY(0, 16 * 1024, "none", true, 5),
+        // 等待几毫秒凑批，lz4 压缩（CPU 开销很小）
+        BALANCED(5, 64 * 1024, "lz4", true, 5),
+        // 大批量 + zstd（压缩率最高），适合批量发送
+        THROUGHPUT(20, 256 * 1024, "zstd", true, 5);
+
+        private final int lingerMs;
+        private final int batchSize;
+        private final String compressionType;
+        private final boolean idempotence;
+        private final int maxInFlightRequestsPerConnection;
+
+        ProducerProfile(int lingerMs, int batchSize, String compressionType,
+                        boolean idempotence, int maxInFlightRequestsPerConnection) {
+            this.lingerMs = lingerMs;
+            this.batchSize = batchSize;
+            this.compressionType = compressionType;
+            this.idempotence = idempotence;
+            this.maxInFlightRequestsPerConnection = maxInFlightRequestsPerConnection;
+        }
+    }
+
+    // 生产者预设
+    private ProducerProfile profile = ProducerProfile.BALANCED;
+
+    // 单独覆盖预设中的某一项（不配置时使用预设的值）
+    private Integer lingerMs;
+    private Integer batchSize;
+    private String compressionType;
+    private Boolean idempotence;
+    private Integer maxInFlightRequestsPerConnection;
+}